@@ -0,0 +1,101 @@
+/******************************************************************************
+AirportCodeIndex.java
+
+An AirportCodeIndex turns airport codes into small dense int ids (0, 1, 2,
+...) in the order the codes are first seen. Airport codes are three capital
+letters, so a code can be used directly as a position in a 26*26*26 array,
+and looking one up costs a few character reads instead of the O(log n)
+String compares of a TreeMap. Codes that aren't three capital letters
+(which addACity() doesn't allow, but an input file might contain) fall
+back to a HashMap.
+
+The Graph interns every City's code when the City is added, and from then
+on the load and query paths work with the ids. Strings are only needed at
+the edges of the program, when the user types a code or a result is
+printed.
+
+Codes can be looked up while another thread is interning new ones (as
+when a VersionedGraph is being changed); a lookup then either finds the
+new code or doesn't, and never sees a half-added one.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class AirportCodeIndex
+{
+    public final static int NO_ID = -1;
+    private final static int LETTERS = 26;
+
+    private int[] idBySlot;                // NO_ID where no code is stored
+    private Map<String, Integer> otherIds; // codes that don't fit a slot
+    private int numIds;
+
+    // Constructor
+    public AirportCodeIndex()
+    {
+	idBySlot = new int[LETTERS * LETTERS * LETTERS];
+	Arrays.fill(idBySlot, NO_ID);
+	otherIds = new ConcurrentHashMap<String, Integer>();
+	numIds = 0;
+    }
+
+    // Accessors
+    public int getNumIds()
+    { return numIds; }
+
+    public int getNumSlots()
+    { return idBySlot.length; }
+
+    public int getNumOtherCodes()
+    { return otherIds.size(); }
+
+    /**
+       slotOf: Works out the array position of a three-capital-letter code.
+       @param code: the airport code
+       @return the position, or -1 if the code isn't three capital letters
+    */
+    public static int slotOf(String code)
+    {
+	if(code.length() != 3) { return -1; }
+	int slot = 0;
+	for(int i = 0; i < 3; i++)
+	    {
+		int letter = code.charAt(i) - 'A';
+		if(letter < 0 || letter >= LETTERS) { return -1; }
+		slot = slot * LETTERS + letter;
+	    }
+	return slot;
+    }
+
+    /**
+       idOf: Looks up the id of a code.
+       @param code: the airport code
+       @return the id, or NO_ID if the code hasn't been interned
+    */
+    public int idOf(String code)
+    {
+	int slot = slotOf(code);
+	if(slot >= 0) { return idBySlot[slot]; }
+	Integer id = otherIds.get(code);
+	return (id == null) ? NO_ID : id.intValue();
+    }
+
+    /**
+       intern: Returns the id of a code, giving the code the next free id
+       if it doesn't have one yet.
+       @param code: the airport code
+       @return the code's id
+    */
+    public int intern(String code)
+    {
+	int id = idOf(code);
+	if(id != NO_ID) { return id; }
+
+	id = numIds ++;
+	int slot = slotOf(code);
+	if(slot >= 0) { idBySlot[slot] = id; }
+	else { otherIds.put(code, id); }
+	return id;
+    }
+}
@@ -0,0 +1,134 @@
+/******************************************************************************
+AlternativeSearch.java
+
+An AlternativeSearch finds the best few Itineraries from one City to
+another, in order of total time, each taking a different sequence of
+Flights and none visiting a City twice. It uses Yen's algorithm: each new
+Itinerary leaves one already found at some City (the spur) and then takes
+the quickest way on from there that avoids the Cities before the spur and
+the Flights out of the spur that the Itineraries found so far with the
+same beginning took. Following Lawler, an Itinerary is only left at or
+after the City where it left the one it came from, since the earlier
+spurs were already tried.
+
+The spur searches all run on one FlightSearch, whose stamped arrays and
+stamped exclusions mean that nothing is reset between them. Memory per
+query is bounded by k: at most k Itineraries are kept as answers, and
+the candidates are trimmed to the best k that are still needed, since a
+worse one can never make it into the answer.
+
+The Itineraries can be kept within RouteConstraints, except for a via
+City: every spur search applies the avoided Cities and Flights along with
+its own.
+
+An AlternativeSearch is not thread-safe; QueryEngine gives each thread
+its own FlightSearch to run one on.
+******************************************************************************/
+
+import java.util.*;
+
+public class AlternativeSearch
+{
+    // The most Itineraries the menu and the server will ask for
+    public final static int MAX_ALTERNATIVES = 50;
+
+    private FlightSearch search;
+    private GraphSnapshot snapshot;
+    private RouteConstraints constraints;
+
+    // Constructors
+    public AlternativeSearch(FlightSearch s, GraphSnapshot snap)
+    { this(s, snap, new RouteConstraints()); }
+
+    public AlternativeSearch(FlightSearch s, GraphSnapshot snap,
+			     RouteConstraints c)
+    {
+	search = s;
+	snapshot = snap;
+	constraints = c;
+    }
+
+    /**
+       find: Finds up to k Itineraries, best first.
+       @param start: the id of the City where the traveller begins
+       @param GMTStartTimeMinutes: the start time in GMT minutes
+       @param finish: the id of the City where the traveller wants to go
+       @param k: the most Itineraries to find
+       @return the Itineraries, which may be fewer than k (or none)
+    */
+    public List<Itinerary> find(int start, int GMTStartTimeMinutes,
+				int finish, int k)
+    {
+	List<Itinerary> found = new ArrayList<Itinerary>();
+	if(k <= 0 || start == finish) { return found; }
+	search.clearExclusions();
+	constraints.applyTo(search);
+	search.search(start, GMTStartTimeMinutes, finish);
+	Itinerary best = Itinerary.fromSearch(search, finish, snapshot);
+	if(best == null) { return found; }
+
+	// The index at which each Itinerary found left the one before it
+	List<Integer> deviations = new ArrayList<Integer>();
+	TreeMap<Itinerary, Integer> candidates
+	    = new TreeMap<Itinerary, Integer>();
+	found.add(best);
+	deviations.add(0);
+	try
+	    {
+		while(found.size() < k)
+		    {
+			Itinerary last = found.get(found.size() - 1);
+			int deviation = deviations.get(deviations.size() - 1);
+			int needed = k - found.size();
+			for(int spur = deviation; spur < last.getNumCities() - 1;
+			    spur++)
+			    {
+				Itinerary candidate = spurFrom(last, spur, found,
+							       finish);
+				if(candidate == null
+				   || candidates.containsKey(candidate))
+				    { continue; }
+				candidates.put(candidate, spur);
+				if(candidates.size() > needed)
+				    { candidates.pollLastEntry(); }
+			    }
+			if(candidates.isEmpty()) { break; }
+			Map.Entry<Itinerary, Integer> next
+			    = candidates.pollFirstEntry();
+			found.add(next.getKey());
+			deviations.add(next.getValue());
+		    }
+	    }
+	finally
+	    { search.clearExclusions(); }
+	return found;
+    }
+
+    /**
+       spurFrom: Finds the quickest Itinerary that follows another as far
+       as its City number spur and then leaves it.
+       @param root: the Itinerary to follow
+       @param spur: where to leave it
+       @param found: the Itineraries found so far
+       @param finish: the id of the City to go to
+       @return the Itinerary, or null if there's none
+    */
+    private Itinerary spurFrom(Itinerary root, int spur,
+			       List<Itinerary> found, int finish)
+    {
+	search.clearExclusions();
+	constraints.applyTo(search);
+	for(int i = 0; i < spur; i++)
+	    { search.excludeCity(root.getCity(i)); }
+	int spurCity = root.getCity(spur);
+	for(int i = 0; i < found.size(); i++)
+	    {
+		Itinerary other = found.get(i);
+		if(other.sharesStart(root, spur))
+		    { search.banFlight(spurCity, other.getFlight(spur + 1)); }
+	    }
+	search.searchFrom(spurCity, root.getCostFromStart(spur),
+			  root.getTimeArrive(spur), spur > 0, finish);
+	return Itinerary.fromSpur(root, spur, search, finish);
+    }
+}
@@ -0,0 +1,284 @@
+/******************************************************************************
+BatchQueries.java
+
+BatchQueries answers a whole file of queries without the menu, for
+scripts. It is started from findFlight:
+
+java findFlight airport.txt -batch queries.txt [-threads n]
+     [-format csv|jsonl] [-out results.txt]
+
+Use "-batch -" to read the queries from standard input. Each query is one
+line:
+
+u ABQ BOS 830A     (quickest path, like the u option)
+s ABQ BOS 830A     (fewest stops, like the s option)
+
+Cities may be given by code, or by name if the name has no spaces, and
+times are written the way the input file writes them. Blank lines and
+lines starting with "#" are skipped.
+
+The queries are read BLOCK_SIZE lines at a time. Each block is split
+among the threads, which answer through one shared QueryEngine, and the
+results are written in the same order as the queries, as CSV or as one
+JSON object per line. So memory stays the same however long the input is.
+At the end the number of queries and the throughput are printed.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+
+public class BatchQueries
+{
+    final static int BLOCK_SIZE = 4096;
+    final static String CSV = "csv";
+    final static String JSON_LINES = "jsonl";
+    final static String CSV_HEADER
+	= "line,mode,from,to,time,found,cost,flights,route,depart,arrive";
+
+    private QueryEngine engine;
+    private String format;
+    private int threads;
+    private ExecutorService workers;
+
+    // Totals for the report at the end
+    private long numQueries = 0;
+    private long numFound = 0;
+    private long numErrors = 0;
+
+    // Constructor
+    public BatchQueries(QueryEngine e, int numThreads, String f)
+    {
+	engine = e;
+	threads = numThreads;
+	format = f;
+	workers = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+       run: Answers every query from the input and writes the results.
+       @param in: the queries
+       @param out: where to write the results
+       @param report: where to print the totals at the end
+    */
+    public void run(BufferedReader in, Writer out, PrintStream report)
+	throws IOException
+    {
+	long begin = System.nanoTime();
+	if(format.equals(CSV)) { out.write(CSV_HEADER + "\n"); }
+
+	String[] lines = new String[BLOCK_SIZE];
+	int[] lineNumbers = new int[BLOCK_SIZE];
+	final String[] results = new String[BLOCK_SIZE];
+	int lineNumber = 0;
+	boolean more = true;
+	while(more)
+	    {
+		// Read the next block of queries
+		int count = 0;
+		String line;
+		while(count < BLOCK_SIZE && (line = in.readLine()) != null)
+		    {
+			lineNumber ++;
+			line = line.trim();
+			if(line.length() == 0 || line.charAt(0) == '#')
+			    { continue; }
+			lines[count] = line;
+			lineNumbers[count] = lineNumber;
+			count ++;
+		    }
+		more = (count == BLOCK_SIZE);
+
+		answerBlock(lines, lineNumbers, results, count);
+		for(int i = 0; i < count; i++)
+		    { out.write(results[i]); }
+	    }
+	out.flush();
+	workers.shutdown();
+
+	double seconds = (System.nanoTime() - begin) / 1e9;
+	report.println(numQueries + " queries (" + numFound + " found, " +
+		       (numQueries - numFound - numErrors) + " with no path, " +
+		       numErrors + " not understood) in " +
+		       String.format("%.3f", seconds) + " s on " + threads +
+		       ((threads == 1) ? " thread: " : " threads: ") +
+		       String.format("%.0f", numQueries / seconds) +
+		       " queries per second");
+    }
+
+    /**
+       answerBlock: Answers one block of queries, splitting it among the
+       threads.
+    */
+    private void answerBlock(final String[] lines, final int[] lineNumbers,
+			     final String[] results, final int count)
+    {
+	List<Callable<int[]>> work = new ArrayList<Callable<int[]>>();
+	for(int t = 0; t < threads; t++)
+	    {
+		final int first = t;
+		work.add(new Callable<int[]>()
+		    {
+			public int[] call()
+			{
+			    int[] tally = new int[2]; // found, errors
+			    StringBuilder out = new StringBuilder();
+			    for(int i = first; i < count; i += threads)
+				{
+				    out.setLength(0);
+				    answer(lines[i], lineNumbers[i], out, tally);
+				    results[i] = out.toString();
+				}
+			    return tally;
+			}
+		    });
+	    }
+	try
+	    {
+		for(Future<int[]> done : workers.invokeAll(work))
+		    {
+			int[] tally = done.get();
+			numFound += tally[0];
+			numErrors += tally[1];
+		    }
+	    }
+	catch(InterruptedException e)
+	    { Thread.currentThread().interrupt(); }
+	catch(ExecutionException e)
+	    { throw new RuntimeException(e.getCause()); }
+	numQueries += count;
+    }
+
+    /**
+       answer: Answers one query and writes its result line.
+       @param line: the query
+       @param lineNumber: where it was in the input
+       @param out: where to write the result
+       @param tally: counts of queries found [0] and not understood [1]
+    */
+    void answer(String line, int lineNumber, StringBuilder out, int[] tally)
+    {
+	StringTokenizer st = new StringTokenizer(line);
+	String mode = st.hasMoreTokens() ? st.nextToken() : "";
+	String from = st.hasMoreTokens() ? st.nextToken() : null;
+	String to = st.hasMoreTokens() ? st.nextToken() : null;
+	String time = st.hasMoreTokens() ? st.nextToken() : "";
+
+	GraphSnapshot snapshot = engine.getSnapshot();
+	int start = snapshot.findCity(from);
+	int finish = snapshot.findCity(to);
+	String error = null;
+	if(!mode.equalsIgnoreCase(findFlight.QUICKEST) &&
+	   !mode.equalsIgnoreCase(findFlight.FEWEST_STOPS))
+	    { error = "unknown mode " + mode; }
+	else if(start == AirportCodeIndex.NO_ID)
+	    { error = "no city " + from; }
+	else if(finish == AirportCodeIndex.NO_ID)
+	    { error = "no city " + to; }
+	else if(!findFlight.isClockTime(time))
+	    { error = "bad time " + time; }
+
+	Itinerary itinerary = null;
+	if(error == null)
+	    {
+		int clockTime = findFlight.processTimeString(time);
+		itinerary = mode.equalsIgnoreCase(findFlight.QUICKEST)
+		    ? engine.quickest(snapshot, start, clockTime, finish)
+		    : engine.fewestStops(snapshot, start, clockTime, finish);
+		if(itinerary != null) { tally[0] ++; }
+	    }
+	else
+	    { tally[1] ++; }
+
+	if(format.equals(CSV))
+	    { appendCsv(out, lineNumber, mode, from, to, time, itinerary, error); }
+	else
+	    { appendJson(out, lineNumber, mode, from, to, time, itinerary, error); }
+    }
+
+    /************************* HELPER METHODS *******************************/
+    private void appendCsv(StringBuilder out, int lineNumber, String mode,
+			   String from, String to, String time,
+			   Itinerary itinerary, String error)
+    {
+	out.append(lineNumber).append(',').append(mode).append(',');
+	appendCsvField(out, from);
+	out.append(',');
+	appendCsvField(out, to);
+	out.append(',').append(time).append(',');
+	if(error != null)
+	    {
+		out.append("error,,,");
+		appendCsvField(out, error);
+		out.append(",,\n");
+		return;
+	    }
+	if(itinerary == null)
+	    {
+		out.append("false,,,,,\n");
+		return;
+	    }
+
+	GraphSnapshot graph = itinerary.getSnapshot();
+	out.append("true,").append(itinerary.getTotalCost()).append(',')
+	    .append(itinerary.getNumFlights()).append(',');
+	for(int i = 0; i < itinerary.getNumCities(); i++)
+	    {
+		if(i > 0) { out.append('-'); }
+		out.append(graph.getCity(itinerary.getCity(i)).getCode());
+	    }
+	out.append(',');
+	if(itinerary.getNumFlights() > 0)
+	    {
+		City first = graph.getCity(itinerary.getCity(0));
+		City last = graph.getCity(itinerary.getFinishCity());
+		out.append(Graph.minuteTimeToClockTime
+			   (itinerary.getTimeDepart(1) +
+			    first.getOffsetMinutes()));
+		out.append(',');
+		out.append(Graph.minuteTimeToClockTime
+			   (itinerary.getTimeArrive(itinerary.getNumCities() - 1)
+			    + last.getOffsetMinutes()));
+	    }
+	else
+	    { out.append(','); }
+	out.append('\n');
+    }
+
+    private static void appendCsvField(StringBuilder out, String value)
+    {
+	if(value == null) { return; }
+	if(value.indexOf(',') < 0 && value.indexOf('"') < 0)
+	    {
+		out.append(value);
+		return;
+	    }
+	out.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private void appendJson(StringBuilder out, int lineNumber, String mode,
+			    String from, String to, String time,
+			    Itinerary itinerary, String error)
+    {
+	out.append('{');
+	Json.appendField(out, "line", lineNumber);
+	out.append(',');
+	Json.appendField(out, "mode", mode);
+	out.append(',');
+	Json.appendField(out, "from", (from == null) ? "" : from);
+	out.append(',');
+	Json.appendField(out, "to", (to == null) ? "" : to);
+	out.append(',');
+	Json.appendField(out, "time", time);
+	out.append(",\"result\":");
+	if(error != null) { out.append(Json.error(error)); }
+	else if(itinerary == null)
+	    {
+		out.append('{');
+		Json.appendField(out, "found", false);
+		out.append('}');
+	    }
+	else { itinerary.appendJson(out); }
+	out.append("}\n");
+    }
+}
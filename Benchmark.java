@@ -0,0 +1,626 @@
+/******************************************************************************
+Benchmark.java
+
+Benchmark times the different ways of answering queries on the same input
+file and checks that they agree. Run it as
+
+java Benchmark airport.txt [number of queries] [random seed]
+
+It builds the Graph with findFlight.initializeGraph(), makes a list of
+random (start city, finish city, start time) queries, and then runs every
+query through each engine, first once to warm up and then once for timing.
+Any query on which an engine disagrees with Graph.dijkstra() is printed.
+The engines include a DeltaStepping search that spreads each query over
+one thread per processor.
+It also times the same queries with RouteConstraints that avoid a
+random city, which should cost about as much and can only be slower
+trips, and works out a TravelTimeMatrix on one thread and on all of
+them, checking some rows against Graph.dijkstra(). Then it starts a
+QueryServer on a loopback port and sends it the same queries over HTTP
+from one client thread per processor. Last, it times
+the queries through a VersionedGraph, first alone and then while another
+thread keeps adding flights and publishing new versions, and then times
+repairing ShortestPathTrees after random cancellations and delays against
+searching again from scratch. Since these change the Graph, they come
+last.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.net.*;
+
+public class Benchmark
+{
+    final static int DEFAULT_NUM_QUERIES = 1000;
+    final static long DEFAULT_SEED = 2006;
+    final static int EDITS_PER_VERSION = 10;
+    final static int NUM_TREES = 100;
+    final static int DISRUPTION_ROUNDS = 20;
+    final static int DISRUPTIONS_PER_ROUND = 5;
+    final static int MATRIX_CLOCK_TIME = 830;
+
+    private Graph graph;
+
+    // The queries, as parallel arrays
+    private City[] cities;
+    private City[] starts;
+    private City[] finishes;
+    private int[] clockTimes;
+
+    public static void main(String[] args) throws IOException
+    {
+	Graph graph = findFlight.initializeGraph
+	    (new Scanner(new File(args[0])));
+	int numQueries = (args.length > 1) ? Integer.parseInt(args[1])
+	    : DEFAULT_NUM_QUERIES;
+	long seed = (args.length > 2) ? Long.parseLong(args[2])
+	    : DEFAULT_SEED;
+
+	Benchmark bench = new Benchmark(graph, numQueries, seed);
+	System.out.println("Graph has " + graph.getSize() + " cities; running "
+			   + numQueries + " queries.");
+	int[] expected = bench.runDijkstra(graph);
+	bench.runTimeExpanded(graph, expected);
+	bench.runFlightSearch("FlightTable", new FlightTable(graph), expected);
+	bench.runFlightSearch("OffHeapFlightStore",
+			      OffHeapFlightStore.fromGraph(graph), expected);
+	bench.runDeltaStepping(Runtime.getRuntime().availableProcessors(),
+			       expected);
+	bench.runConstrained(graph, expected, seed);
+	bench.runMatrix(Runtime.getRuntime().availableProcessors());
+	bench.runServer(Runtime.getRuntime().availableProcessors(), expected);
+	bench.runWithEdits(Runtime.getRuntime().availableProcessors(), seed);
+	bench.runTreeRepair(seed);
+    }
+
+    // Constructor
+    public Benchmark(Graph graph, int numQueries, long seed)
+    {
+	this.graph = graph;
+	Random random = new Random(seed);
+	cities = new City[graph.getSize()];
+	Iterator itr = graph.getCitiesIterator();
+	for(int i = 0; itr.hasNext(); i++)
+	    { cities[i] = (City)itr.next(); }
+
+	starts = new City[numQueries];
+	finishes = new City[numQueries];
+	clockTimes = new int[numQueries];
+	for(int q = 0; q < numQueries; q++)
+	    {
+		starts[q] = cities[random.nextInt(cities.length)];
+		finishes[q] = cities[random.nextInt(cities.length)];
+		clockTimes[q] = 100 * random.nextInt(24) + random.nextInt(60);
+	    }
+    }
+
+    /**
+       runDijkstra: Times Graph.findQuickestPaths() over all the queries.
+       @return the cost of each query, for the other engines to check against
+    */
+    public int[] runDijkstra(Graph graph)
+    {
+	int[] costs = new int[starts.length];
+	for(int round = 0; round < 2; round++)
+	    {
+		long begin = System.nanoTime();
+		for(int q = 0; q < starts.length; q++)
+		    {
+			graph.findQuickestPaths(starts[q], clockTimes[q]);
+			costs[q] = finishes[q].getCostFromStart();
+			if(starts[q] == finishes[q]) { costs[q] = 0; }
+		    }
+		if(round == 1) { report("Graph.dijkstra", begin); }
+	    }
+	return costs;
+    }
+
+    /**
+       runTimeExpanded: Times TimeExpandedGraph.quickestTime() over all the
+       queries, including the time to build the TimeExpandedGraph.
+       @param expected: the costs found by Graph.dijkstra()
+    */
+    public void runTimeExpanded(Graph graph, int[] expected)
+    {
+	long begin = System.nanoTime();
+	TimeExpandedGraph expanded = new TimeExpandedGraph(graph);
+	System.out.println("TimeExpandedGraph: " + expanded.getNumNodes() +
+			   " nodes, " + expanded.getNumEdges() +
+			   " edges, built in " + millisSince(begin) + " ms");
+	for(int round = 0; round < 2; round++)
+	    {
+		begin = System.nanoTime();
+		for(int q = 0; q < starts.length; q++)
+		    {
+			int cost = expanded.quickestTime
+			    (starts[q], clockTimes[q], finishes[q]);
+			if(round == 1) { check("TimeExpandedGraph", q,
+					       expected[q], cost); }
+		    }
+		if(round == 1) { report("TimeExpandedGraph", begin); }
+	    }
+    }
+
+    /**
+       runFlightSearch: Times a FlightSearch over the given FlightStore.
+       @param name: the name to print for the store
+       @param store: the FlightStore to search
+       @param expected: the costs found by Graph.dijkstra()
+    */
+    public void runFlightSearch(String name, FlightStore store, int[] expected)
+    {
+	FlightSearch search = new FlightSearch(store);
+	for(int round = 0; round < 2; round++)
+	    {
+		long begin = System.nanoTime();
+		for(int q = 0; q < starts.length; q++)
+		    {
+			search.findQuickestPaths(graph, starts[q].getId(),
+						 clockTimes[q],
+						 FlightSearch.NONE);
+			int cost = search.getCostFromStart(finishes[q].getId());
+			if(round == 1) { check(name, q, expected[q], cost); }
+		    }
+		if(round == 1) { report(name, begin); }
+	    }
+    }
+
+    /**
+       runDeltaStepping: Times a DeltaStepping search over a FlightTable,
+       with each query spread over a pool of threads.
+       @param threads: how many threads to spread each query over
+       @param expected: the costs found by Graph.dijkstra()
+    */
+    public void runDeltaStepping(int threads, int[] expected)
+    {
+	ForkJoinPool pool = new ForkJoinPool(threads);
+	DeltaStepping search = new DeltaStepping(new FlightTable(graph), pool);
+	String name = "DeltaStepping (" + threads +
+	    ((threads == 1) ? " thread)" : " threads)");
+	for(int round = 0; round < 2; round++)
+	    {
+		long begin = System.nanoTime();
+		for(int q = 0; q < starts.length; q++)
+		    {
+			search.search(starts[q].getId(),
+				      Graph.clockTimeToGMTMinuteTime
+				      (clockTimes[q], starts[q]));
+			int cost = search.getCostFromStart(finishes[q].getId());
+			if(round == 1) { check(name, q, expected[q], cost); }
+		    }
+		if(round == 1) { report(name, begin); }
+	    }
+	pool.shutdown();
+    }
+
+    /**
+       runConstrained: Times quickest-path queries through a QueryEngine,
+       each avoiding one random City other than its start and finish, and
+       checks that none comes out quicker than the unconstrained answer.
+       @param expected: the costs found by Graph.dijkstra()
+       @param seed: for the Cities to avoid
+    */
+    public void runConstrained(Graph graph, int[] expected, long seed)
+    {
+	QueryEngine engine = new QueryEngine(graph);
+	GraphSnapshot snapshot = engine.getSnapshot();
+	Random random = new Random(seed);
+	RouteConstraints[] constraints = new RouteConstraints[starts.length];
+	for(int q = 0; q < starts.length; q++)
+	    {
+		constraints[q] = new RouteConstraints();
+		City avoid = cities[random.nextInt(cities.length)];
+		if(avoid != starts[q] && avoid != finishes[q])
+		    { constraints[q].avoidCity(avoid.getId()); }
+	    }
+	for(int round = 0; round < 2; round++)
+	    {
+		long begin = System.nanoTime();
+		for(int q = 0; q < starts.length; q++)
+		    {
+			Itinerary itinerary = engine.quickest
+			    (snapshot, starts[q].getId(), clockTimes[q],
+			     finishes[q].getId(), constraints[q]);
+			int cost = (itinerary == null) ? City.INFINITY
+			    : itinerary.getTotalCost();
+			if(round == 1 && starts[q] != finishes[q]
+			   && cost < expected[q])
+			    { check("RouteConstraints", q, expected[q], cost); }
+		    }
+		if(round == 1) { report("RouteConstraints (avoid 1)", begin); }
+	    }
+    }
+
+    /**
+       runMatrix: Times TravelTimeMatrix.compute() on one thread and on
+       several, and checks that both give the same matrix and that the rows
+       of the first NUM_TREES query starts agree with Graph.dijkstra().
+       @param threads: how many threads to compare one thread with
+    */
+    public void runMatrix(int threads)
+    {
+	GraphSnapshot snapshot = GraphSnapshot.of(graph);
+	TravelTimeMatrix[] matrices = new TravelTimeMatrix[2];
+	double[] millis = new double[2];
+	int[] numThreads = { 1, threads };
+	for(int i = 0; i < 2; i++)
+	    {
+		ForkJoinPool pool = new ForkJoinPool(numThreads[i]);
+		TravelTimeMatrix.compute(snapshot, MATRIX_CLOCK_TIME, pool);
+		long begin = System.nanoTime();
+		matrices[i] = TravelTimeMatrix.compute(snapshot,
+						       MATRIX_CLOCK_TIME, pool);
+		millis[i] = millisSince(begin);
+		pool.shutdown();
+	    }
+	int n = snapshot.getNumCities();
+	int wrong = 0;
+	for(int from = 0; from < n; from++)
+	    {
+		for(int to = 0; to < n; to++)
+		    {
+			if(matrices[0].getTime(from, to)
+			   != matrices[1].getTime(from, to))
+			    { wrong ++; }
+		    }
+	    }
+	for(int q = 0; q < Math.min(NUM_TREES, starts.length); q++)
+	    {
+		graph.findQuickestPaths(starts[q], MATRIX_CLOCK_TIME);
+		for(int c = 0; c < cities.length; c++)
+		    {
+			int cost = (cities[c] == starts[q]) ? 0
+			    : cities[c].getCostFromStart();
+			if(matrices[1].getTime(starts[q].getId(),
+					       cities[c].getId()) != cost)
+			    { wrong ++; }
+		    }
+	    }
+	System.out.println("TravelTimeMatrix: " + n + " x " + n + " in " +
+			   millis[0] + " ms on 1 thread, " + millis[1] +
+			   " ms on " + threads + " (" +
+			   String.format("%.2f", millis[0] / millis[1]) +
+			   "x)" + ((wrong == 0) ? "" :
+				   "; disagrees on " + wrong + " entries"));
+    }
+
+    /**
+       runServer: Times a QueryServer answering the queries over loopback
+       HTTP, with several client threads sending requests at once.
+       @param threads: how many client threads to use
+       @param expected: the costs found by Graph.dijkstra()
+    */
+    public void runServer(int threads, final int[] expected)
+	throws IOException
+    {
+	QueryServer server = new QueryServer
+	    (new QueryEngine(graph, QueryServer.DEFAULT_MAX_CONCURRENT), 0,
+	     QueryServer.DEFAULT_MAX_CONCURRENT);
+	server.start();
+	final String base = "http://localhost:" + server.getPort()
+	    + "/quickest?";
+	ExecutorService clients = Executors.newFixedThreadPool(threads);
+	try
+	    {
+		for(int round = 0; round < 2; round++)
+		    {
+			final boolean checking = (round == 1);
+			List<Callable<Object>> work
+			    = new ArrayList<Callable<Object>>();
+			for(int t = 0; t < threads; t++)
+			    {
+				final int first = t;
+				final int step = threads;
+				work.add(new Callable<Object>()
+				    {
+					public Object call() throws IOException
+					{
+					    for(int q = first;
+						q < starts.length; q += step)
+						{
+						    int cost
+							= askServer(base, q);
+						    if(!checking) { continue; }
+						    check("QueryServer", q,
+							  expected[q], cost);
+						}
+					    return null;
+					}
+				    });
+			    }
+			long begin = System.nanoTime();
+			for(Future<Object> done : clients.invokeAll(work))
+			    { done.get(); }
+			if(round == 1)
+			    { report("QueryServer (" + threads + " clients)",
+				     begin); }
+		    }
+	    }
+	catch(InterruptedException e)
+	    { Thread.currentThread().interrupt(); }
+	catch(ExecutionException e)
+	    { System.out.println("QueryServer failed: " + e.getCause()); }
+	finally
+	    {
+		clients.shutdown();
+		server.stop();
+	    }
+    }
+
+    /**
+       runWithEdits: Times the queries from several threads through a
+       QueryEngine over a VersionedGraph, with and without a writer thread
+       adding random Flights and publishing a new version every
+       EDITS_PER_VERSION of them, once a millisecond.
+       @param threads: how many query threads to use
+       @param seed: for the random Flights
+    */
+    public void runWithEdits(final int threads, long seed)
+    {
+	final VersionedGraph versions = new VersionedGraph(graph);
+	final QueryEngine engine = new QueryEngine(versions);
+	final Random random = new Random(seed);
+	ExecutorService readers = Executors.newFixedThreadPool(threads);
+	try
+	    {
+		for(int round = 0; round < 3; round++)
+		    {
+			final AtomicBoolean done = new AtomicBoolean(false);
+			final int[] added = { 0 };
+			Thread writer = new Thread(new Runnable()
+			    {
+				public void run()
+				{
+				    while(!done.get())
+					{
+					    City a = cities[random.nextInt
+							    (cities.length)];
+					    City b = cities[random.nextInt
+							    (cities.length)];
+					    versions.addFlight
+						(a.getCode(), b.getCode(),
+						 100 * random.nextInt(24),
+						 100 * random.nextInt(24));
+					    if(++ added[0]
+					       % EDITS_PER_VERSION != 0)
+						{ continue; }
+					    versions.publish();
+					    try { Thread.sleep(1); }
+					    catch(InterruptedException e)
+						{ return; }
+					}
+				}
+			    });
+
+			List<Callable<Object>> work
+			    = new ArrayList<Callable<Object>>();
+			for(int t = 0; t < threads; t++)
+			    {
+				final int first = t;
+				work.add(new Callable<Object>()
+				    {
+					public Object call()
+					{
+					    for(int q = first;
+						q < starts.length; q += threads)
+						{
+						    engine.quickest
+							(engine.getSnapshot(),
+							 starts[q].getId(),
+							 clockTimes[q],
+							 finishes[q].getId());
+						}
+					    return null;
+					}
+				    });
+			    }
+
+			long begin = System.nanoTime();
+			if(round == 2) { writer.start(); }
+			for(Future<Object> finished : readers.invokeAll(work))
+			    { finished.get(); }
+			if(round == 1)
+			    { report("VersionedGraph, no edits", begin); }
+			if(round == 2)
+			    {
+				report("VersionedGraph, with edits", begin);
+				done.set(true);
+				writer.join();
+				System.out.println
+				    ("\t(" + added[0] + " flights added, " +
+				     versions.getVersion() +
+				     " versions published)");
+			    }
+		    }
+	    }
+	catch(InterruptedException e)
+	    { Thread.currentThread().interrupt(); }
+	catch(ExecutionException e)
+	    { System.out.println("VersionedGraph failed: " + e.getCause()); }
+	finally
+	    { readers.shutdown(); }
+    }
+
+    /**
+       runTreeRepair: Builds a ShortestPathTree for each of the first
+       NUM_TREES queries, then, for DISRUPTION_ROUNDS rounds, cancels or
+       delays DISRUPTIONS_PER_ROUND random Flights through a ScheduleDelta
+       and times repairing every tree against searching again from
+       scratch. Every City's cost in every repaired tree is checked
+       against the new search.
+       @param seed: for the random disruptions
+    */
+    public void runTreeRepair(long seed)
+    {
+	VersionedGraph versions = new VersionedGraph(graph);
+	Random random = new Random(seed);
+	int numTrees = Math.min(NUM_TREES, starts.length);
+	ShortestPathTree[] trees = new ShortestPathTree[numTrees];
+	for(int q = 0; q < numTrees; q++)
+	    {
+		trees[q] = new ShortestPathTree
+		    (versions.getSnapshot(), starts[q].getId(),
+		     Graph.clockTimeToGMTMinuteTime(clockTimes[q], starts[q]));
+	    }
+
+	double repairMillis = 0, searchMillis = 0;
+	long affected = 0;
+	int wrong = 0;
+	for(int round = 0; round < DISRUPTION_ROUNDS; round++)
+	    {
+		// Cancellations pile up over the rounds, so the last Flight
+		// is only ever delayed, never cancelled.
+		int numFlights = countFlights();
+		StringBuilder changes = new StringBuilder();
+		for(int i = 0; i < DISRUPTIONS_PER_ROUND && numFlights > 0; i++)
+		    {
+			boolean cancel = (numFlights > 1)
+			    && random.nextBoolean();
+			if(cancel) { numFlights --; }
+			changes.append(disruption(random, cancel)).append('\n');
+		    }
+		try
+		    {
+			versions.apply(ScheduleDelta.read(new BufferedReader
+			    (new StringReader(changes.toString()))));
+		    }
+		catch(IOException e) { throw new UncheckedIOException(e); }
+		GraphSnapshot snapshot = versions.publish();
+
+		long begin = System.nanoTime();
+		for(int q = 0; q < numTrees; q++)
+		    { affected += trees[q].update(snapshot); }
+		repairMillis += millisSince(begin);
+
+		FlightSearch search = new FlightSearch(snapshot.getTable());
+		begin = System.nanoTime();
+		for(int q = 0; q < numTrees; q++)
+		    {
+			search.search(trees[q].getStartCity(),
+				      trees[q].getGMTStartTime(),
+				      FlightSearch.NONE);
+		    }
+		searchMillis += millisSince(begin);
+		for(int q = 0; q < numTrees; q++)
+		    {
+			search.search(trees[q].getStartCity(),
+				      trees[q].getGMTStartTime(),
+				      FlightSearch.NONE);
+			for(int c = 0; c < snapshot.getNumCities(); c++)
+			    {
+				if(search.getCostFromStart(c)
+				   != trees[q].getCostFromStart(c))
+				    { wrong ++; }
+			    }
+		    }
+	    }
+
+	int repairs = numTrees * DISRUPTION_ROUNDS;
+	System.out.println("ShortestPathTree: " + repairs + " repairs in " +
+			   repairMillis + " ms, searching again took " +
+			   searchMillis + " ms (" + (affected / repairs) +
+			   " cities affected per repair)");
+	if(wrong > 0)
+	    {
+		System.out.println("ShortestPathTree disagrees on " + wrong +
+				   " cities after repair");
+	    }
+    }
+
+    // The Flights left in the Graph
+    private int countFlights()
+    {
+	int count = 0;
+	for(int c = 0; c < cities.length; c++)
+	    { count += cities[c].adjacentFlights.size(); }
+	return count;
+    }
+
+    /**
+       disruption: Makes a ScheduleDelta line that cancels or delays (by a
+       quarter of an hour to three hours) a Flight picked at random from
+       those left in the Graph, which must have at least one.
+       @param cancel: true to cancel the Flight, false to delay it
+    */
+    private String disruption(Random random, boolean cancel)
+    {
+	int pick = random.nextInt(countFlights());
+	int c = 0;
+	while(pick >= cities[c].adjacentFlights.size())
+	    { pick -= cities[c ++].adjacentFlights.size(); }
+	City start = cities[c];
+	Flight flight = start.adjacentFlights.get(pick);
+	int depart = flight.getTimeDepart() + start.getOffsetMinutes();
+	int arrive = flight.getTimeArrive()
+	    + flight.getDest().getOffsetMinutes();
+	String line = " XX 0 " + start.getCode() + " " + inputTime(depart) +
+	    " " + flight.getDest().getCode() + " " + inputTime(arrive);
+	if(cancel)
+	    { return ScheduleDelta.CANCEL_FLIGHT + line; }
+	int delay = 15 + random.nextInt(166);
+	return ScheduleDelta.RETIME_FLIGHT + line + " " +
+	    inputTime(depart + delay) + " " + inputTime(arrive + delay);
+    }
+
+    /**
+       askServer: Sends one quickest-path query to a QueryServer.
+       @return the cost in the answer, or City.INFINITY if there's no path
+    */
+    private int askServer(String base, int q) throws IOException
+    {
+	int clockTime = clockTimes[q];
+	String time = inputTime(Graph.clockTimeToMinuteTime(clockTime));
+	URL url = new URL(base + "from=" + starts[q].getCode() + "&to=" +
+			  finishes[q].getCode() + "&time=" + time);
+	HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+	InputStream in = connection.getInputStream();
+	String answer = new String(in.readAllBytes(), "UTF-8");
+	in.close(); // leaves the connection open for the next request
+
+	int at = answer.indexOf("\"cost\":");
+	if(at < 0) { return City.INFINITY; }
+	at += "\"cost\":".length();
+	int end = at;
+	while(end < answer.length() && Character.isDigit(answer.charAt(end)))
+	    { end ++; }
+	return Integer.parseInt(answer.substring(at, end));
+    }
+
+    /************************* HELPER METHODS *******************************/
+    private void check(String engine, int q, int expected, int actual)
+    {
+	if(expected != actual)
+	    {
+		System.out.println(engine + " disagrees on " +
+				   starts[q].getCode() + " -> " +
+				   finishes[q].getCode() + " at " +
+				   clockTimes[q] + ": " + actual +
+				   " instead of " + expected);
+	    }
+    }
+
+    private void report(String engine, long begin)
+    {
+	double millis = millisSince(begin);
+	System.out.println(engine + ": " + starts.length + " queries in " +
+			   millis + " ms (" +
+			   (1000.0 * millis / starts.length) +
+			   " us per query)");
+    }
+
+    // Writes a minute time the way the input file does, e.g. 830A
+    private static String inputTime(int minuteTime)
+    {
+	minuteTime = ((minuteTime % Graph.MINUTES_IN_A_DAY)
+		      + Graph.MINUTES_IN_A_DAY) % Graph.MINUTES_IN_A_DAY;
+	int hours = minuteTime / 60 % 12;
+	if(hours == 0) { hours = 12; }
+	return hours * 100 + minuteTime % 60
+	    + ((minuteTime < 12 * 60) ? "A" : "P");
+    }
+
+    private static double millisSince(long begin)
+    { return (System.nanoTime() - begin) / 1000000.0; }
+}
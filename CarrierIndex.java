@@ -0,0 +1,151 @@
+/******************************************************************************
+CarrierIndex.java
+
+CarrierIndex turns airline codes (the "AA" of "AA 748", or the "CO" of
+"CO1594") into small dense int ids, the way AirportCodeIndex does for
+airport codes, so that every Flight can keep its carrier as a number and
+a search can check it against a bit set instead of comparing Strings. Id
+0 is UNKNOWN, for Flights added without a carrier (from the menu, say).
+
+Airline codes are one namespace for every schedule, so there is a single
+index for the whole program, and a carrier's id means the same thing in
+every Graph, GraphSnapshot, and FlightStore. A code of two capital
+letters or digits is used directly as a position in a 36*36 array; any
+other code falls back to a HashMap. Ids stay below MAX_CARRIERS, so that
+FlightTable can pack one into 16 bits.
+
+Codes can be looked up while another thread is interning new ones; a
+lookup then either finds the new code or doesn't. Interning itself is
+synchronized, since it happens only while a schedule is being read or
+changed.
+
+The bit sets are plain long arrays, one bit per carrier id, as kept by
+RouteConstraints and checked by FlightSearch.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class CarrierIndex
+{
+    public final static int NO_ID = -1;
+    public final static int UNKNOWN = 0;
+    public final static int MAX_CARRIERS = 1 << 16;
+    private final static int SYMBOLS = 36; // capital letters and digits
+
+    private static int[] idBySlot = new int[SYMBOLS * SYMBOLS];
+    private static Map<String, Integer> otherIds
+	= new ConcurrentHashMap<String, Integer>();
+    private static volatile String[] codes = new String[64];
+    private static volatile int numIds = 0;
+
+    static
+    {
+	Arrays.fill(idBySlot, NO_ID);
+	intern("");
+    }
+
+    // Accessors
+    public static int getNumIds()
+    { return numIds; }
+
+    /**
+       codeOf: The code of a carrier id.
+       @param id: the id
+       @return the code, or "" for UNKNOWN or an id that isn't in use
+    */
+    public static String codeOf(int id)
+    {
+	String[] known = codes;
+	if(id < 0 || id >= known.length || known[id] == null) { return ""; }
+	return known[id];
+    }
+
+    /**
+       slotOf: Works out the array position of a two-character code.
+       @param code: the airline code
+       @return the position, or -1 if the code isn't two capital letters
+       or digits
+    */
+    private static int slotOf(String code)
+    {
+	if(code.length() != 2) { return -1; }
+	int slot = 0;
+	for(int i = 0; i < 2; i++)
+	    {
+		char c = code.charAt(i);
+		int symbol;
+		if(c >= 'A' && c <= 'Z') { symbol = c - 'A'; }
+		else if(c >= '0' && c <= '9') { symbol = 26 + c - '0'; }
+		else { return -1; }
+		slot = slot * SYMBOLS + symbol;
+	    }
+	return slot;
+    }
+
+    /**
+       idOf: Looks up the id of a code.
+       @param code: the airline code
+       @return the id, or NO_ID if the code hasn't been interned
+    */
+    public static int idOf(String code)
+    {
+	int slot = slotOf(code);
+	if(slot >= 0) { return idBySlot[slot]; }
+	Integer id = otherIds.get(code);
+	return (id == null) ? NO_ID : id.intValue();
+    }
+
+    /**
+       intern: Returns the id of a code, giving the code the next free id
+       if it doesn't have one yet.
+       @param code: the airline code
+       @return the code's id
+    */
+    public static synchronized int intern(String code)
+    {
+	int id = idOf(code);
+	if(id != NO_ID) { return id; }
+	if(numIds == MAX_CARRIERS)
+	    {
+		throw new IllegalStateException
+		    ("More than " + MAX_CARRIERS + " airline codes");
+	    }
+
+	id = numIds;
+	String[] known = codes;
+	if(id == known.length) { known = Arrays.copyOf(known, 2 * id); }
+	known[id] = code;
+	codes = known;
+	numIds = id + 1;
+	int slot = slotOf(code);
+	if(slot >= 0) { idBySlot[slot] = id; }
+	else { otherIds.put(code, id); }
+	return id;
+    }
+
+    /**
+       add: Adds a carrier to a bit set, growing it if need be.
+       @param carriers: the bit set, or null for an empty one
+       @param id: the carrier's id
+       @return the bit set, which may be a new array
+    */
+    public static long[] add(long[] carriers, int id)
+    {
+	int word = id >>> 6;
+	if(carriers == null) { carriers = new long[word + 1]; }
+	else if(word >= carriers.length)
+	    { carriers = Arrays.copyOf(carriers, word + 1); }
+	carriers[word] |= 1L << id;
+	return carriers;
+    }
+
+    /**
+       contains: Checks whether a carrier is in a bit set.
+    */
+    public static boolean contains(long[] carriers, int id)
+    {
+	int word = id >>> 6;
+	return word < carriers.length && (carriers[word] & (1L << id)) != 0;
+    }
+}
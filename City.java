@@ -4,14 +4,20 @@ Brian Tomasik
 Nov./Dec. 2006
 
 City objects are the verticies in the graph. They have fields for name,
-code, difference from GMT, x coordinate, and y coordinate. They store an
-adjacency list for other City objects, as well as an adjacency list for 
-Flight objects. Finally, City objects have fields used for Dijkstra's
-algorithm, and they implement Comparable so that they can be put into a
-priority queue during the algorithm.
+code, difference from GMT, x coordinate, and y coordinate. The difference
+from GMT is also kept in minutes, worked out once when the City is made,
+since every Flight and every printed time needs it in that form. When a
+City is added to a Graph, it is also given the int id that the Graph's
+AirportCodeIndex assigned to its code. They store an adjacency list for
+other City objects, as well as an adjacency list for Flight objects.
+Finally, City objects have fields used for Dijkstra's algorithm, and they
+implement Comparable so that they can be put into a priority queue during
+the algorithm. (To find the Cities near a point without looking at each
+one, see CityIndex.java.)
 ******************************************************************************/
 
 import java.util.*;
+import java.io.*;
 
 public class City implements Comparable
 {
@@ -19,7 +25,9 @@ public class City implements Comparable
 
     public String name;
     public String code;
+    public int id; // -1 until the City is added to a Graph
     public int diffGMT;
+    public int offsetMinutes; // diffGMT in minutes (e.g., -300 for -500)
     public double xCoord;
     public double yCoord;
     public List<City> adjacentCities;
@@ -39,8 +47,10 @@ public class City implements Comparable
 	name = n;
 	code = c;
 	diffGMT = d;
+	offsetMinutes = Graph.clockTimeToMinuteTime(d);
 	xCoord = x;
 	yCoord = y;
+	id = AirportCodeIndex.NO_ID;
 	adjacentCities = new LinkedList<City>();
 	adjacentFlights = new LinkedList<Flight>();
 	reset();
@@ -52,9 +62,15 @@ public class City implements Comparable
 
      public String getCode()
     { return code; }
+
+    public int getId()
+    { return id; }
     
     public int getDiffGMT()
     { return diffGMT; }
+
+    public int getOffsetMinutes()
+    { return offsetMinutes; }
     
     public double getXCoord()
     { return xCoord; }
@@ -95,12 +111,80 @@ public class City implements Comparable
     { return adjacentFlights.iterator(); }
 
     // Modifiers
+    public void setId(int i)
+    { id = i; }
+
     public void addFlight(Flight addMe)
     { adjacentFlights.add(addMe); }
 
     public void addAdjacentCity(City other)
     { adjacentCities.add(other); }
 
+    /**
+       removeFlight: Removes one Flight from this City's adjacency list. If
+       it was the last Flight to its destination, the destination is taken
+       out of adjacentCities too.
+       @param removeMe: the Flight to remove
+       @return true if the Flight was there
+    */
+    public boolean removeFlight(Flight removeMe)
+    {
+	if(!adjacentFlights.remove(removeMe)) { return false; }
+	Iterator flights = adjacentFlights.iterator();
+	while(flights.hasNext())
+	    {
+		if(((Flight)flights.next()).dest == removeMe.dest)
+		    { return true; }
+	    }
+	adjacentCities.remove(removeMe.dest);
+	return true;
+    }
+
+    /**
+       removeFlightsTo: Removes every Flight from this City to another,
+       along with the other City's place in adjacentCities.
+       @param other: the destination
+       @return the number of Flights removed
+    */
+    public int removeFlightsTo(City other)
+    {
+	int removed = 0;
+	Iterator<Flight> flights = adjacentFlights.iterator();
+	while(flights.hasNext())
+	    {
+		if(flights.next().dest == other)
+		    {
+			flights.remove();
+			removed ++;
+		    }
+	    }
+	adjacentCities.remove(other);
+	return removed;
+    }
+
+    /**
+       removeFlights: Removes the given Flights from this City's adjacency
+       list, keeping the remaining Flights in their original order. At
+       least one Flight to each adjacent City is expected to remain, so
+       adjacentCities is left alone.
+       @param removeMe: the Flights to remove
+       @return the number of Flights actually removed
+    */
+    public int removeFlights(Collection<Flight> removeMe)
+    {
+	int removed = 0;
+	Iterator<Flight> flights = adjacentFlights.iterator();
+	while(flights.hasNext())
+	    {
+		if(removeMe.contains(flights.next()))
+		    {
+			flights.remove();
+			removed ++;
+		    }
+	    }
+	return removed;
+    }
+
     public void setCostFromStart(int c)
     { costFromStart = c; }
 
@@ -122,9 +206,23 @@ public class City implements Comparable
     // Other methods
     public double distOtherCity(City other)
     {
-	double xSquared = Math.pow((xCoord - other.xCoord), 2);
-	double ySquared = Math.pow((yCoord - other.yCoord), 2);
-	return Math.sqrt(xSquared + ySquared);
+	return CityIndex.distance(xCoord, yCoord, other.xCoord, other.yCoord);
+    }
+
+    // The distance to another City rounded to whole miles, as Flights and
+    // FlightStores keep it
+    public int milesTo(City other)
+    { return (int)Math.round(distOtherCity(other)); }
+
+    public boolean alreadyHasEdgeToOtherCity(int otherCityId)
+    {
+	Iterator<City> itr = adjacentCities.iterator();
+	while(itr.hasNext())
+	    {
+		if((itr.next()).id == otherCityId)
+		    { return true; }
+	    }
+	return false;
     }
 
     public boolean alreadyHasEdgeToOtherCity(String otherCityCode)
@@ -141,28 +239,40 @@ public class City implements Comparable
     }
 
     public String toString()
+    {
+	StringWriter returnMe = new StringWriter();
+	try { writeTo(returnMe); }
+	catch(IOException e) { } // a StringWriter doesn't throw
+	return returnMe.toString();
+    }
+
+    /**
+       writeTo: Writes out the same description of the City as toString(),
+       a line at a time, without building it up as one String first.
+       @param out: where to write
+    */
+    public void writeTo(Writer out) throws IOException
     {
 	City nextCity;
 	Flight nextFlight;
-	String returnMe = "\nname = " + name + "\n" + "code = " + code + "\n" 
-	    + "diffGMT = " + diffGMT + "\n" + "x = " + xCoord + "\n" +
-	    "y = " + yCoord + "\n" + "adjacent cities:\n";
+	out.write("\nname = " + name + "\n" + "code = " + code + "\n" 
+		  + "diffGMT = " + diffGMT + "\n" + "x = " + xCoord + "\n" +
+		  "y = " + yCoord + "\n" + "adjacent cities:\n");
 	Iterator cities = adjacentCities.iterator();
 	while(cities.hasNext())
 	    {
 		nextCity = (City)cities.next();
-		returnMe = returnMe.concat(nextCity.name + ", distance = " +
-					   distOtherCity(nextCity) + "\n");
+		out.write(nextCity.name + ", distance = " +
+			  distOtherCity(nextCity) + "\n");
 	    }
-	returnMe = returnMe.concat("departing flights:\n");
+	out.write("departing flights:\n");
 	Iterator flights = adjacentFlights.iterator();
 	while(flights.hasNext())
 	    {
 		nextFlight = (Flight)flights.next();
-		returnMe = returnMe.concat(nextFlight.toString() + "\n");
+		out.write(nextFlight.toString());
+		out.write('\n');
 	    }
-
-	return returnMe;
     }
 
     public void printAllFlights()
@@ -186,6 +296,18 @@ public class City implements Comparable
 	    }	
     }
 
+    public void printFlightsWithOtherCity(int otherId)
+    {
+	Flight nextFlight;
+	Iterator flights = adjacentFlights.iterator();
+	while(flights.hasNext())
+	    {
+		nextFlight = (Flight)flights.next();
+		if((nextFlight.dest).id == otherId)
+		    { System.out.println(nextFlight); }
+	    }	
+    }
+
     public void reset()
     {
 	costFromStart = INFINITY;
@@ -0,0 +1,276 @@
+/******************************************************************************
+CityIndex.java
+
+A CityIndex finds the Cities near a point, by their x and y coordinates
+(which findFlight scales to miles), for questions like "which airports
+are within 100 miles of here?" and "which 5 airports are nearest?"
+without looking at every City.
+
+It is a 2-d tree kept in three parallel arrays, with no node objects:
+each range of the arrays holds a subtree whose root is the City in the
+middle of the range, the Cities before it are on one side of the root
+along the subtree's axis, and the Cities after it on the other. The axes
+alternate between x and y with depth. The tree is built once for a
+GraphSnapshot, in O(n log n) time, and never changes, so any number of
+threads can query it at once; every query keeps its own small buffers.
+
+A query only goes down the far side of a City when the circle it is
+searching crosses that City's splitting line, so a query near n Cities
+looks at about log n of them plus the ones it returns.
+******************************************************************************/
+
+import java.util.*;
+
+public class CityIndex
+{
+    private int size;
+    private int[] ids;                // the tree, in the order above
+    private double[] xs;
+    private double[] ys;
+
+    /**
+       Constructor: Builds the index over every City in a snapshot.
+       @param snapshot: the Cities to index
+    */
+    public CityIndex(GraphSnapshot snapshot)
+    {
+	int n = snapshot.getNumCities();
+	ids = new int[n];
+	xs = new double[n];
+	ys = new double[n];
+	size = 0;
+	for(int id = 0; id < n; id++)
+	    {
+		City city = snapshot.getCity(id);
+		if(city == null) { continue; }
+		ids[size] = id;
+		xs[size] = city.getXCoord();
+		ys[size] = city.getYCoord();
+		size ++;
+	    }
+	build(0, size, true);
+    }
+
+    // Accessors
+    public int getSize()
+    { return size; }
+
+    /**
+       distance: The straight-line distance between two points, as
+       City.distOtherCity() works it out.
+    */
+    public static double distance(double x1, double y1, double x2, double y2)
+    {
+	double dx = x1 - x2;
+	double dy = y1 - y2;
+	return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+       nearest: Finds the k Cities nearest a point.
+       @param x: the x coordinate of the point
+       @param y: the y coordinate of the point
+       @param k: how many Cities to find
+       @return their ids, nearest first; fewer than k if there aren't k
+       Cities
+    */
+    public int[] nearest(double x, double y, int k)
+    {
+	k = Math.min(k, size);
+	if(k <= 0) { return new int[0]; }
+	// A heap of the best so far, with the farthest on top
+	int[] found = new int[k];
+	double[] squares = new double[k];
+	int count = nearest(x, y, 0, size, true, found, squares, 0);
+	sortByDistance(found, squares, count);
+	return found;
+    }
+
+    private int nearest(double x, double y, int first, int end, boolean isX,
+			int[] found, double[] squares, int count)
+    {
+	if(first >= end) { return count; }
+	int middle = (first + end) >>> 1;
+	double dx = x - xs[middle];
+	double dy = y - ys[middle];
+	double square = dx * dx + dy * dy;
+	if(count < found.length)
+	    {
+		found[count] = ids[middle];
+		squares[count] = square;
+		count ++;
+		if(count == found.length)
+		    {
+			for(int i = count / 2 - 1; i >= 0; i--)
+			    { siftDown(found, squares, i, count); }
+		    }
+	    }
+	else if(square < squares[0])
+	    {
+		found[0] = ids[middle];
+		squares[0] = square;
+		siftDown(found, squares, 0, count);
+	    }
+
+	double across = isX ? dx : dy;
+	boolean nearIsFirst = (across < 0);
+	count = nearest(x, y, nearIsFirst ? first : middle + 1,
+			nearIsFirst ? middle : end, !isX, found, squares,
+			count);
+	if(count < found.length || across * across < squares[0])
+	    {
+		count = nearest(x, y, nearIsFirst ? middle + 1 : first,
+				nearIsFirst ? end : middle, !isX, found,
+				squares, count);
+	    }
+	return count;
+    }
+
+    /**
+       within: Finds every City within a distance of a point.
+       @param x: the x coordinate of the point
+       @param y: the y coordinate of the point
+       @param radius: the distance, in the same units as the coordinates
+       @return their ids, nearest first
+    */
+    public int[] within(double x, double y, double radius)
+    {
+	int[] found = new int[16];
+	double[] squares = new double[16];
+	int count = 0;
+	if(radius < 0) { return new int[0]; }
+
+	// The ranges still to look at, with the axis of each
+	int[] stack = new int[3 * 64];
+	int top = 0;
+	stack[top ++] = 0;
+	stack[top ++] = size;
+	stack[top ++] = 1;
+	double limit = radius * radius;
+	while(top > 0)
+	    {
+		boolean isX = (stack[-- top] == 1);
+		int end = stack[-- top];
+		int first = stack[-- top];
+		if(first >= end) { continue; }
+		int middle = (first + end) >>> 1;
+		double dx = x - xs[middle];
+		double dy = y - ys[middle];
+		double square = dx * dx + dy * dy;
+		if(square <= limit)
+		    {
+			if(count == found.length)
+			    {
+				found = Arrays.copyOf(found, 2 * count);
+				squares = Arrays.copyOf(squares, 2 * count);
+			    }
+			found[count] = ids[middle];
+			squares[count] = square;
+			count ++;
+		    }
+		double across = isX ? dx : dy;
+		if(top + 6 > stack.length)
+		    { stack = Arrays.copyOf(stack, 2 * stack.length); }
+		if(across < 0 || across * across <= limit)
+		    {
+			stack[top ++] = first;
+			stack[top ++] = middle;
+			stack[top ++] = isX ? 0 : 1;
+		    }
+		if(across >= 0 || across * across <= limit)
+		    {
+			stack[top ++] = middle + 1;
+			stack[top ++] = end;
+			stack[top ++] = isX ? 0 : 1;
+		    }
+	    }
+
+	for(int i = count / 2 - 1; i >= 0; i--)
+	    { siftDown(found, squares, i, count); }
+	sortByDistance(found, squares, count);
+	return Arrays.copyOf(found, count);
+    }
+
+    /************************* HELPER METHODS *******************************/
+    /**
+       build: Makes a range of the arrays into a subtree, by putting its
+       median along the axis in the middle and building each side.
+    */
+    private void build(int first, int end, boolean isX)
+    {
+	while(end - first > 1)
+	    {
+		int middle = (first + end) >>> 1;
+		select(first, end, middle, isX ? xs : ys);
+		build(first, middle, !isX);
+		first = middle + 1;
+		isX = !isX;
+	    }
+    }
+
+    /**
+       select: Moves the Cities of a range around so that the one at
+       position nth has the coordinate it would have if the range were
+       sorted, with none bigger before it and none smaller after it.
+    */
+    private void select(int first, int end, int nth, double[] coords)
+    {
+	int low = first, high = end - 1;
+	while(low < high)
+	    {
+		double pivot = coords[(low + high) >>> 1];
+		int i = low, j = high;
+		while(i <= j)
+		    {
+			while(coords[i] < pivot) { i++; }
+			while(coords[j] > pivot) { j--; }
+			if(i <= j) { swap(i ++, j --); }
+		    }
+		if(nth <= j) { high = j; }
+		else if(nth >= i) { low = i; }
+		else { return; }
+	    }
+    }
+
+    private void swap(int i, int j)
+    {
+	int id = ids[i]; ids[i] = ids[j]; ids[j] = id;
+	double x = xs[i]; xs[i] = xs[j]; xs[j] = x;
+	double y = ys[i]; ys[i] = ys[j]; ys[j] = y;
+    }
+
+    /**
+       sortByDistance: Sorts a max-heap of Cities into order, nearest
+       first.
+    */
+    private static void sortByDistance(int[] found, double[] squares,
+				       int count)
+    {
+	for(int last = count - 1; last > 0; last--)
+	    {
+		int id = found[0]; found[0] = found[last]; found[last] = id;
+		double square = squares[0];
+		squares[0] = squares[last];
+		squares[last] = square;
+		siftDown(found, squares, 0, last);
+	    }
+    }
+
+    private static void siftDown(int[] found, double[] squares, int i,
+				 int count)
+    {
+	while(true)
+	    {
+		int child = 2 * i + 1;
+		if(child >= count) { return; }
+		if(child + 1 < count && squares[child + 1] > squares[child])
+		    { child ++; }
+		if(squares[child] <= squares[i]) { return; }
+		int id = found[i]; found[i] = found[child]; found[child] = id;
+		double square = squares[i];
+		squares[i] = squares[child];
+		squares[child] = square;
+		i = child;
+	    }
+    }
+}
@@ -0,0 +1,361 @@
+/******************************************************************************
+DeltaStepping.java
+
+A DeltaStepping search finds the quickest time from one City to every
+other, with the same rules as FlightSearch.search(), but spreads a single
+search over the threads of a ForkJoinPool, for networks so big that one
+query on one thread takes too long. It is Meyer and Sanders'
+delta-stepping algorithm: instead of settling one City at a time from a
+heap, it keeps the reached Cities in buckets of costs delta minutes wide
+and relaxes the Flights out of a whole bucket at once, in parallel.
+
+Within a bucket, the Flights that take less than delta minutes (counting
+the wait for them) are "light", and can lead back into the same bucket,
+so they are relaxed over and over until the bucket stops changing. The
+"heavy" ones can only lead to later buckets, so they are relaxed once,
+when the bucket is done. A Flight's weight depends on when the traveller
+gets to its City, so it is sorted into light or heavy as it is relaxed.
+
+Each City's tentative cost lives in an AtomicLongArray, packed together
+with the arrival time that goes with it, so a thread lowers both with one
+compare-and-set, and the waiting time for the next Flight is always
+worked out from the arrival that gave the cost. Threads that lower a cost
+append the City to one shared list of Cities improved in the current
+phase; only the thread that calls search() sorts them into buckets, so
+the buckets need no locks.
+
+Cities that can't be reached end up with City.INFINITY, as in a
+FlightSearch. Paths aren't kept (FlightSearch or ShortestPathTree give
+the path once the cost is known), and a DeltaStepping has no exclusions.
+Unlike a FlightSearch, a search resets every City before it starts, which
+is small next to the work of searching the whole Graph. A DeltaStepping
+is not thread-safe: one thread calls search(), and the pool does the
+rest.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class DeltaStepping
+{
+    // A bucket width of two hours keeps most nonstop Flights heavy and
+    // most short hops with a quick connection light.
+    public final static int DEFAULT_DELTA = 120;
+
+    // Frontiers smaller than this are relaxed on the calling thread, and
+    // bigger ones are split into tasks of about this many Cities.
+    final static int CITIES_PER_TASK = 64;
+
+    // A packed entry whose cost is City.INFINITY
+    private final static long UNREACHED
+	= LongMinHeap.pack(City.INFINITY, 0);
+
+    private FlightStore store;
+    private ForkJoinPool pool;
+    private int delta;
+    private int numCities;
+    private int startCity;
+
+    // Cost and arrival time of each City, packed like a heap entry
+    private AtomicLongArray best;
+
+    // The Cities improved in the current phase, each listed once
+    private int[] improved;
+    private AtomicInteger numImproved;
+    private AtomicIntegerArray improvedStamp;  // == phase once listed
+    private int phase;
+
+    // Buckets of reached Cities, by cost / delta; a City may be left in a
+    // bucket after its cost drops into an earlier one, and is skipped
+    // there.
+    private int[][] buckets;
+    private int[] bucketSize;
+    private int numBuckets;
+
+    // The Cities being relaxed, and all those relaxed in this bucket
+    private int[] frontier;
+    private int frontierSize;
+    private int[] frontierStamp;      // == frontierRound once in frontier
+    private int frontierRound;
+    private int[] bucketCities;
+    private int numBucketCities;
+    private int[] bucketStamp;        // == bucketRound once in bucketCities
+    private int bucketRound;
+
+    // Counts for QueryMetrics
+    private int settled, relaxed, pushes, stale;
+
+    // Constructors
+    public DeltaStepping(FlightStore s, ForkJoinPool p)
+    { this(s, p, DEFAULT_DELTA); }
+
+    public DeltaStepping(FlightStore s, ForkJoinPool p, int d)
+    {
+	if(d <= 0)
+	    { throw new IllegalArgumentException("delta has to be positive"); }
+	store = s;
+	pool = p;
+	delta = d;
+	numCities = store.getNumCities();
+	best = new AtomicLongArray(numCities);
+	improved = new int[numCities];
+	numImproved = new AtomicInteger();
+	improvedStamp = new AtomicIntegerArray(numCities);
+	phase = 0;
+	buckets = new int[16][];
+	bucketSize = new int[16];
+	numBuckets = 0;
+	frontier = new int[numCities];
+	frontierStamp = new int[numCities];
+	frontierRound = 0;
+	bucketCities = new int[numCities];
+	bucketStamp = new int[numCities];
+	bucketRound = 0;
+	startCity = FlightSearch.NONE;
+	for(int city = 0; city < numCities; city++)
+	    { best.set(city, UNREACHED); }
+    }
+
+    // Accessors for the results of the most recent search
+    public int getStartCity()
+    { return startCity; }
+
+    public boolean isReached(int city)
+    { return best.get(city) != UNREACHED; }
+
+    public int getCostFromStart(int city)
+    { return LongMinHeap.costOf(best.get(city)); }
+
+    public int getTimeArriveThisCity(int city)
+    { return LongMinHeap.nodeOf(best.get(city)); }
+
+    /**
+       search: Finds the quickest time from the start to every City.
+       @param start: the id of the City where the traveller begins
+       @param GMTStartTimeMinutes: the start time in GMT minutes
+    */
+    public void search(int start, int GMTStartTimeMinutes)
+    {
+	long beginNanos = QueryMetrics.enabled ? System.nanoTime() : 0;
+	settled = relaxed = pushes = stale = 0;
+	for(int city = 0; city < numCities; city++)
+	    { best.set(city, UNREACHED); }
+	for(int b = 0; b < numBuckets; b++)
+	    { bucketSize[b] = 0; }
+	numBuckets = 0;
+	long resetNanos = QueryMetrics.enabled
+	    ? System.nanoTime() - beginNanos : 0;
+
+	startCity = start;
+	best.set(start, LongMinHeap.pack(0, GMTStartTimeMinutes));
+	addToBucket(0, start);
+
+	for(int current = 0; current < numBuckets; current++)
+	    {
+		if(bucketRound == Integer.MAX_VALUE)
+		    {
+			Arrays.fill(bucketStamp, 0);
+			bucketRound = 0;
+		    }
+		bucketRound ++;
+		numBucketCities = 0;
+		takeBucket(current);
+		while(frontierSize > 0)
+		    {
+			for(int i = 0; i < frontierSize; i++)
+			    {
+				int city = frontier[i];
+				if(bucketStamp[city] != bucketRound)
+				    {
+					bucketStamp[city] = bucketRound;
+					bucketCities[numBucketCities ++] = city;
+				    }
+			    }
+			relaxAll(frontier, frontierSize, true);
+			nextFrontier();
+			distribute(current);
+		    }
+		relaxAll(bucketCities, numBucketCities, false);
+		distribute(current);
+	    }
+
+	if(QueryMetrics.enabled)
+	    {
+		QueryMetrics.DELTA_STEPPING.record
+		    (System.nanoTime() - beginNanos, settled, relaxed, pushes,
+		     stale, numCities, resetNanos);
+	    }
+    }
+
+    /**
+       takeBucket: Moves the Cities still in a bucket into the frontier,
+       once each, and empties the bucket.
+    */
+    private void takeBucket(int b)
+    {
+	nextFrontier();
+	int[] bucket = buckets[b];
+	for(int i = 0; i < bucketSize[b]; i++)
+	    {
+		int city = bucket[i];
+		if(bucketOf(city) != b || frontierStamp[city] == frontierRound)
+		    { stale ++; continue; }
+		frontierStamp[city] = frontierRound;
+		frontier[frontierSize ++] = city;
+	    }
+	bucketSize[b] = 0;
+    }
+
+    /**
+       distribute: Sorts the Cities improved in the last phase into the
+       frontier, if they're still in the current bucket, or into their
+       buckets.
+    */
+    private void distribute(int current)
+    {
+	int count = numImproved.get();
+	for(int i = 0; i < count; i++)
+	    {
+		int city = improved[i];
+		int b = bucketOf(city);
+		if(b == current)
+		    {
+			if(frontierStamp[city] != frontierRound)
+			    {
+				frontierStamp[city] = frontierRound;
+				frontier[frontierSize ++] = city;
+			    }
+		    }
+		else
+		    { addToBucket(b, city); }
+	    }
+	numImproved.set(0);
+    }
+
+    private void nextFrontier()
+    {
+	if(frontierRound == Integer.MAX_VALUE)
+	    {
+		Arrays.fill(frontierStamp, 0);
+		frontierRound = 0;
+	    }
+	frontierRound ++;
+	frontierSize = 0;
+    }
+
+    private int bucketOf(int city)
+    { return getCostFromStart(city) / delta; }
+
+    private void addToBucket(int b, int city)
+    {
+	if(b >= buckets.length)
+	    {
+		int length = Math.max(b + 1, 2 * buckets.length);
+		buckets = Arrays.copyOf(buckets, length);
+		bucketSize = Arrays.copyOf(bucketSize, length);
+	    }
+	if(buckets[b] == null) { buckets[b] = new int[16]; }
+	if(bucketSize[b] == buckets[b].length)
+	    { buckets[b] = Arrays.copyOf(buckets[b], 2 * buckets[b].length); }
+	buckets[b][bucketSize[b] ++] = city;
+	if(b >= numBuckets) { numBuckets = b + 1; }
+	pushes ++;
+    }
+
+    /**
+       relaxAll: Relaxes the light or the heavy Flights out of some Cities,
+       in parallel if there are enough of them.
+    */
+    private void relaxAll(int[] cities, int count, boolean light)
+    {
+	if(phase == Integer.MAX_VALUE)
+	    {
+		for(int city = 0; city < numCities; city++)
+		    { improvedStamp.set(city, 0); }
+		phase = 0;
+	    }
+	phase ++;
+	if(light) { settled += count; }
+	for(int i = 0; i < count; i++)
+	    { relaxed += store.getDegree(cities[i]); }
+	if(count < CITIES_PER_TASK)
+	    { relaxRange(cities, 0, count, light); }
+	else
+	    { pool.invoke(new Relax(cities, 0, count, light)); }
+    }
+
+    /**
+       Relax: The task of relaxing the Flights out of a range of Cities.
+    */
+    private class Relax extends RecursiveAction
+    {
+	private static final long serialVersionUID = 1L;
+
+	private int[] cities;
+	private int first, end;
+	private boolean light;
+
+	Relax(int[] c, int f, int e, boolean l)
+	{
+	    cities = c;
+	    first = f;
+	    end = e;
+	    light = l;
+	}
+
+	protected void compute()
+	{
+	    if(end - first > CITIES_PER_TASK)
+		{
+		    int middle = (first + end) >>> 1;
+		    invokeAll(new Relax(cities, first, middle, light),
+			      new Relax(cities, middle, end, light));
+		    return;
+		}
+	    relaxRange(cities, first, end, light);
+	}
+    }
+
+    private void relaxRange(int[] cities, int first, int end, boolean light)
+    {
+	for(int i = first; i < end; i++)
+	    {
+		int city = cities[i];
+		long entry = best.get(city);
+		int cost = LongMinHeap.costOf(entry);
+		int arrive = LongMinHeap.nodeOf(entry);
+		boolean intermediate = (city != startCity);
+		int degree = store.getDegree(city);
+		for(int k = 0; k < degree; k++)
+		    {
+			int waitingTime = Graph.getWaitingTime
+			    (arrive, store.getTimeDepart(city, k));
+			if(waitingTime < Graph.SHORTEST_TIME_TO_CHANGE_PLANES
+			   && intermediate)
+			    { waitingTime += Graph.MINUTES_IN_A_DAY; }
+			int weight = waitingTime + store.getFlightTime(city, k);
+			if((weight < delta) != light) { continue; }
+			lower(store.getDest(city, k), cost + weight,
+			      store.getTimeArrive(city, k));
+		    }
+	    }
+    }
+
+    /**
+       lower: Lowers a City's tentative cost if the new one is better, and
+       lists the City as improved in this phase.
+    */
+    private void lower(int city, int cost, int arrive)
+    {
+	long entry = LongMinHeap.pack(cost, arrive);
+	while(true)
+	    {
+		long old = best.get(city);
+		if(LongMinHeap.costOf(old) <= cost) { return; }
+		if(best.compareAndSet(city, old, entry)) { break; }
+	    }
+	if(improvedStamp.getAndSet(city, phase) != phase)
+	    { improved[numImproved.getAndIncrement()] = city; }
+    }
+}
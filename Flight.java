@@ -5,30 +5,40 @@ Based on Weiss's Edge class (p. 479).
 Nov./Dec. 2006
 
 Flight objects give information about flights: time of departure, time of
-arrival, the flight time in between, and the differences from GMT of the
-departure and arrival Cities. Flight objects are stored in an adjacency list
-of the departing City, so they only need to have a field for the destination
-City.
+arrival, the flight time in between, the differences from GMT of the
+departure and arrival Cities, and the distance flown in whole miles, which
+is worked out once, when the Flight is added, for searches by distance.
+They also keep the airline, as a CarrierIndex id, and the flight number.
+Flight objects are stored in an adjacency list of the departing City, so
+they only need to have a field for the destination City.
 ******************************************************************************/
 
 public class Flight
 {
+    // Flight numbers above this are kept as 0, for "not known"
+    final static int MAX_FLIGHT_NUMBER = 0xffff;
+
     public City dest;
     public int timeDepart;
     public int timeArrive;
     public int flightTime;
     public int diffGMTStartingCityInMinutes;
     public int diffGMTEndingCityInMinutes;
+    public int miles;
+    public int carrier;
+    public int flightNumber;
 
-    public Flight(City d, int dep, int arr, int diff)
+    public Flight(City d, int dep, int arr, int diff, int m, int c, int n)
     {
 	dest = d;
 	timeDepart = dep;
 	timeArrive = arr;
 	flightTime = Graph.getWaitingTime(dep, arr);
 	diffGMTStartingCityInMinutes = diff;
-	diffGMTEndingCityInMinutes 
-	    = Graph.clockTimeToMinuteTime(dest.getDiffGMT());
+	diffGMTEndingCityInMinutes = dest.getOffsetMinutes();
+	miles = m;
+	carrier = c;
+	flightNumber = n;
     }
 
     public City getDest()
@@ -46,6 +56,28 @@ public class Flight
     public int getFlightTime()
     { return flightTime; }
 
+    public int getMiles()
+    { return miles; }
+
+    public int getCarrier()
+    { return carrier; }
+
+    public int getFlightNumber()
+    { return flightNumber; }
+
+    /**
+       setTimes: Moves the Flight to new departure and arrival times, for
+       a schedule change.
+       @param dep: the new GMT minute time of departure
+       @param arr: the new GMT minute time of arrival
+    */
+    public void setTimes(int dep, int arr)
+    {
+	timeDepart = dep;
+	timeArrive = arr;
+	flightTime = Graph.getWaitingTime(dep, arr);
+    }
+
     public String toString()
     {
 	String depart = Graph.minuteTimeToClockTime
@@ -53,7 +85,9 @@ public class Flight
 	String arrive = Graph.minuteTimeToClockTime
 	    (timeArrive + diffGMTEndingCityInMinutes);
 
-	return "to " + dest.getName() + 
+	String name = (carrier == CarrierIndex.UNKNOWN) ? ""
+	    : CarrierIndex.codeOf(carrier) + " " + flightNumber + " ";
+	return name + "to " + dest.getName() + 
 	    "; " + depart + " to " + arrive + "; takes " +
 	    Graph.minuteTimeToHoursAndMinutes(flightTime);
     }
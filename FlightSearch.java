@@ -0,0 +1,725 @@
+/******************************************************************************
+FlightSearch.java
+
+A FlightSearch runs the same quickest-time search as Graph.dijkstra(), but
+over a FlightStore instead of City and Flight objects. All of the search
+state (cost, arrival time, previous City, and so on) lives in int arrays
+owned by the FlightSearch, indexed by City id, and the heap holds packed
+longs. Instead of resetting every City before each search, the arrays are
+stamped with a search number, so an entry from an older search simply
+counts as "not reached yet". Once the arrays are allocated, a search
+creates no objects at all.
+
+A search can be told to avoid some Cities and not to take some Flights,
+for queries with RouteConstraints and for the spur searches of
+AlternativeSearch, which have to keep off part of the Graph without
+changing it. The avoided Cities are stamped too, so changing them costs
+nothing per City either, and the list of banned Flights is only looked
+at for Cities that have one. A search can also be kept to some airlines,
+given as a CarrierIndex bit set, so that "only on my alliance" needs no
+Graph of its own; each Flight then costs one more bit test.
+
+A search can also start from several Cities at once, each reached at its
+own cost and time (the time it takes to get to each of a metro area's
+airports, say), and stop at whichever of several Cities it settles
+first. This is the same as adding a virtual start with a Flight to each
+of the real ones, so one search answers what would otherwise take one per
+pair of start and finish.
+
+A FlightSearch is reused from query to query but is not thread-safe; each
+thread that answers queries should have its own. Several FlightSearches
+can share one FlightStore, since searching never changes the store.
+******************************************************************************/
+
+import java.util.*;
+
+public class FlightSearch
+{
+    public final static int NONE = -1;
+
+    private FlightStore store;
+
+    // Search state, indexed by City id
+    private int[] costFromStart;
+    private int[] timeArriveThisCity;
+    private int[] timeDepartPrevCity;
+    private int[] prevOnShortestPath;
+    private int[] prevFlight;      // k of the Flight taken from prev City
+    private int[] reachedStamp;    // == stamp once reached in this search
+    private int[] settledStamp;    // == stamp once settled in this search
+    private int[] targetStamp;     // == stamp if the search stops there
+    private int stamp;
+    private LongMinHeap heap;
+    private int startCity;
+    private int settledFinish;     // the target the last search settled
+    private int pushes;            // heap pushes in this search
+    private int[] queue;           // for findFewestStops(), and the
+                                   // order the last search settled in
+    private int numSettled;
+    private int[] excludedStamp;   // == exclusionStamp if avoided
+    private int exclusionStamp;
+    private int[] bannedFrom;      // == exclusionStamp if a Flight from
+                                   // the City is banned
+    private int[] bannedFlights;   // city, k pairs that may not be taken
+    private int numBanned;
+    private long[] allowedCarriers; // null if every airline may be taken
+
+    // Constructor
+    public FlightSearch(FlightStore s)
+    {
+	store = s;
+	int n = store.getNumCities();
+	costFromStart = new int[n];
+	timeArriveThisCity = new int[n];
+	timeDepartPrevCity = new int[n];
+	prevOnShortestPath = new int[n];
+	prevFlight = new int[n];
+	reachedStamp = new int[n];
+	settledStamp = new int[n];
+	targetStamp = new int[n];
+	stamp = 0;
+	heap = new LongMinHeap(n);
+	queue = new int[n];
+	excludedStamp = new int[n];
+	exclusionStamp = 1;
+	bannedFrom = new int[n];
+	bannedFlights = new int[16];
+	numBanned = 0;
+	startCity = NONE;
+	settledFinish = NONE;
+    }
+
+    // Accessors for the results of the most recent search
+    public FlightStore getStore()
+    { return store; }
+
+    /**
+       setStore: Switches to another FlightStore, such as a newer version of
+       the same schedule, growing the arrays if it has more Cities. Ids
+       keep their meaning from one version to the next, so nothing else
+       has to change.
+       @param s: the store to search from now on
+    */
+    public void setStore(FlightStore s)
+    {
+	store = s;
+	int n = store.getNumCities();
+	if(n <= costFromStart.length) { return; }
+	n = Math.max(n, costFromStart.length + costFromStart.length / 2);
+	costFromStart = Arrays.copyOf(costFromStart, n);
+	timeArriveThisCity = Arrays.copyOf(timeArriveThisCity, n);
+	timeDepartPrevCity = Arrays.copyOf(timeDepartPrevCity, n);
+	prevOnShortestPath = Arrays.copyOf(prevOnShortestPath, n);
+	prevFlight = Arrays.copyOf(prevFlight, n);
+	reachedStamp = Arrays.copyOf(reachedStamp, n);
+	settledStamp = Arrays.copyOf(settledStamp, n);
+	targetStamp = Arrays.copyOf(targetStamp, n);
+	queue = Arrays.copyOf(queue, n);
+	excludedStamp = Arrays.copyOf(excludedStamp, n);
+	bannedFrom = Arrays.copyOf(bannedFrom, n);
+    }
+
+    public int getStartCity()
+    { return startCity; }
+
+    // The City the last quickest-time search stopped at, or NONE if it
+    // didn't stop at one
+    public int getFinishCity()
+    { return settledFinish; }
+
+    public boolean isReached(int city)
+    { return reachedStamp[city] == stamp; }
+
+    public int getCostFromStart(int city)
+    { return isReached(city) ? costFromStart[city] : City.INFINITY; }
+
+    public int getTimeArriveThisCity(int city)
+    { return timeArriveThisCity[city]; }
+
+    public int getTimeDepartPrevCity(int city)
+    { return timeDepartPrevCity[city]; }
+
+    public int getPrevOnShortestPath(int city)
+    { return isReached(city) ? prevOnShortestPath[city] : NONE; }
+
+    public int getPrevFlight(int city)
+    { return prevFlight[city]; }
+
+    // The Cities the most recent quickest-time search settled, in order
+    // of cost (for findFewestStops(), in order of number of Flights)
+    public int getNumSettled()
+    { return numSettled; }
+
+    public int getSettledCity(int i)
+    { return queue[i]; }
+
+    /**
+       getPath: The Cities on the path to the given City found by the most
+       recent search.
+       @param finish: the id of the City at the end of the path
+       @return the ids from the start to finish, or null if finish wasn't
+       reached
+    */
+    public int[] getPath(int finish)
+    {
+	if(!isReached(finish)) { return null; }
+	int length = 0;
+	for(int city = finish; city != NONE; city = prevOnShortestPath[city])
+	    { length ++; }
+	int[] path = new int[length];
+	for(int city = finish; city != NONE; city = prevOnShortestPath[city])
+	    { path[-- length] = city; }
+	return path;
+    }
+
+    /**
+       excludeCity: Keeps the following quickest-time searches from going
+       through a City, until clearExclusions().
+    */
+    public void excludeCity(int city)
+    { excludedStamp[city] = exclusionStamp; }
+
+    public boolean isExcluded(int city)
+    { return excludedStamp[city] == exclusionStamp; }
+
+    /**
+       banFlight: Keeps the following quickest-time searches from taking
+       one Flight, until clearExclusions().
+       @param city: the id of the City it leaves from
+       @param k: its number in that City's row
+    */
+    public void banFlight(int city, int k)
+    {
+	if(2 * numBanned == bannedFlights.length)
+	    {
+		bannedFlights = Arrays.copyOf(bannedFlights,
+					      2 * bannedFlights.length);
+	    }
+	bannedFrom[city] = exclusionStamp;
+	bannedFlights[2 * numBanned] = city;
+	bannedFlights[2 * numBanned + 1] = k;
+	numBanned ++;
+    }
+
+    /**
+       allowCarriers: Keeps the following quickest-time searches to the
+       Flights of some airlines, until clearExclusions().
+       @param carriers: a CarrierIndex bit set of the airlines to allow
+    */
+    public void allowCarriers(long[] carriers)
+    { allowedCarriers = carriers; }
+
+    /**
+       clearExclusions: Lets searches use every City and Flight again.
+    */
+    public void clearExclusions()
+    {
+	numBanned = 0;
+	allowedCarriers = null;
+	exclusionStamp ++;
+	if(exclusionStamp == Integer.MAX_VALUE)
+	    {
+		Arrays.fill(excludedStamp, 0);
+		Arrays.fill(bannedFrom, 0);
+		exclusionStamp = 1;
+	    }
+    }
+
+    private boolean isBanned(int city, int k)
+    {
+	if(bannedFrom[city] != exclusionStamp) { return false; }
+	for(int i = 0; i < 2 * numBanned; i += 2)
+	    {
+		if(bannedFlights[i] == city && bannedFlights[i + 1] == k)
+		    { return true; }
+	    }
+	return false;
+    }
+
+    /**
+       addToFootprint: Adds this search's buffers to a memory report. Each
+       thread answering queries has its own, so they count once per
+       thread.
+       @param footprint: the report to add to
+    */
+    public void addToFootprint(MemoryFootprint footprint)
+    {
+	footprint.add("FlightSearch buffers", 11,
+		      MemoryFootprint.shallowSize(FlightSearch.class)
+		      + 11 * MemoryFootprint.arraySize(costFromStart.length, 4)
+		      + MemoryFootprint.shallowSize(LongMinHeap.class)
+		      + MemoryFootprint.arraySize(heap.capacity(), 8));
+    }
+
+    /**
+       findQuickestPaths: Dijkstra's algorithm with the same rules as
+       Graph.findQuickestPaths(): waiting times come from
+       Graph.getWaitingTime(), and every connection after the first Flight
+       needs at least SHORTEST_TIME_TO_CHANGE_PLANES minutes, or else the
+       traveller waits for the next day's Flight.
+       @param graph: the Graph that holds the Cities (for the time zone of
+       the start)
+       @param start: the id of the City where the traveller begins
+       @param startClockTime: the local clock time of the start
+       @param finish: the id of the City where the traveller wants to go;
+       the search stops once it is settled. Use NONE to search everywhere.
+    */
+    public void findQuickestPaths(Graph graph, int start, int startClockTime,
+				  int finish)
+    {
+	int GMTStartTimeMinutes = Graph.clockTimeToGMTMinuteTime
+	    (startClockTime, graph.getCity(start));
+	search(start, GMTStartTimeMinutes, finish);
+    }
+
+    /**
+       search: Does the work of findQuickestPaths(), given the start time
+       in GMT minutes.
+    */
+    public void search(int start, int GMTStartTimeMinutes, int finish)
+    { searchFrom(start, 0, GMTStartTimeMinutes, false, finish); }
+
+    /**
+       searchFrom: Like search(), but starting partway through a trip: the
+       traveller is already at the start City, at the given cost, and
+       (if connecting) has just come off a Flight, so the first Flight
+       taken also needs SHORTEST_TIME_TO_CHANGE_PLANES.
+       @param start: the id of the City the search begins at
+       @param startCost: the cost of getting there
+       @param GMTArriveTime: when the traveller is there, in GMT minutes
+       @param connecting: whether the traveller arrived by Flight
+       @param finish: the id of the City to stop at, or NONE
+    */
+    public void searchFrom(int start, int startCost, int GMTArriveTime,
+			   boolean connecting, int finish)
+    {
+	run(start, startCost, GMTArriveTime, connecting, finish,
+	    City.INFINITY);
+    }
+
+    /**
+       searchWithin: Finds every City that can be reached from the start
+       within a budget of minutes. Cities that would cost more are never
+       put in the heap, so the search stops expanding at the budget instead
+       of going on through the whole Graph. Afterwards getSettledCity()
+       lists the Cities reached, quickest first, with no sorting needed.
+       @param start: the id of the City where the traveller begins
+       @param GMTStartTimeMinutes: the start time in GMT minutes
+       @param budget: the most minutes the trip may take
+    */
+    public void searchWithin(int start, int GMTStartTimeMinutes, int budget)
+    { run(start, 0, GMTStartTimeMinutes, false, NONE, budget); }
+
+    /**
+       searchMany: Finds the quickest way from any of several Cities to
+       any of several others. Each start is reached at its own cost and
+       time, as if by a Flight from one virtual start, and the search
+       stops at the first finish it settles, which getFinishCity() then
+       gives. No start needs a connection for its first Flight.
+       @param starts: the ids of the Cities where the traveller can begin
+       @param startCosts: what getting to each start costs
+       @param GMTArriveTimes: when the traveller is at each start, in GMT
+       minutes
+       @param finishes: the ids of the Cities the traveller can end at
+    */
+    public void searchMany(int[] starts, int[] startCosts,
+			   int[] GMTArriveTimes, int[] finishes)
+    {
+	searchMany(starts, startCosts, GMTArriveTimes, finishes, false,
+		   City.INFINITY);
+    }
+
+    /**
+       searchMany: Like the above, but the traveller may have come to the
+       starts by Flight (as at a ShardServer, whose starts are Cities that
+       Flights from other shards reach), and Cities that would cost more
+       than a budget are left out.
+       @param connecting: whether every start was reached by Flight, so
+       its first Flight needs a connection
+       @param budget: the most the cost may be
+    */
+    public void searchMany(int[] starts, int[] startCosts,
+			   int[] GMTArriveTimes, int[] finishes,
+			   boolean connecting, int budget)
+    {
+	long beginNanos = QueryMetrics.enabled ? System.nanoTime() : 0;
+	pushes = 0;
+	newSearch();
+	startCity = (starts.length > 0) ? starts[0] : NONE;
+	for(int i = 0; i < starts.length; i++)
+	    {
+		int city = starts[i];
+		if(isExcluded(city)) { continue; }
+		if(!isReached(city) || startCosts[i] < costFromStart[city])
+		    {
+			reach(city, startCosts[i], GMTArriveTimes[i], -1, NONE,
+			      NONE);
+		    }
+	    }
+	for(int i = 0; i < finishes.length; i++)
+	    { targetStamp[finishes[i]] = stamp; }
+	run(connecting, budget, beginNanos);
+    }
+
+    private void run(int start, int startCost, int GMTArriveTime,
+		     boolean connecting, int finish, int budget)
+    {
+	long beginNanos = QueryMetrics.enabled ? System.nanoTime() : 0;
+	pushes = 0;
+	newSearch();
+	startCity = start;
+	reach(start, startCost, GMTArriveTime, -1, NONE, NONE);
+	if(finish != NONE) { targetStamp[finish] = stamp; }
+	run(connecting, budget, beginNanos);
+    }
+
+    /**
+       run: Dijkstra's algorithm from whatever has been reached, until it
+       settles a target or runs out. The starts are the Cities with no
+       previous City; unless connecting, their first Flight needs no
+       connection.
+    */
+    private void run(boolean connecting, int budget, long beginNanos)
+    {
+	int settled = 0, relaxed = 0, stale = 0; // for QueryMetrics
+	settledFinish = NONE;
+	while(!heap.isEmpty())
+	    {
+		int city = LongMinHeap.nodeOf(heap.pop());
+		if(settledStamp[city] == stamp) { stale ++; continue; }
+		settledStamp[city] = stamp;
+		queue[settled ++] = city;
+		if(targetStamp[city] == stamp)
+		    {
+			settledFinish = city;
+			break;
+		    }
+
+		boolean intermediate = (prevOnShortestPath[city] != NONE)
+		    || connecting;
+		int cost = costFromStart[city];
+		int arrive = timeArriveThisCity[city];
+		int degree = store.getDegree(city);
+		relaxed += degree;
+		for(int k = 0; k < degree; k++)
+		    {
+			int depart = store.getTimeDepart(city, k);
+			int waitingTime = Graph.getWaitingTime(arrive, depart);
+			if(waitingTime < Graph.SHORTEST_TIME_TO_CHANGE_PLANES
+			   && intermediate)
+			    { waitingTime += Graph.MINUTES_IN_A_DAY; }
+
+			int dest = store.getDest(city, k);
+			if(excludedStamp[dest] == exclusionStamp ||
+			   (numBanned > 0 && isBanned(city, k)) ||
+			   (allowedCarriers != null && !CarrierIndex.contains
+			    (allowedCarriers, store.getCarrier(city, k))))
+			    { continue; }
+			int potentiallyFasterTime = cost + waitingTime
+			    + store.getFlightTime(city, k);
+			if(potentiallyFasterTime > budget) { continue; }
+			if(!isReached(dest)
+			   || potentiallyFasterTime < bound(dest, connecting))
+			    {
+				reach(dest, potentiallyFasterTime,
+				      store.getTimeArrive(city, k), depart,
+				      city, k);
+			    }
+		    }
+	    }
+	numSettled = settled;
+
+	// Stamping means nothing had to be reset.
+	if(QueryMetrics.enabled)
+	    {
+		QueryMetrics.FLIGHT_SEARCH.record
+		    (System.nanoTime() - beginNanos, settled, relaxed, pushes,
+		     stale, 0, 0);
+	    }
+    }
+
+    /**
+       bound: What a Flight into a reached City has to beat. Usually that
+       is the City's cost, but a start that needs no connection is as good
+       for going on as a Flight in SHORTEST_TIME_TO_CHANGE_PLANES minutes
+       sooner, so with several starts, one only gives way to a Flight that
+       gets there that much sooner (or to anything sooner if the search
+       stops there anyway). With one start this never matters, since
+       nothing gets back to it sooner than it started.
+    */
+    private int bound(int dest, boolean connecting)
+    {
+	if(connecting || prevOnShortestPath[dest] != NONE
+	   || targetStamp[dest] == stamp)
+	    { return costFromStart[dest]; }
+	return costFromStart[dest] - Graph.SHORTEST_TIME_TO_CHANGE_PLANES;
+    }
+
+    /**
+       findFewestStops: Breadth-first search for the path with the fewest
+       Flights, like Graph.fewestCities(). Flights are scanned in the same
+       order as the City's adjacent Cities, so ties are broken the same
+       way. Afterwards getPath() gives the path and getCostFromStart() gives
+       the number of Flights on it, not minutes.
+       @param start: the id of the City where the traveller begins
+       @param finish: the id of the City to stop at, or NONE to search
+       everywhere
+    */
+    public void findFewestStops(int start, int finish)
+    {
+	int settled = 0, relaxed = 0; // for QueryMetrics
+	long beginNanos = QueryMetrics.enabled ? System.nanoTime() : 0;
+	newSearch();
+	startCity = start;
+	int head = 0, tail = 0;
+	record(start, 0, 0, -1, NONE, NONE);
+	queue[tail ++] = start;
+
+	while(head < tail)
+	    {
+		int city = queue[head ++];
+		settled ++;
+		if(city == finish) { break; }
+		int degree = store.getDegree(city);
+		relaxed += degree;
+		for(int k = 0; k < degree; k++)
+		    {
+			int dest = store.getDest(city, k);
+			if(!isReached(dest))
+			    {
+				record(dest, costFromStart[city] + 1, 0, -1,
+				       city, k);
+				queue[tail ++] = dest;
+			    }
+		    }
+	    }
+	numSettled = head;
+
+	if(QueryMetrics.enabled)
+	    {
+		QueryMetrics.FEWEST_CITIES.record
+		    (System.nanoTime() - beginNanos, settled, relaxed, tail,
+		     0, 0, 0);
+	    }
+    }
+
+    /**
+       findShortestRoute: Dijkstra's algorithm by distance instead of time,
+       for the route with the fewest miles flown. Every Flight's miles come
+       straight from the store, and when it leaves doesn't matter, so no
+       waiting time or connection is counted; searchAlongPath() then finds
+       the quickest way to fly the route. Avoided Cities and banned Flights
+       are kept out as in search(). Afterwards getPath() gives the route
+       and getCostFromStart() gives miles, not minutes.
+       @param start: the id of the City where the traveller begins
+       @param finish: the id of the City to stop at, or NONE to search
+       everywhere
+    */
+    public void findShortestRoute(int start, int finish)
+    {
+	int settled = 0, relaxed = 0, stale = 0; // for QueryMetrics
+	long beginNanos = QueryMetrics.enabled ? System.nanoTime() : 0;
+	pushes = 0;
+	newSearch();
+	startCity = start;
+	settledFinish = NONE;
+	reach(start, 0, 0, -1, NONE, NONE);
+	while(!heap.isEmpty())
+	    {
+		int city = LongMinHeap.nodeOf(heap.pop());
+		if(settledStamp[city] == stamp) { stale ++; continue; }
+		settledStamp[city] = stamp;
+		queue[settled ++] = city;
+		if(city == finish)
+		    {
+			settledFinish = city;
+			break;
+		    }
+
+		int miles = costFromStart[city];
+		int degree = store.getDegree(city);
+		relaxed += degree;
+		for(int k = 0; k < degree; k++)
+		    {
+			int dest = store.getDest(city, k);
+			if(excludedStamp[dest] == exclusionStamp ||
+			   (numBanned > 0 && isBanned(city, k)) ||
+			   (allowedCarriers != null && !CarrierIndex.contains
+			    (allowedCarriers, store.getCarrier(city, k))))
+			    { continue; }
+			int shorter = miles + store.getMiles(city, k);
+			if(!isReached(dest) || shorter < costFromStart[dest])
+			    { reach(dest, shorter, 0, -1, city, k); }
+		    }
+	    }
+	numSettled = settled;
+
+	if(QueryMetrics.enabled)
+	    {
+		QueryMetrics.SHORTEST_ROUTE.record
+		    (System.nanoTime() - beginNanos, settled, relaxed, pushes,
+		     stale, 0, 0);
+	    }
+    }
+
+    /**
+       searchAlongPath: Finds the quickest way to fly a given sequence of
+       Cities, taking only Flights from each City to the next, like
+       Graph.minimizeTimeGivenPath(). Since arriving earlier never makes a
+       later connection worse, the best time to each City on the path is
+       found by trying every Flight from the City before it, with the same
+       waiting rules as search().
+       @param path: the ids of the Cities to fly through, in order
+       @param GMTStartTimeMinutes: the start time in GMT minutes
+    */
+    public void searchAlongPath(int[] path, int GMTStartTimeMinutes)
+    {
+	newSearch();
+	startCity = path[0];
+	record(path[0], 0, GMTStartTimeMinutes, -1, NONE, NONE);
+	for(int i = 0; i + 1 < path.length; i++)
+	    {
+		int city = path[i];
+		int next = path[i + 1];
+		int cost = costFromStart[city];
+		int arrive = timeArriveThisCity[city];
+		int degree = store.getDegree(city);
+		for(int k = 0; k < degree; k++)
+		    {
+			if(store.getDest(city, k) != next) { continue; }
+			int depart = store.getTimeDepart(city, k);
+			int waitingTime = Graph.getWaitingTime(arrive, depart);
+			if(waitingTime < Graph.SHORTEST_TIME_TO_CHANGE_PLANES
+			   && i > 0)
+			    { waitingTime += Graph.MINUTES_IN_A_DAY; }
+			int potentiallyFasterTime = cost + waitingTime
+			    + store.getFlightTime(city, k);
+			if(!isReached(next)
+			   || potentiallyFasterTime < costFromStart[next])
+			    {
+				record(next, potentiallyFasterTime,
+				       store.getTimeArrive(city, k), depart,
+				       city, k);
+			    }
+		    }
+		if(!isReached(next)) { return; }
+	    }
+    }
+
+    private void newSearch()
+    {
+	heap.clear();
+	numSettled = 0;
+	stamp ++;
+	if(stamp == Integer.MAX_VALUE)
+	    {
+		Arrays.fill(reachedStamp, 0);
+		Arrays.fill(settledStamp, 0);
+		Arrays.fill(targetStamp, 0);
+		stamp = 1;
+	    }
+    }
+
+    private void reach(int city, int cost, int arrive, int departPrev,
+		       int prev, int k)
+    {
+	record(city, cost, arrive, departPrev, prev, k);
+	heap.push(LongMinHeap.pack(cost, city));
+	pushes ++;
+    }
+
+    private void record(int city, int cost, int arrive, int departPrev,
+			int prev, int k)
+    {
+	reachedStamp[city] = stamp;
+	costFromStart[city] = cost;
+	timeArriveThisCity[city] = arrive;
+	timeDepartPrevCity[city] = departPrev;
+	prevOnShortestPath[city] = prev;
+	prevFlight[city] = k;
+    }
+
+    /**
+       printPath: Prints the path to the given City found by the most
+       recent search, in the same form as Graph.printPath().
+       @param graph: the Graph that holds the Cities (for their names and
+       time zones)
+       @param finish: the id of the City at the end of the path
+       @return true if there was a path to print
+    */
+    public boolean printPath(Graph graph, int finish)
+    {
+	if(!isReached(finish))
+	    {
+		System.out.println("Sorry! There is no such path.");
+		return false;
+	    }
+
+	City finishCity = graph.getCity(finish);
+	int arrivalTime = timeArriveThisCity[finish] +
+	    finishCity.getOffsetMinutes();
+	int prev = prevOnShortestPath[finish];
+	if(prev == NONE)
+	    {
+		System.out.println("Start at " + finishCity.getName() + " at " +
+				   Graph.minuteTimeToClockTime(arrivalTime));
+	    }
+	else
+	    {
+		printPath(graph, prev);
+		int timeDepartPrev = timeDepartPrevCity[finish] +
+		    graph.getCity(prev).getOffsetMinutes();
+		System.out.println("depart at " +
+				   Graph.minuteTimeToClockTime(timeDepartPrev) +
+				   " to " + finishCity.getName() +
+				   ", arriving at " +
+				   Graph.minuteTimeToClockTime(arrivalTime) +
+				   "\n\twith additional cost of " +
+				   Graph.minuteTimeToHoursAndMinutes
+				   (costFromStart[finish]
+				    - costFromStart[prev]));
+	    }
+	return true;
+    }
+
+    /**
+       printQuickestPath: Runs a search and prints the result in the same
+       form as Graph.dijkstra() does.
+    */
+    public void printQuickestPath(Graph graph, int start, int startClockTime,
+				  int finish)
+    {
+	findQuickestPaths(graph, start, startClockTime, finish);
+	System.out.println("\nHere's the shortest path:");
+	if(printPath(graph, finish))
+	    {
+		System.out.println("Total cost = " +
+				   Graph.minuteTimeToHoursAndMinutes
+				   (costFromStart[finish]));
+	    }
+    }
+
+    /**
+       printFewestStopsPath: Finds the path with the fewest Flights and
+       prints the quickest way to fly it, the way Graph.fewestCities()
+       followed by Graph.minimizeTimeGivenPath() does.
+    */
+    public void printFewestStopsPath(Graph graph, int start,
+				     int startClockTime, int finish)
+    {
+	findFewestStops(start, finish);
+	int[] path = getPath(finish);
+	if(path != null)
+	    {
+		searchAlongPath(path, Graph.clockTimeToGMTMinuteTime
+				(startClockTime, graph.getCity(start)));
+	    }
+	System.out.println("\nHere's the shortest path:");
+	if(printPath(graph, finish))
+	    {
+		System.out.println("Total cost = " +
+				   Graph.minuteTimeToHoursAndMinutes
+				   (costFromStart[finish]));
+	    }
+    }
+}
@@ -0,0 +1,41 @@
+/******************************************************************************
+FlightStore.java
+
+A FlightStore holds the departing Flights of every City as plain numbers,
+so that the searches in FlightSearch can run without touching Flight or
+City objects. Cities are named by the ids their Graph's AirportCodeIndex
+gave them, and the Flights leaving a City are numbered 0 to
+getDegree(city) - 1. Times are GMT minute times, as in Flight, and
+distances are whole miles, worked out when the store is made, so a search
+by distance never computes one. Airlines are CarrierIndex ids, and flight
+numbers are 0 when they aren't known.
+
+FlightTable keeps the numbers in ordinary int arrays on the heap, and
+OffHeapFlightStore keeps them in direct memory outside the heap.
+******************************************************************************/
+
+public interface FlightStore
+{
+    // Ids run from 0 to getNumCities() - 1
+    int getNumCities();
+
+    int getNumFlights();
+
+    // The number of Flights leaving the given City
+    int getDegree(int city);
+
+    // Fields of the k-th Flight leaving the given City
+    int getDest(int city, int k);
+
+    int getTimeDepart(int city, int k);
+
+    int getTimeArrive(int city, int k);
+
+    int getFlightTime(int city, int k);
+
+    int getMiles(int city, int k);
+
+    int getCarrier(int city, int k);
+
+    int getFlightNumber(int city, int k);
+}
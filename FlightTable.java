@@ -0,0 +1,174 @@
+/******************************************************************************
+FlightTable.java
+
+A FlightTable is the on-heap FlightStore. Each City's departing Flights are
+packed into one int array, STRIDE ints per Flight, in the same order as the
+City's adjacentFlights list. The airline and the flight number share one
+int, 16 bits each. Compared with the LinkedList of Flight objects,
+this is one small object per City instead of a list node and a Flight per
+leg, and a search reads the legs of a City from consecutive memory.
+
+A FlightTable is never changed once it has been made. When the Graph
+changes, withRows() makes a new table that shares every unchanged row with
+the old one, which is how a VersionedGraph publishes new versions.
+******************************************************************************/
+
+import java.util.*;
+
+public class FlightTable implements FlightStore
+{
+    // Layout of one Flight in a row
+    final static int DEST = 0;
+    final static int DEPART = 1;
+    final static int ARRIVE = 2;
+    final static int FLIGHT_TIME = 3;
+    final static int MILES = 4;
+    final static int CARRIER_FLIGHT = 5;
+    final static int STRIDE = 6;
+
+    private final static int[] NO_FLIGHTS = new int[0];
+
+    private int[][] rows; // rows[city] holds that City's Flights
+    private int numFlights;
+
+    // Constructors
+    private FlightTable(int[][] r, int n)
+    {
+	rows = r;
+	numFlights = n;
+    }
+
+    public FlightTable(Graph graph)
+    {
+	rows = new int[graph.getNumIds()][];
+	numFlights = 0;
+	for(int id = 0; id < rows.length; id++)
+	    {
+		City city = graph.getCity(id);
+		rows[id] = (city == null) ? NO_FLIGHTS : buildRow(city);
+		numFlights += rows[id].length / STRIDE;
+	    }
+    }
+
+    /**
+       withRows: Makes a new table in which the rows of the given Cities are
+       rebuilt from the Graph, and every other row is shared with this one.
+       @param graph: the Graph the Cities are in
+       @param changed: the ids of the Cities whose Flights changed
+       @param numCities: the number of ids in the Graph now, which may be
+       more than in this table
+       @return the new table
+    */
+    public FlightTable withRows(Graph graph, Collection<Integer> changed,
+				int numCities)
+    {
+	int[][] newRows = Arrays.copyOf(rows, numCities);
+	int n = numFlights;
+	for(int id = rows.length; id < numCities; id++)
+	    {
+		City city = graph.getCity(id);
+		newRows[id] = (city == null) ? NO_FLIGHTS : buildRow(city);
+		n += newRows[id].length / STRIDE;
+	    }
+	for(Integer id : changed)
+	    {
+		int c = id.intValue();
+		if(c >= rows.length) { continue; } // built just above
+		City city = graph.getCity(c);
+		n -= rows[c].length / STRIDE;
+		newRows[c] = (city == null) ? NO_FLIGHTS : buildRow(city);
+		n += newRows[c].length / STRIDE;
+	    }
+	return new FlightTable(newRows, n);
+    }
+
+    /**
+       rowsChangedSince: Lists the Cities whose rows are not the same as in
+       an older table that this one was made from by withRows(), however
+       many versions ago. Unchanged rows are shared, so this compares
+       references and never looks inside a row.
+       @param older: the older table
+       @return the ids of the Cities whose Flights changed, and of the
+       Cities added since
+    */
+    public int[] rowsChangedSince(FlightTable older)
+    {
+	int count = 0;
+	int[] changed = new int[rows.length];
+	for(int id = 0; id < rows.length; id++)
+	    {
+		if(id >= older.rows.length || rows[id] != older.rows[id])
+		    { changed[count ++] = id; }
+	    }
+	return Arrays.copyOf(changed, count);
+    }
+
+    /**
+       buildRow: Packs the departing Flights of one City into an int array.
+       @param city: the City whose Flights to pack
+       @return the row
+    */
+    static int[] buildRow(City city)
+    {
+	int[] row = new int[STRIDE * city.adjacentFlights.size()];
+	int i = 0;
+	Iterator flights = city.getAdjacentFlightsIterator();
+	while(flights.hasNext())
+	    {
+		Flight flight = (Flight)flights.next();
+		row[i + DEST] = flight.getDest().getId();
+		row[i + DEPART] = flight.getTimeDepart();
+		row[i + ARRIVE] = flight.getTimeArrive();
+		row[i + FLIGHT_TIME] = flight.getFlightTime();
+		row[i + MILES] = flight.getMiles();
+		row[i + CARRIER_FLIGHT] = (flight.getCarrier() << 16)
+		    | flight.getFlightNumber();
+		i += STRIDE;
+	    }
+	return row;
+    }
+
+    // Accessors
+    public int getNumCities()
+    { return rows.length; }
+
+    public int getNumFlights()
+    { return numFlights; }
+
+    public int getDegree(int city)
+    { return rows[city].length / STRIDE; }
+
+    public int getDest(int city, int k)
+    { return rows[city][k * STRIDE + DEST]; }
+
+    public int getTimeDepart(int city, int k)
+    { return rows[city][k * STRIDE + DEPART]; }
+
+    public int getTimeArrive(int city, int k)
+    { return rows[city][k * STRIDE + ARRIVE]; }
+
+    public int getFlightTime(int city, int k)
+    { return rows[city][k * STRIDE + FLIGHT_TIME]; }
+
+    public int getMiles(int city, int k)
+    { return rows[city][k * STRIDE + MILES]; }
+
+    public int getCarrier(int city, int k)
+    { return rows[city][k * STRIDE + CARRIER_FLIGHT] >>> 16; }
+
+    public int getFlightNumber(int city, int k)
+    { return rows[city][k * STRIDE + CARRIER_FLIGHT] & 0xffff; }
+
+    /**
+       addToFootprint: Adds this table's rows to a memory report.
+       @param footprint: the report to add to
+    */
+    public void addToFootprint(MemoryFootprint footprint)
+    {
+	long bytes = MemoryFootprint.shallowSize(FlightTable.class)
+	    + MemoryFootprint.arraySize(rows.length, MemoryFootprint.REFERENCE);
+	for(int c = 0; c < rows.length; c++)
+	    { bytes += MemoryFootprint.arraySize(rows[c].length, 4); }
+	footprint.add("FlightTable", 2 + rows.length, bytes);
+    }
+}
@@ -6,19 +6,38 @@ Nov./Dec. 2006
 
 A Graph stores a TreeMap<String, City> that maps city codes to city objects.
 It also stores a codeMap<String, String> that maps city names to city codes.
+Every City's code is also interned in an AirportCodeIndex, which gives it a
+dense int id; lookups by code go through that index and the City array
+rather than through the TreeMap, which is only used to list the Cities in
+order.
 Graphs allow users to enter new Cities, add Flights between existing Cities,
 and check whether certain Cities are already present. In addition, Graphs
 house all of the time-conversion methods, as well as the shortest-path
 methods.
+
+A Graph also keeps the breadth-first HopTrees that fewestCities() has
+built, by origin, so that asking again from the same City skips the
+search. The hop structure only depends on which Cities have Flights to
+which, so the trees are dropped when a City is added or retired, when a
+Flight opens a new route, and when a Flight is cancelled through
+cancelFlight(), but not for more Flights on a route already flown or for
+new times. The trees never change once built, and the cache is a
+ConcurrentHashMap, so threads that only read the Graph can share them.
 ******************************************************************************/
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
 
 public class Graph
 {
     public final static int MINUTES_IN_A_DAY = 24 * 60;
     public final static int SHORTEST_TIME_TO_CHANGE_PLANES = 30;
 
+    // The HopTrees kept at once hold at most about this many Cities in
+    // all (some 5 bytes each)
+    final static int MAX_HOP_TREE_CITIES = 1 << 22;
+
     // Data fields
     private Map<String, City> cityMap;
     private Map<String, String> codeMap;
@@ -26,14 +45,26 @@ public class Graph
     // objects, but we also need a way to keep track of which code goes
     // with which name. That's what the codeMap does.
 
+    private AirportCodeIndex codeIndex;
+    private City[] citiesById;
+
     private int size;
 
+    // fewestCities() trees by origin id; hopTreeVersion changes whenever
+    // they are dropped, so a tree built across a change isn't kept
+    private Map<Integer, HopTree> hopTrees;
+    private volatile int hopTreeVersion;
+
     // Constructor
     public Graph()
     {
 	cityMap = new TreeMap<String, City>();
 	codeMap = new TreeMap<String, String>();
+	codeIndex = new AirportCodeIndex();
+	citiesById = new City[16];
 	size = 0;
+	hopTrees = new ConcurrentHashMap<Integer, HopTree>();
+	hopTreeVersion = 0;
     }
 
     // Accessors
@@ -41,7 +72,7 @@ public class Graph
     { return size; }
     
     public boolean containsCityByCode(String code)
-    { return cityMap.containsKey(code); }
+    { return getCity(code) != null; }
 
     public boolean containsCityByName(String name)
     { return codeMap.containsKey(name); }
@@ -50,7 +81,43 @@ public class Graph
     { return codeMap.get(name); }
 
     public City getCity(String code)
-    { return cityMap.get(code); }
+    { return getCity(codeIndex.idOf(code)); }
+
+    // A retired City's code keeps its id, but the id no longer names a City
+    public int getCityId(String code)
+    {
+	int id = codeIndex.idOf(code);
+	return (getCity(id) == null) ? AirportCodeIndex.NO_ID : id;
+    }
+
+    public City getCity(int id)
+    {
+	if(id < 0 || id >= codeIndex.getNumIds()) { return null; }
+	return citiesById[id];
+    }
+
+    // Ids run from 0 to getNumIds() - 1
+    public int getNumIds()
+    { return codeIndex.getNumIds(); }
+
+    public AirportCodeIndex getCodeIndex()
+    { return codeIndex; }
+
+    public int getCityArrayLength()
+    { return citiesById.length; }
+
+    /**
+       getFootprint: Estimates the memory used by this Graph, broken down
+       by structure. Indexes built on top of the Graph (FlightTables,
+       TimeExpandedGraphs, ...) can add their own lines to the result.
+       @return the footprint
+    */
+    public MemoryFootprint getFootprint()
+    { return MemoryFootprint.of(this); }
+
+    // The HopTrees fewestCities() has kept
+    public Collection<HopTree> getHopTrees()
+    { return hopTrees.values(); }
 
     public Iterator getCitiesIterator()
     { return (cityMap.values()).iterator(); }
@@ -60,30 +127,46 @@ public class Graph
 
     public boolean checkEdgeBetweenCities(City firstCity, 
 					  String secondCityCode)
-    { return firstCity.alreadyHasEdgeToOtherCity(secondCityCode); }
+    { return firstCity.alreadyHasEdgeToOtherCity(getCityId(secondCityCode)); }
 
     public String verboseToString(boolean verbose)
+    {
+	StringWriter returnMe = new StringWriter();
+	try { writeTo(returnMe, verbose); }
+	catch(IOException e) { } // a StringWriter doesn't throw
+	return returnMe.toString();
+    }
+
+    /**
+       writeTo: Writes out the same listing as verboseToString(), one City
+       at a time, so that exporting or listing a large Graph takes memory
+       for only one City's lines rather than for the whole listing. The
+       Writer should be buffered.
+       @param out: where to write
+       @param verbose: true to include every City's adjacent Cities and
+       Flights, false for just names and codes
+    */
+    public void writeTo(Writer out, boolean verbose) throws IOException
     {
 	City currCity;
-	String returnMe = "Num cities = " + size + "\n";
+	out.write("Num cities = " + size + "\n");
 	Iterator cities = getCitiesIterator();
 	while(cities.hasNext())
 	    {
+		currCity = (City)(cities.next());
 		if(verbose)
 		    {
-			returnMe = returnMe.concat
-			    ((cities.next()).toString() + "\n");
+			currCity.writeTo(out);
+			out.write('\n');
 		    }
 		else
 		    {
-			currCity = (City)(cities.next());
-			returnMe = returnMe.concat
-			    ( currCity.getName() + ", " 
-			      + currCity.getCode() + "\n");
+			out.write(currCity.getName());
+			out.write(", ");
+			out.write(currCity.getCode());
+			out.write('\n');
 		    }
 	    }
-	
-	return returnMe;
     }
 
     /**
@@ -94,16 +177,17 @@ public class Graph
     */
     public void printFlightsWithThisDestination(String destCode)
     {
+	int destId = getCityId(destCode);
 	Iterator cities = getCitiesIterator();
 	City nextCity;
 	while(cities.hasNext())
 	    {
 		nextCity = (City)cities.next();
-		if(nextCity.alreadyHasEdgeToOtherCity(destCode))
+		if(nextCity.alreadyHasEdgeToOtherCity(destId))
 		{
 		    System.out.println("\nFlights from " 
 				       + nextCity.getName() + ":");
-		    nextCity.printFlightsWithOtherCity(destCode);
+		    nextCity.printFlightsWithOtherCity(destId);
 		}
 	    }
     }
@@ -121,9 +205,15 @@ public class Graph
 	    { System.out.println("Oops, that city is already in the graph."); }
 	else
 	    {
+		int id = codeIndex.intern(newCity.getCode());
+		if(id >= citiesById.length)
+		    { citiesById = Arrays.copyOf(citiesById, 2 * id); }
+		citiesById[id] = newCity;
+		newCity.setId(id);
 		cityMap.put(newCity.getCode(), newCity);
 		codeMap.put(newCity.getName(), newCity.getCode());
 		size ++;
+		dropHopTrees();
 	    }
     }
 
@@ -139,22 +229,203 @@ public class Graph
     */
     public void addFlight(City startCity, City destCity, 
 			  int clockTimeDepart, int clockTimeArrive)
+    {
+	addFlight(startCity, destCity, clockTimeDepart, clockTimeArrive,
+		  CarrierIndex.UNKNOWN, 0);
+    }
+
+    /**
+       addFlight: Adds a Flight as above, with its airline and number.
+       @param carrier: the CarrierIndex id of the airline
+       @param flightNumber: the flight number, or 0 if it isn't known
+    */
+    public void addFlight(City startCity, City destCity,
+			  int clockTimeDepart, int clockTimeArrive,
+			  int carrier, int flightNumber)
     {
 	int minuteTimeDepart = clockTimeToGMTMinuteTime
-	    (clockTimeDepart, startCity.getDiffGMT());
+	    (clockTimeDepart, startCity);
 	int minuteTimeArrive = clockTimeToGMTMinuteTime
-	    (clockTimeArrive, destCity.getDiffGMT());
-	int diffGMTStartingCityInMinutes 
-	    = clockTimeToMinuteTime(startCity.getDiffGMT());
+	    (clockTimeArrive, destCity);
+	int diffGMTStartingCityInMinutes = startCity.getOffsetMinutes();
 	Flight newFlight 
 	    = new Flight(destCity, minuteTimeDepart, 
-			 minuteTimeArrive, diffGMTStartingCityInMinutes);
+			 minuteTimeArrive, diffGMTStartingCityInMinutes,
+			 startCity.milesTo(destCity), carrier, flightNumber);
 	startCity.addFlight(newFlight);
 
 	// Check to see if we need to add a new edge to startCity's
 	// adjacentCities list
-	if(!startCity.alreadyHasEdgeToOtherCity(destCity.getCode()))
-	    { startCity.addAdjacentCity(destCity); }
+	if(!startCity.alreadyHasEdgeToOtherCity(destCity.getId()))
+	    {
+		startCity.addAdjacentCity(destCity);
+		dropHopTrees();
+	    }
+    }
+
+    /************************* CHANGE METHODS *******************************/
+    /**
+       findFlight: Looks for a Flight by its route and departure time.
+       @param startCity: the City the Flight leaves from
+       @param destCity: the City it goes to
+       @param clockTimeDepart: its local departure time
+       @return the first such Flight, or null if there's none
+    */
+    public Flight findFlight(City startCity, City destCity,
+			     int clockTimeDepart)
+    {
+	int minuteTimeDepart = clockTimeToGMTMinuteTime
+	    (clockTimeDepart, startCity);
+	Iterator flights = startCity.getAdjacentFlightsIterator();
+	while(flights.hasNext())
+	    {
+		Flight flight = (Flight)flights.next();
+		if(flight.getDest() == destCity
+		   && flight.getTimeDepart() == minuteTimeDepart)
+		    { return flight; }
+	    }
+	return null;
+    }
+
+    /**
+       cancelFlight: Takes a Flight out of the schedule.
+       @param startCity: the City it leaves from
+       @param flight: the Flight
+       @return true if the Flight was there
+    */
+    public boolean cancelFlight(City startCity, Flight flight)
+    {
+	dropHopTrees();
+	return startCity.removeFlight(flight);
+    }
+
+    /**
+       retimeFlight: Moves a Flight to new local departure and arrival
+       times. It keeps its place in the start City's adjacency list.
+    */
+    public void retimeFlight(City startCity, Flight flight,
+			     int clockTimeDepart, int clockTimeArrive)
+    {
+	flight.setTimes(clockTimeToGMTMinuteTime(clockTimeDepart, startCity),
+			clockTimeToGMTMinuteTime(clockTimeArrive,
+						 flight.getDest()));
+    }
+
+    /**
+       removeCity: Retires a City: it and every Flight to or from it are
+       taken out of the Graph. Its code keeps its id in the
+       AirportCodeIndex, so if the City is added again later it gets the
+       same id back. Finding the Flights that go to the City means looking
+       at every other City's adjacentCities, so this costs time
+       proportional to the number of routes, not just to the change.
+       @param city: the City to retire
+       @return the Cities that lost Flights to it
+    */
+    public List<City> removeCity(City city)
+    {
+	List<City> origins = new ArrayList<City>();
+	Iterator cities = getCitiesIterator();
+	while(cities.hasNext())
+	    {
+		City other = (City)cities.next();
+		if(other != city && other.alreadyHasEdgeToOtherCity(city.getId()))
+		    {
+			other.removeFlightsTo(city);
+			origins.add(other);
+		    }
+	    }
+	cityMap.remove(city.getCode());
+	codeMap.remove(city.getName());
+	citiesById[city.getId()] = null;
+	size --;
+	dropHopTrees();
+	return origins;
+    }
+
+    /************************* PRUNING METHODS *******************************/
+    /**
+       pruneDominatedFlights: Removes every Flight that can never be part of
+       a shortest-time path. A Flight is dominated if another Flight on the
+       same route leaves no earlier and still arrives no later. Because the
+       schedule repeats every day, "no earlier" is measured with
+       getWaitingTime(), so a Flight leaving at 11:50 pm can be dominated by
+       one leaving at 12:10 am that arrives sooner. The 30-minute connection
+       rule just shifts every departure by the same amount, so it doesn't
+       change which Flights are dominated. This is meant to be run once,
+       right after the Graph is built.
+       @return the number of Flights removed
+    */
+    public int pruneDominatedFlights()
+    {
+	int removed = 0;
+	Iterator cities = getCitiesIterator();
+	while(cities.hasNext())
+	    { removed += pruneDominatedFlightsFrom((City)cities.next()); }
+	return removed;
+    }
+
+    /**
+       pruneDominatedFlightsFrom: Does the work of pruneDominatedFlights()
+       for the Flights leaving one City. The Flights are grouped by
+       destination and each group is sorted by departure time (longest
+       Flight first among equal departures). Walking the group backwards
+       twice around the clock while keeping the earliest arrival seen so far
+       tells us, for each Flight, whether some later departure beats it.
+       @param city: the City whose departing Flights should be pruned
+       @return the number of Flights removed from that City
+    */
+    private static int pruneDominatedFlightsFrom(City city)
+    {
+	Map<Integer, List<Flight>> routes = new HashMap<Integer, List<Flight>>();
+	Iterator flights = city.getAdjacentFlightsIterator();
+	Flight flight;
+	while(flights.hasNext())
+	    {
+		flight = (Flight)flights.next();
+		List<Flight> route = routes.get(flight.getDest().getId());
+		if(route == null)
+		    {
+			route = new ArrayList<Flight>();
+			routes.put(flight.getDest().getId(), route);
+		    }
+		route.add(flight);
+	    }
+
+	Set<Flight> dominated
+	    = Collections.newSetFromMap(new IdentityHashMap<Flight, Boolean>());
+	Iterator<List<Flight>> groups = routes.values().iterator();
+	while(groups.hasNext())
+	    {
+		List<Flight> route = groups.next();
+		if(route.size() < 2) { continue; }
+		Collections.sort(route, new Comparator<Flight>()
+		    {
+			public int compare(Flight a, Flight b)
+			{
+			    if(a.getTimeDepart() != b.getTimeDepart())
+				{ return a.getTimeDepart() - b.getTimeDepart(); }
+			    return b.getFlightTime() - a.getFlightTime();
+			}
+		    });
+
+		// Index i in [k, 2k) stands for Flight i - k on the next day.
+		int k = route.size();
+		int earliestLaterArrival = Integer.MAX_VALUE;
+		for(int i = 2 * k - 1; i >= 0; i--)
+		    {
+			flight = route.get(i % k);
+			int depart = flight.getTimeDepart()
+			    + (i >= k ? MINUTES_IN_A_DAY : 0);
+			int arrive = depart + flight.getFlightTime();
+			if(i < k && earliestLaterArrival <= arrive)
+			    { dominated.add(flight); }
+			if(arrive < earliestLaterArrival)
+			    { earliestLaterArrival = arrive; }
+		    }
+	    }
+
+	if(dominated.isEmpty()) { return 0; }
+	return city.removeFlights(dominated);
     }
 
     /************************* TIME-CONVERSION METHODS ***********************/
@@ -192,10 +463,29 @@ public class Graph
 	return desiredTime;
     }
 
+    /**
+       clockTimeToGMTMinuteTime: Converts a clock time in a City into GMT
+       minute time, the same way as above, using the offset the City has
+       already worked out in minutes.
+       @param clockTime: the time in 24-hour clock format
+       @param city: the City whose time zone the clock time is in
+       @return the GMT time in minutes as an int.
+    */
+    public static int clockTimeToGMTMinuteTime(int clockTime, City city)
+    {
+	int desiredTime = clockTimeToMinuteTime(clockTime)
+	    - city.getOffsetMinutes();
+	if(desiredTime >= MINUTES_IN_A_DAY)
+	    { desiredTime = desiredTime % MINUTES_IN_A_DAY; }
+
+	return desiredTime;
+    }
+
     /**
        minuteTimeToClockTime: Takes a minute time and converts it to a String
        in regular time format. For instance, the minute time 1266 would become
-       "9:06 pm".
+       "9:06 pm". The Strings for every minute of the day are made once, in
+       CLOCK_TIMES, so this only looks one up.
        @param minuteTime: the time in minutes
        @return a String of the time in standard format
     */
@@ -203,31 +493,27 @@ public class Graph
     {
 	// If minuteTime is negative, it refers to a time from the
 	// previous day.
-	while(minuteTime < 0)
-	    { minuteTime += MINUTES_IN_A_DAY; }
+	return CLOCK_TIMES[Math.floorMod(minuteTime, MINUTES_IN_A_DAY)];
+    }
 
-	if(minuteTime > MINUTES_IN_A_DAY)
-	    { minuteTime = minuteTime % (60*24); }
+    // The clock time of every minute of the day, from "12:00 am" on
+    private final static String[] CLOCK_TIMES = makeClockTimes();
 
-	String clockTime;
-	boolean pm = false;
-	int numHours = minuteTime / 60;
-	int numMins = minuteTime % 60;
-	
-	if(numHours > 11)
-	    { pm = true; }
-	if(numHours > 12)
-	    { numHours = numHours % 12; }
-	if(numHours == 0)
-	    { numHours = 12; }
-
-	clockTime = "" + numHours + ":";
-	if(numMins < 10) { clockTime = clockTime.concat("0"); }
-	clockTime = clockTime.concat("" + numMins);
-	if(!pm) { clockTime = clockTime.concat(" am"); }
-	else { clockTime = clockTime.concat(" pm"); }
-	
-	return clockTime;
+    private static String[] makeClockTimes()
+    {
+	String[] clockTimes = new String[MINUTES_IN_A_DAY];
+	for(int minuteTime = 0; minuteTime < MINUTES_IN_A_DAY; minuteTime++)
+	    {
+		int numHours = minuteTime / 60;
+		int numMins = minuteTime % 60;
+		boolean pm = (numHours > 11);
+		if(numHours > 12) { numHours = numHours % 12; }
+		if(numHours == 0) { numHours = 12; }
+		clockTimes[minuteTime] = numHours
+		    + ((numMins < 10) ? ":0" : ":") + numMins
+		    + (pm ? " pm" : " am");
+	    }
+	return clockTimes;
     }
 
     /**
@@ -245,6 +531,28 @@ public class Graph
 		return null;
 	    }
 
+	if(minuteTime < DURATIONS.length)
+	    {
+		// Strings are immutable, so two threads making the same one
+		// at once do no harm.
+		String duration = DURATIONS[minuteTime];
+		if(duration == null)
+		    {
+			duration = hoursAndMinutes(minuteTime);
+			DURATIONS[minuteTime] = duration;
+		    }
+		return duration;
+	    }
+	return hoursAndMinutes(minuteTime);
+    }
+
+    // The durations printed so far, up to a week; each is made the first
+    // time it's needed, since most trips only ever take a few of them.
+    private final static String[] DURATIONS
+	= new String[7 * MINUTES_IN_A_DAY];
+
+    private static String hoursAndMinutes(int minuteTime)
+    {
 	int numHours = minuteTime / 60;
 	int numMins = minuteTime % 60;
 
@@ -287,35 +595,69 @@ public class Graph
     /**
        fewestCities: This method applies the unweighted shortest-path
        algorithm in in finding the shortest distance from a given City
-       to all other Cities.
+       to all other Cities. The search itself is only done the first
+       time from each City; after that the HopTree it left is copied
+       back into the Cities until the Graph changes.
        @param startCity: the City from which to find shortest paths
      */
     public void fewestCities(City startCity)
     {
-	City currCity, nextCity;
-	Iterator cities;
+	long beginNanos = QueryMetrics.enabled ? System.nanoTime() : 0;
 	resetAllCities();
-	Queue<City> doTheseCities = new LinkedList<City>();
-	startCity.setDistFromStart(0);
-	doTheseCities.add(startCity);
+	long resetNanos = QueryMetrics.enabled
+	    ? System.nanoTime() - beginNanos : 0;
+	boolean cached = hopTrees.containsKey(startCity.getId());
+	HopTree tree = getHopTree(startCity);
+	tree.applyTo(this);
+
+	// A tree from the cache counts as no search at all.
+	if(QueryMetrics.enabled)
+	    {
+		int settled = cached ? 0 : tree.getNumReached();
+		QueryMetrics.FEWEST_CITIES.record
+		    (System.nanoTime() - beginNanos, settled,
+		     cached ? 0 : tree.getNumRelaxed(), settled, 0, size,
+		     resetNanos);
+	    }
+    }
 
-	while(!doTheseCities.isEmpty())
+    /**
+       getHopTree: The breadth-first tree from a City, as fewestCities()
+       finds it, from the cache if it is there and built (and kept) if
+       not. When the cache is full, some other origin's tree is dropped
+       to make room.
+       @param startCity: the City the tree starts from
+       @return the tree, which the caller must not change
+    */
+    public HopTree getHopTree(City startCity)
+    {
+	HopTree tree = hopTrees.get(startCity.getId());
+	if(tree != null) { return tree; }
+	int version = hopTreeVersion;
+	tree = HopTree.build(this, startCity);
+	if(version == hopTreeVersion)
 	    {
-		currCity = doTheseCities.remove();
-		cities = currCity.getAdjacentCitiesIterator();	
-		while(cities.hasNext())
+		int most = Math.max(1, MAX_HOP_TREE_CITIES
+				    / Math.max(1, getNumIds()));
+		Iterator<Integer> origins = hopTrees.keySet().iterator();
+		while(hopTrees.size() >= most && origins.hasNext())
 		    {
-			nextCity = (City)cities.next();
-
-			if(nextCity.getDistFromStart() == City.INFINITY)
-			    {
-				nextCity.setDistFromStart
-				    (currCity.getDistFromStart() + 1);
-				nextCity.setPrevOnShortestPath(currCity);
-				doTheseCities.add(nextCity);
-			    }
+			origins.next();
+			origins.remove();
 		    }
+		hopTrees.put(startCity.getId(), tree);
 	    }
+	return tree;
+    }
+
+    /**
+       dropHopTrees: Forgets every HopTree, after a change to which
+       Cities have Flights to which.
+    */
+    private void dropHopTrees()
+    {
+	hopTreeVersion ++;
+	hopTrees.clear();
     }
 
     /**
@@ -339,6 +681,8 @@ public class Graph
     public void minimizeTimeGivenPath(City startCity, City finishCity,
 				      int startClockTime)
     {
+	int pathCities = 0, scannedFlights = 0; // for QueryMetrics
+	long beginNanos = QueryMetrics.enabled ? System.nanoTime() : 0;
 	// Create new Graph on which to run dijkstra()
 	Graph temp = new Graph();
 	City currCity = finishCity;
@@ -354,6 +698,7 @@ public class Graph
 				      currCity.getXCoord(),
 				      currCity.getYCoord());
 		temp.addCity(addMe);
+		pathCities ++;
 		currCity = currCity.getPrevOnShortestPath();
 	    }
 	// Now add all the relevant Flights to temp
@@ -387,12 +732,12 @@ public class Graph
 		while(adjacentFlights.hasNext())
 		    {
 			flight = (Flight) adjacentFlights.next();
-			if((flight.getDestCityCode()).equalsIgnoreCase
-			   (cityAfterTempCity.getCode()))
+			scannedFlights ++;
+			if(flight.getDest() == cityAfterTempCity)
 			    {
 				tempCity.addFlight(flight);
 				if(!tempCity.alreadyHasEdgeToOtherCity
-				   (cityAfterTempCity.getCode()))
+				   (cityAfterTempCity.getId()))
 				    { 
 					tempCity.addAdjacentCity
 					    (cityAfterTempCity);
@@ -409,6 +754,14 @@ public class Graph
 	// dijkstra() can only find the shortest-time itinerary *given the
 	// constraint of being a minimum airport path*.
 	temp.dijkstra(startCity, startClockTime, finishCity);
+
+	// The dijkstra() call records its own metrics as well.
+	if(QueryMetrics.enabled)
+	    {
+		QueryMetrics.MINIMIZE_TIME_GIVEN_PATH.record
+		    (System.nanoTime() - beginNanos, pathCities,
+		     scannedFlights, 0, 0, 0, 0);
+	    }
     }
 
     /**
@@ -423,6 +776,27 @@ public class Graph
        @param finishCity: the City to which the traveller wants to go
     */
     public void dijkstra(City startCity, int startClockTime, City finishCity)
+    {
+	findQuickestPaths(startCity, startClockTime);
+
+	// Print the shortest path, calling printPath()
+	System.out.println("\nHere's the shortest path:");
+	if(printPath(finishCity)) // true if there is a path
+	    {
+		System.out.println("Total cost = " +
+				   minuteTimeToHoursAndMinutes
+				   (finishCity.getCostFromStart()));
+	    }
+    }
+
+    /**
+       findQuickestPaths: The search part of dijkstra(), without any
+       printing. Afterwards every City's costFromStart and
+       prevOnShortestPath describe its quickest path from startCity.
+       @param startCity: the City from which all shortest-paths will start
+       @param startClockTime: the time when the traveller starts at startCity
+    */
+    public void findQuickestPaths(City startCity, int startClockTime)
     {
 	int citiesDone = 0;
 	City currCity, nextCity;
@@ -431,14 +805,19 @@ public class Graph
 	int nextCost, waitingTime, potentiallyFasterTime;
 	boolean thisFlightIsAnIntermediateFlight = false;
 	int GMTStartTimeMinutes 
-	    = clockTimeToGMTMinuteTime(startClockTime, startCity.getDiffGMT());
+	    = clockTimeToGMTMinuteTime(startClockTime, startCity);
+	int relaxed = 0, pushes = 0, stale = 0; // for QueryMetrics
+	long beginNanos = QueryMetrics.enabled ? System.nanoTime() : 0;
 
 	PriorityQueue<City> doTheseCities = new PriorityQueue<City>();
 	resetAllCities();
+	long resetNanos = QueryMetrics.enabled
+	    ? System.nanoTime() - beginNanos : 0;
 	
 	startCity.setCostFromStart(0);
 	startCity.setTimeArriveThisCity(GMTStartTimeMinutes);
 	doTheseCities.add(startCity);
+	pushes ++;
 
 	while(!doTheseCities.isEmpty() && citiesDone < size)
 	    {
@@ -446,7 +825,7 @@ public class Graph
 		    { thisFlightIsAnIntermediateFlight = true; }
 
 		currCity = doTheseCities.remove();
-		if(currCity.alreadyVisited()) { continue; }
+		if(currCity.alreadyVisited()) { stale ++; continue; }
 		currCity.haveAlreadyVisited();
 		citiesDone ++;
 
@@ -454,6 +833,7 @@ public class Graph
 		while(flights.hasNext())
 		    {
 			nextFlight = (Flight)flights.next();
+			relaxed ++;
 			nextCity = nextFlight.dest;
 			nextCost = nextCity.getCostFromStart();
 			waitingTime = getWaitingTime
@@ -477,17 +857,16 @@ public class Graph
 				    (nextFlight.getTimeDepart());
 				nextCity.setPrevOnShortestPath(currCity);
 				doTheseCities.add(nextCity);
+				pushes ++;
 			    }
 		    }
 	    }
 
-	// Print the shortest path, calling printPath()
-	System.out.println("\nHere's the shortest path:");
-	if(printPath(finishCity)) // true if there is a path
+	if(QueryMetrics.enabled)
 	    {
-		System.out.println("Total cost = " +
-				   minuteTimeToHoursAndMinutes
-				   (finishCity.getCostFromStart()));
+		QueryMetrics.DIJKSTRA.record
+		    (System.nanoTime() - beginNanos, citiesDone, relaxed,
+		     pushes, stale, size, resetNanos);
 	    }
     }
 
@@ -507,7 +886,7 @@ public class Graph
 		if(finishCity.getPrevOnShortestPath() == null)
 		    {
 			arrivalTime = finishCity.getTimeArriveThisCity() +
-			    clockTimeToMinuteTime(finishCity.getDiffGMT());
+			    finishCity.getOffsetMinutes();
 			System.out.println("Start at " 
 					   + finishCity.getName() + " at " +
 					   minuteTimeToClockTime(arrivalTime));
@@ -516,10 +895,9 @@ public class Graph
 		    {
 			printPath(finishCity.getPrevOnShortestPath());
 			timeDepartPrev = finishCity.getTimeDepartPrevCity() +
-			   clockTimeToMinuteTime
-			   ((finishCity.getPrevOnShortestPath()).getDiffGMT());
+			   (finishCity.getPrevOnShortestPath()).getOffsetMinutes();
 			arrivalTime = finishCity.getTimeArriveThisCity() +
-			    clockTimeToMinuteTime(finishCity.getDiffGMT());
+			    finishCity.getOffsetMinutes();
 			additionalCost = finishCity.getCostFromStart() -
 			    (finishCity.getPrevOnShortestPath()).
 			    getCostFromStart();
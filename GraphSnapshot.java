@@ -0,0 +1,256 @@
+/******************************************************************************
+GraphSnapshot.java
+
+A GraphSnapshot is one published version of the flight schedule, for
+answering queries while the schedule is being changed. It holds the
+Cities by id, a FlightTable of their departing Flights, an index of the
+Flights arriving at each City, and a CityIndex of where the Cities are.
+Nothing in a GraphSnapshot changes
+once it has been published, so any number of threads can read one at the
+same time without locking, and a query that reads only one snapshot sees
+the schedule exactly as it was at one moment.
+
+A VersionedGraph makes each new snapshot from the one before. Rows of
+Cities whose Flights didn't change are shared, not copied, so publishing
+a change costs about as much as the change itself plus one copy of each
+per-City array of references. The CityIndex is shared too, unless
+Cities were added or retired.
+
+A snapshot also keeps the HopTrees that fewest-stops queries have built
+over its FlightTable, by origin, in a ConcurrentHashMap, so asking again
+from the same City skips the search. Since the table never changes, the
+trees never go out of date; a new version starts without any.
+
+Only a City's name, code, and time zone are read through a snapshot;
+those never change after the City is made. Its adjacency lists and search
+fields belong to the writer's Graph and must not be used by readers.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class GraphSnapshot
+{
+    private final static int[] NO_ARRIVALS = new int[0];
+
+    private long version;
+    private int numCities;            // ids below this are in this version
+    private City[] cities;            // may be longer than numCities
+    private FlightTable table;
+    private int[][] arrivals;         // arrivals[city] = origin, k, ...
+    private AirportCodeIndex codeIndex;
+    private Map<String, Integer> idsByName;
+    private CityIndex cityIndex;
+    private Map<Integer, HopTree> hopTrees
+	= new ConcurrentHashMap<Integer, HopTree>();
+
+    // Constructor; a null CityIndex means to build one
+    GraphSnapshot(long v, int n, City[] c, FlightTable t, int[][] a,
+		  AirportCodeIndex index, Map<String, Integer> names,
+		  CityIndex places)
+    {
+	version = v;
+	numCities = n;
+	cities = c;
+	table = t;
+	arrivals = a;
+	codeIndex = index;
+	idsByName = names;
+	cityIndex = (places == null) ? new CityIndex(this) : places;
+    }
+
+    /**
+       of: Makes a snapshot of a Graph that won't be changed again.
+       @param graph: the Graph
+       @return the snapshot, as version 0
+    */
+    public static GraphSnapshot of(Graph graph)
+    {
+	int n = graph.getNumIds();
+	City[] cities = new City[n];
+	Map<String, Integer> names = new ConcurrentHashMap<String, Integer>();
+	for(int id = 0; id < n; id++)
+	    {
+		cities[id] = graph.getCity(id);
+		if(cities[id] != null) { names.put(cities[id].getName(), id); }
+	    }
+	FlightTable table = new FlightTable(graph);
+	return new GraphSnapshot(0, n, cities, table, buildArrivals(table),
+				 graph.getCodeIndex(), names, null);
+    }
+
+    /**
+       buildArrivals: Indexes every Flight in a table by its destination,
+       so that the Flights going to a City can be listed without scanning
+       every row.
+    */
+    static int[][] buildArrivals(FlightTable table)
+    {
+	int n = table.getNumCities();
+	int[] count = new int[n];
+	for(int city = 0; city < n; city++)
+	    {
+		for(int k = 0; k < table.getDegree(city); k++)
+		    { count[table.getDest(city, k)] ++; }
+	    }
+	int[][] arrivals = new int[n][];
+	for(int city = 0; city < n; city++)
+	    {
+		arrivals[city] = (count[city] == 0) ? NO_ARRIVALS
+		    : new int[2 * count[city]];
+		count[city] = 0;
+	    }
+	for(int city = 0; city < n; city++)
+	    {
+		for(int k = 0; k < table.getDegree(city); k++)
+		    {
+			int dest = table.getDest(city, k);
+			arrivals[dest][count[dest] ++] = city;
+			arrivals[dest][count[dest] ++] = k;
+		    }
+	    }
+	return arrivals;
+    }
+
+    // Accessors
+    public long getVersion()
+    { return version; }
+
+    public int getNumCities()
+    { return numCities; }
+
+    public FlightTable getTable()
+    { return table; }
+
+    public City getCity(int id)
+    { return (id >= 0 && id < numCities) ? cities[id] : null; }
+
+    public CityIndex getCityIndex()
+    { return cityIndex; }
+
+    // The arrays shared with the next version
+    City[] getCityArray()
+    { return cities; }
+
+    int[][] getArrivalsArray()
+    { return arrivals; }
+
+    AirportCodeIndex getCodeIndex()
+    { return codeIndex; }
+
+    Map<String, Integer> getIdsByName()
+    { return idsByName; }
+
+    /**
+       findCity: Looks up a City by code or, failing that, by name, the way
+       findFlight.askUserForCity() does.
+       @param nameOrCode: what the user typed
+       @return the City's id, or AirportCodeIndex.NO_ID if there's no such
+       City in this version
+    */
+    public int findCity(String nameOrCode)
+    {
+	if(nameOrCode == null) { return AirportCodeIndex.NO_ID; }
+	// The index and the name map are shared with the writer, which may
+	// already have added Cities that aren't in this version.
+	int id = codeIndex.idOf(nameOrCode);
+	if(getCity(id) != null) { return id; }
+	Integer byName = idsByName.get(nameOrCode);
+	if(byName != null && getCity(byName.intValue()) != null)
+	    { return byName.intValue(); }
+	return AirportCodeIndex.NO_ID;
+    }
+
+    /**
+       getHopTree: The breadth-first tree from a City over this snapshot's
+       FlightTable, from the cache if it is there and built (and kept) if
+       not. The cache holds as many trees as a Graph's does.
+       @param start: the id of the City the tree starts from
+       @return the tree, which the caller must not change
+    */
+    public HopTree getHopTree(int start)
+    {
+	long beginNanos = QueryMetrics.enabled ? System.nanoTime() : 0;
+	HopTree tree = hopTrees.get(start);
+	boolean cached = (tree != null);
+	if(!cached)
+	    {
+		tree = HopTree.build(table, start);
+		int most = Math.max(1, Graph.MAX_HOP_TREE_CITIES
+				    / Math.max(1, numCities));
+		Iterator<Integer> origins = hopTrees.keySet().iterator();
+		while(hopTrees.size() >= most && origins.hasNext())
+		    {
+			origins.next();
+			origins.remove();
+		    }
+		hopTrees.put(start, tree);
+	    }
+
+	// A tree from the cache counts as no search at all.
+	if(QueryMetrics.enabled)
+	    {
+		int settled = cached ? 0 : tree.getNumReached();
+		QueryMetrics.FEWEST_CITIES.record
+		    (System.nanoTime() - beginNanos, settled,
+		     cached ? 0 : tree.getNumRelaxed(), settled, 0, 0, 0);
+	    }
+	return tree;
+    }
+
+    /**
+       directFlights: Lists the Flights from one City straight to another.
+       @return the k of each Flight in the start City's row
+    */
+    public int[] directFlights(int start, int finish)
+    {
+	int count = 0;
+	int degree = table.getDegree(start);
+	for(int k = 0; k < degree; k++)
+	    {
+		if(table.getDest(start, k) == finish) { count ++; }
+	    }
+	int[] flights = new int[count];
+	count = 0;
+	for(int k = 0; k < degree; k++)
+	    {
+		if(table.getDest(start, k) == finish) { flights[count ++] = k; }
+	    }
+	return flights;
+    }
+
+    /**
+       arrivals: Lists the Flights that go to a City.
+       @return origin, k pairs, one per Flight
+    */
+    public int[] arrivals(int city)
+    { return arrivals[city]; }
+
+    /**
+       appendFlightJson: Writes one Flight as a JSON object, with local
+       clock times.
+       @param out: where to write
+       @param origin: the id of the City the Flight leaves from
+       @param k: the Flight's number in the origin's row
+    */
+    public void appendFlightJson(StringBuilder out, int origin, int k)
+    {
+	City from = cities[origin];
+	City to = cities[table.getDest(origin, k)];
+	out.append('{');
+	Json.appendField(out, "from", from.getCode());
+	out.append(',');
+	Json.appendField(out, "to", to.getCode());
+	out.append(',');
+	Json.appendField(out, "depart", Graph.minuteTimeToClockTime
+			 (table.getTimeDepart(origin, k) +
+			  from.getOffsetMinutes()));
+	out.append(',');
+	Json.appendField(out, "arrive", Graph.minuteTimeToClockTime
+			 (table.getTimeArrive(origin, k) +
+			  to.getOffsetMinutes()));
+	out.append(',');
+	Json.appendField(out, "minutes", table.getFlightTime(origin, k));
+	out.append('}');
+    }
+}
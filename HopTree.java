@@ -0,0 +1,199 @@
+/******************************************************************************
+HopTree.java
+
+A HopTree is the result of one breadth-first search by number of Flights
+from one City, as Graph.fewestCities() does it: for every City, how many
+Flights it takes to get there and the City before it on the way. It is
+kept in two arrays indexed by City id, an int array of previous Cities
+and a byte array of hop counts, about five bytes per City, so that a Graph
+can keep the trees of many origins and answer the next fewest-stops query
+from a busy hub without searching again.
+
+A HopTree never changes once it is built, so any number of threads can
+read the same one. It describes the Graph as it was when the tree was
+built; the Graph drops its trees when a change could make them wrong (see
+Graph.getHopTree()). Cities added after the tree was built are simply
+unreached. A tree can also be built over a FlightStore, the way
+FlightSearch.findFewestStops() searches one, and that is how a
+GraphSnapshot keeps the trees for QueryEngine.
+
+A hop count that doesn't fit in a byte (a path of more than DEEP - 1
+Flights) is stored as DEEP, and getHops() then counts the steps back to
+the start.
+******************************************************************************/
+
+import java.util.*;
+
+public class HopTree
+{
+    public final static int NONE = -1;
+
+    // The byte values for "not reached" and "too many hops to store"
+    private final static byte UNREACHED = (byte)0xff;
+    final static int DEEP = 0xfe;
+
+    private int startCity;
+    private int[] prevOnShortestPath;  // NONE at the start and if unreached
+    private byte[] hops;               // unsigned; UNREACHED if unreached
+    private int numReached;
+    private int numRelaxed;            // adjacent Cities looked at
+
+    // Constructor
+    private HopTree(int start, int numIds)
+    {
+	startCity = start;
+	prevOnShortestPath = new int[numIds];
+	hops = new byte[numIds];
+	Arrays.fill(prevOnShortestPath, NONE);
+	Arrays.fill(hops, UNREACHED);
+    }
+
+    /**
+       build: Searches breadth-first from a City, visiting each City's
+       adjacent Cities in the same order as Graph.fewestCities(), so ties
+       are broken the same way.
+       @param graph: the Graph to search
+       @param start: the City to search from
+       @return the tree
+    */
+    public static HopTree build(Graph graph, City start)
+    {
+	int n = graph.getNumIds();
+	HopTree tree = new HopTree(start.getId(), n);
+	int[] queue = new int[n];
+	int head = 0, tail = 0;
+	tree.hops[start.getId()] = 0;
+	queue[tail ++] = start.getId();
+	while(head < tail)
+	    {
+		int city = queue[head ++];
+		int next = Math.min((tree.hops[city] & 0xff) + 1, DEEP);
+		Iterator cities
+		    = graph.getCity(city).getAdjacentCitiesIterator();
+		while(cities.hasNext())
+		    {
+			int other = ((City)cities.next()).getId();
+			tree.numRelaxed ++;
+			if(tree.hops[other] != UNREACHED) { continue; }
+			tree.hops[other] = (byte)next;
+			tree.prevOnShortestPath[other] = city;
+			queue[tail ++] = other;
+		    }
+	    }
+	tree.numReached = tail;
+	return tree;
+    }
+
+    /**
+       build: Searches breadth-first from a City over a FlightStore,
+       visiting each row's Flights in order the way
+       FlightSearch.findFewestStops() does, so ties are broken the same
+       way.
+       @param store: the Flights to search
+       @param start: the id of the City to search from
+       @return the tree
+    */
+    public static HopTree build(FlightStore store, int start)
+    {
+	int n = store.getNumCities();
+	HopTree tree = new HopTree(start, n);
+	int[] queue = new int[n];
+	int head = 0, tail = 0;
+	tree.hops[start] = 0;
+	queue[tail ++] = start;
+	while(head < tail)
+	    {
+		int city = queue[head ++];
+		int next = Math.min((tree.hops[city] & 0xff) + 1, DEEP);
+		int degree = store.getDegree(city);
+		tree.numRelaxed += degree;
+		for(int k = 0; k < degree; k++)
+		    {
+			int other = store.getDest(city, k);
+			if(tree.hops[other] != UNREACHED) { continue; }
+			tree.hops[other] = (byte)next;
+			tree.prevOnShortestPath[other] = city;
+			queue[tail ++] = other;
+		    }
+	    }
+	tree.numReached = tail;
+	return tree;
+    }
+
+    // Accessors
+    public int getStartCity()
+    { return startCity; }
+
+    public int getNumReached()
+    { return numReached; }
+
+    public int getNumRelaxed()
+    { return numRelaxed; }
+
+    public boolean isReached(int city)
+    { return city < hops.length && hops[city] != UNREACHED; }
+
+    public int getPrevOnShortestPath(int city)
+    { return (city < hops.length) ? prevOnShortestPath[city] : NONE; }
+
+    /**
+       getHops: The number of Flights on the way to a City.
+       @return the number, or City.INFINITY if the City isn't reached
+    */
+    public int getHops(int city)
+    {
+	if(!isReached(city)) { return City.INFINITY; }
+	int stored = hops[city] & 0xff;
+	if(stored < DEEP) { return stored; }
+	int count = 0;
+	for(int at = city; at != startCity; at = prevOnShortestPath[at])
+	    { count ++; }
+	return count;
+    }
+
+    /**
+       getPath: The Cities on the way to a City.
+       @return their ids from the start to city, or null if it isn't
+       reached
+    */
+    public int[] getPath(int city)
+    {
+	if(!isReached(city)) { return null; }
+	int[] path = new int[getHops(city) + 1];
+	for(int i = path.length - 1, at = city; i >= 0; i--)
+	    {
+		path[i] = at;
+		at = prevOnShortestPath[at];
+	    }
+	return path;
+    }
+
+    /**
+       applyTo: Sets the distFromStart and prevOnShortestPath of a Graph's
+       Cities from the tree, as Graph.fewestCities() would have left them.
+       The Cities are expected to have been reset.
+       @param graph: the Graph the tree was built from
+    */
+    public void applyTo(Graph graph)
+    {
+	int n = Math.min(hops.length, graph.getNumIds());
+	for(int id = 0; id < n; id++)
+	    {
+		if(hops[id] == UNREACHED) { continue; }
+		City city = graph.getCity(id);
+		if(city == null) { continue; }
+		city.setDistFromStart(getHops(id));
+		int prev = prevOnShortestPath[id];
+		if(prev != NONE)
+		    { city.setPrevOnShortestPath(graph.getCity(prev)); }
+	    }
+    }
+
+    // The estimated bytes on the heap, for MemoryFootprint
+    public long getBytes()
+    {
+	return MemoryFootprint.shallowSize(HopTree.class)
+	    + MemoryFootprint.arraySize(prevOnShortestPath.length, 4)
+	    + MemoryFootprint.arraySize(hops.length, 1);
+    }
+}
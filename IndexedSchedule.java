@@ -0,0 +1,205 @@
+/******************************************************************************
+IndexedSchedule.java
+
+An IndexedSchedule file holds a whole timetable in a form that can be
+opened without reading it: a header with the Cities, the airline codes,
+and an index of where each City's Flights start, followed by the Flights
+themselves as fixed-width records, grouped by the City they leave from.
+The records have the layout OffHeapFlightStore uses, in big-endian byte
+order, with City ids and airline ids that refer to the header.
+
+    int      MAGIC
+    int      length of the header in bytes
+    header:
+      int    number of Cities, n
+      int    number of airline codes
+      UTF    each airline code, by id
+      n x    City: code (UTF), difference from GMT (int), x and y (double),
+             name (UTF)
+      n + 1  ints: the first record of each City, then the number of
+             records
+    records
+
+open() reads only the header: it adds the Cities to an empty Graph and
+memory-maps the records as an OffHeapFlightStore. Nothing of a City's
+Flights is read until a search asks for them, when the operating system
+pages in the part of the file that holds them, so the memory used grows
+with the part of the network that queries actually touch rather than with
+the size of the timetable, and pages that haven't been used for a while
+can be dropped again. The ids in the file are the ones open() gives the
+Cities, since they're added in order to an empty Graph; airline codes are
+interned into CarrierIndex and translated as the records are read, in case
+the program already knew some of them under other ids.
+******************************************************************************/
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+public class IndexedSchedule
+{
+    // Marks the start of an indexed schedule
+    final static int MAGIC = 0x49465331; // "IFS1"
+
+    // The bytes before the header: MAGIC and the header length
+    private final static int PREAMBLE_BYTES = 8;
+
+    /**
+       write: Writes the Cities and Flights of a Graph to a file. Ids
+       without a City are left out, so the Cities get new ids in the file.
+       @param graph: the Graph to write
+       @param file: where to write it
+    */
+    public static void write(Graph graph, File file) throws IOException
+    {
+	int[] newIds = new int[graph.getNumIds()];
+	List<City> cities = new ArrayList<City>();
+	for(int id = 0; id < newIds.length; id++)
+	    {
+		City city = graph.getCity(id);
+		newIds[id] = (city == null) ? AirportCodeIndex.NO_ID
+		    : cities.size();
+		if(city != null) { cities.add(city); }
+	    }
+
+	ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+	DataOutputStream header = new DataOutputStream(headerBytes);
+	header.writeInt(cities.size());
+	int numCarriers = CarrierIndex.getNumIds();
+	header.writeInt(numCarriers);
+	for(int id = 0; id < numCarriers; id++)
+	    { header.writeUTF(CarrierIndex.codeOf(id)); }
+	for(City city : cities)
+	    {
+		header.writeUTF(city.getCode());
+		header.writeInt(city.getDiffGMT());
+		header.writeDouble(city.getXCoord());
+		header.writeDouble(city.getYCoord());
+		header.writeUTF(city.getName());
+	    }
+	int record = 0;
+	for(City city : cities)
+	    {
+		header.writeInt(record);
+		record += city.adjacentFlights.size();
+	    }
+	header.writeInt(record);
+	header.close();
+
+	DataOutputStream out = new DataOutputStream
+	    (new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+	try
+	    {
+		out.writeInt(MAGIC);
+		out.writeInt(headerBytes.size());
+		headerBytes.writeTo(out);
+		for(City city : cities)
+		    {
+			Iterator flights = city.getAdjacentFlightsIterator();
+			while(flights.hasNext())
+			    {
+				Flight flight = (Flight)flights.next();
+				out.writeInt(newIds[flight.getDest().getId()]);
+				out.writeShort(flight.getTimeDepart());
+				out.writeShort(flight.getTimeArrive());
+				out.writeShort(flight.getFlightTime());
+				out.writeShort
+				    (Math.min(flight.getMiles(),
+					      OffHeapFlightStore.MAX_MILES));
+				out.writeShort(flight.getCarrier());
+				out.writeShort(flight.getFlightNumber());
+			    }
+		    }
+	    }
+	finally
+	    { out.close(); }
+    }
+
+    /**
+       open: Reads the header of a file written by write(), adding its
+       Cities to a Graph, and maps its Flights into memory.
+       @param file: the file to open
+       @param graph: an empty Graph, which gets the Cities; its Flight
+       lists are left empty
+       @return a store over the mapped Flights
+    */
+    public static OffHeapFlightStore open(File file, Graph graph)
+	throws IOException
+    {
+	if(graph.getNumIds() != 0)
+	    {
+		throw new IllegalArgumentException
+		    ("An indexed schedule needs an empty graph");
+	    }
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try
+	    {
+		if(raf.length() < PREAMBLE_BYTES || raf.readInt() != MAGIC)
+		    {
+			throw new IOException
+			    (file + " isn't an indexed schedule");
+		    }
+		int headerLength = raf.readInt();
+		byte[] headerBytes = new byte[headerLength];
+		raf.readFully(headerBytes);
+		DataInputStream header = new DataInputStream
+		    (new ByteArrayInputStream(headerBytes));
+
+		int numCities = header.readInt();
+		int numCarriers = header.readInt();
+		int[] carrierIds = new int[numCarriers];
+		boolean sameCarriers = true;
+		for(int id = 0; id < numCarriers; id++)
+		    {
+			carrierIds[id] = CarrierIndex.intern(header.readUTF());
+			sameCarriers &= (carrierIds[id] == id);
+		    }
+		for(int id = 0; id < numCities; id++)
+		    {
+			String code = header.readUTF();
+			int diffGMT = header.readInt();
+			double x = header.readDouble();
+			double y = header.readDouble();
+			String name = header.readUTF();
+			graph.addCity(new City(name, code, diffGMT, x, y));
+		    }
+		if(graph.getNumIds() != numCities)
+		    {
+			throw new IOException
+			    (file + " has the same airport code twice");
+		    }
+		int[] firstRecord = new int[numCities + 1];
+		for(int id = 0; id <= numCities; id++)
+		    { firstRecord[id] = header.readInt(); }
+
+		long base = PREAMBLE_BYTES + (long)headerLength;
+		int numRecords = firstRecord[numCities];
+		long recordBytes = OffHeapFlightStore.RECORD_BYTES;
+		if(base + numRecords * recordBytes > raf.length())
+		    { throw new IOException(file + " is cut short"); }
+		int numSegments = (numRecords
+				   + OffHeapFlightStore.RECORDS_PER_SEGMENT - 1)
+		    >>> OffHeapFlightStore.SEGMENT_SHIFT;
+		ByteBuffer[] segments = new ByteBuffer[numSegments];
+		FileChannel channel = raf.getChannel();
+		for(int s = 0; s < numSegments; s++)
+		    {
+			long first = (long)s * OffHeapFlightStore
+			    .RECORDS_PER_SEGMENT;
+			long records = Math.min
+			    (OffHeapFlightStore.RECORDS_PER_SEGMENT,
+			     numRecords - first);
+			segments[s] = channel.map
+			    (FileChannel.MapMode.READ_ONLY,
+			     base + first * recordBytes, records * recordBytes)
+			    .order(ByteOrder.BIG_ENDIAN);
+		    }
+		return new OffHeapFlightStore(firstRecord, segments,
+					      sameCarriers ? null
+					      : carrierIds);
+	    }
+	finally
+	    { raf.close(); } // the mappings stay valid after the file is closed
+    }
+}
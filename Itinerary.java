@@ -0,0 +1,349 @@
+/******************************************************************************
+Itinerary.java
+
+An Itinerary is the answer to one routing query: the Cities flown through,
+in order, and for each leg the Flight taken, when it leaves and arrives,
+the airline and flight number, and the total cost (in minutes) and
+distance (in miles) so far. Unlike the fields a search leaves in its City
+objects or FlightSearch arrays, an Itinerary belongs to the caller, so it
+can be kept or printed after the next search has started.
+
+Times are GMT minute times, as in Flight, and are turned into local clock
+times only when the Itinerary is written out. The Itinerary keeps the
+GraphSnapshot it was found in, for the Cities' codes and time zones.
+******************************************************************************/
+
+public class Itinerary implements Comparable<Itinerary>
+{
+    private int[] cities;       // ids, from start to finish
+    private int[] flights;      // k of the Flight taken into cities[i]
+    private int[] timeDepart;   // when the leg into cities[i] leaves
+    private int[] timeArrive;   // when the traveller reaches cities[i]
+    private int[] costFromStart;
+    private int[] milesFromStart;
+    private int[] carriers;     // CarrierIndex id of the leg into cities[i]
+    private int[] flightNumbers;
+    private GraphSnapshot snapshot;
+
+    // Constructor
+    public Itinerary(int numCities, GraphSnapshot s)
+    {
+	snapshot = s;
+	cities = new int[numCities];
+	flights = new int[numCities];
+	timeDepart = new int[numCities];
+	timeArrive = new int[numCities];
+	costFromStart = new int[numCities];
+	milesFromStart = new int[numCities];
+	carriers = new int[numCities];
+	flightNumbers = new int[numCities];
+    }
+
+    /**
+       fromSearch: Copies the path to a City out of the most recent search.
+       @param search: the FlightSearch that has just run
+       @param finish: the id of the City at the end of the path
+       @param snapshot: the snapshot that was searched
+       @return the Itinerary, or null if finish wasn't reached
+    */
+    public static Itinerary fromSearch(FlightSearch search, int finish,
+				       GraphSnapshot snapshot)
+    {
+	int[] path = search.getPath(finish);
+	if(path == null) { return null; }
+	Itinerary itinerary = new Itinerary(path.length, snapshot);
+	for(int i = 0; i < path.length; i++)
+	    {
+		int city = path[i];
+		itinerary.cities[i] = city;
+		itinerary.flights[i] = search.getPrevFlight(city);
+		itinerary.timeDepart[i] = search.getTimeDepartPrevCity(city);
+		itinerary.timeArrive[i] = search.getTimeArriveThisCity(city);
+		itinerary.costFromStart[i] = search.getCostFromStart(city);
+	    }
+	itinerary.fillFromStore(search.getStore(), 1);
+	return itinerary;
+    }
+
+    /**
+       fromTree: Copies the path to a City out of a ShortestPathTree.
+       @param tree: the tree
+       @param finish: the id of the City at the end of the path
+       @return the Itinerary, or null if finish can't be reached
+    */
+    public static Itinerary fromTree(ShortestPathTree tree, int finish)
+    {
+	int[] path = tree.getPath(finish);
+	if(path == null) { return null; }
+	Itinerary itinerary = new Itinerary(path.length, tree.getSnapshot());
+	for(int i = 0; i < path.length; i++)
+	    {
+		int city = path[i];
+		itinerary.cities[i] = city;
+		itinerary.flights[i] = tree.getPrevFlight(city);
+		itinerary.timeDepart[i] = tree.getTimeDepartPrevCity(city);
+		itinerary.timeArrive[i] = tree.getTimeArriveThisCity(city);
+		itinerary.costFromStart[i] = tree.getCostFromStart(city);
+	    }
+	itinerary.fillFromStore(tree.getSnapshot().getTable(), 1);
+	return itinerary;
+    }
+
+    /**
+       fromSpur: Joins the first part of one Itinerary, up to and including
+       its City number spurIndex, to the path a search found from that
+       City, for AlternativeSearch.
+       @param root: the Itinerary whose first part is kept
+       @param spurIndex: the index in root of the City the search began at
+       @param search: the FlightSearch that has just run from there
+       @param finish: the id of the City at the end of the path
+       @return the Itinerary, or null if finish wasn't reached
+    */
+    public static Itinerary fromSpur(Itinerary root, int spurIndex,
+				     FlightSearch search, int finish)
+    {
+	int[] path = search.getPath(finish);
+	if(path == null) { return null; }
+	Itinerary itinerary = new Itinerary(spurIndex + path.length,
+					    root.snapshot);
+	for(int i = 0; i < spurIndex; i++)
+	    {
+		itinerary.cities[i] = root.cities[i];
+		itinerary.flights[i] = root.flights[i];
+		itinerary.timeDepart[i] = root.timeDepart[i];
+		itinerary.timeArrive[i] = root.timeArrive[i];
+		itinerary.costFromStart[i] = root.costFromStart[i];
+		itinerary.milesFromStart[i] = root.milesFromStart[i];
+		itinerary.carriers[i] = root.carriers[i];
+		itinerary.flightNumbers[i] = root.flightNumbers[i];
+	    }
+	for(int i = 0; i < path.length; i++)
+	    {
+		int city = path[i];
+		int at = spurIndex + i;
+		itinerary.cities[at] = city;
+		if(i == 0)
+		    {
+			itinerary.flights[at] = root.flights[spurIndex];
+			itinerary.timeDepart[at] = root.timeDepart[spurIndex];
+		    }
+		else
+		    {
+			itinerary.flights[at] = search.getPrevFlight(city);
+			itinerary.timeDepart[at]
+			    = search.getTimeDepartPrevCity(city);
+		    }
+		itinerary.timeArrive[at] = search.getTimeArriveThisCity(city);
+		itinerary.costFromStart[at] = search.getCostFromStart(city);
+	    }
+	itinerary.fillFromStore(search.getStore(), Math.max(spurIndex, 1));
+	return itinerary;
+    }
+
+    /**
+       setCity: Fills in one City of an Itinerary that is put together a
+       piece at a time, as ShardCoordinator does from the paths several
+       ShardServers found.
+       @param i: the City's index in the Itinerary
+       @param city: its id
+       @param flight: the k of the Flight taken into it (or -1 at the start)
+       @param depart: when that Flight leaves, in GMT minutes
+       @param arrive: when the traveller gets there, in GMT minutes
+       @param cost: the cost so far
+       @param miles: the miles flown so far
+       @param carrier: the CarrierIndex id of the Flight's airline
+       @param flightNumber: the Flight's number
+    */
+    void setCity(int i, int city, int flight, int depart, int arrive,
+		 int cost, int miles, int carrier, int flightNumber)
+    {
+	cities[i] = city;
+	flights[i] = flight;
+	timeDepart[i] = depart;
+	timeArrive[i] = arrive;
+	costFromStart[i] = cost;
+	milesFromStart[i] = miles;
+	carriers[i] = carrier;
+	flightNumbers[i] = flightNumber;
+    }
+
+    /**
+       fillFromStore: Fills in the distance so far, the airline, and the
+       flight number at each City from a given one on, from the Flights
+       taken.
+       @param store: the store the Flights were found in
+       @param from: the first City whose distance isn't filled in yet
+    */
+    private void fillFromStore(FlightStore store, int from)
+    {
+	for(int i = from; i < cities.length; i++)
+	    {
+		milesFromStart[i] = milesFromStart[i - 1]
+		    + store.getMiles(cities[i - 1], flights[i]);
+		carriers[i] = store.getCarrier(cities[i - 1], flights[i]);
+		flightNumbers[i]
+		    = store.getFlightNumber(cities[i - 1], flights[i]);
+	    }
+    }
+
+    /**
+       sharesStart: Checks whether two Itineraries take the same Flights as
+       far as their City number index.
+    */
+    public boolean sharesStart(Itinerary other, int index)
+    {
+	if(index >= cities.length || index >= other.cities.length)
+	    { return false; }
+	for(int i = 0; i <= index; i++)
+	    {
+		if(cities[i] != other.cities[i]) { return false; }
+		if(i > 0 && flights[i] != other.flights[i]) { return false; }
+	    }
+	return true;
+    }
+
+    /**
+       compareTo: Orders Itineraries by total cost, then by number of
+       Flights, then by the Flights themselves, so that two Itineraries
+       compare equal only if they take the same Flights.
+    */
+    public int compareTo(Itinerary other)
+    {
+	if(getTotalCost() != other.getTotalCost())
+	    { return Integer.compare(getTotalCost(), other.getTotalCost()); }
+	if(cities.length != other.cities.length)
+	    { return Integer.compare(cities.length, other.cities.length); }
+	for(int i = 0; i < cities.length; i++)
+	    {
+		if(cities[i] != other.cities[i])
+		    { return Integer.compare(cities[i], other.cities[i]); }
+		if(i > 0 && flights[i] != other.flights[i])
+		    { return Integer.compare(flights[i], other.flights[i]); }
+	    }
+	return 0;
+    }
+
+    // Accessors
+    public GraphSnapshot getSnapshot()
+    { return snapshot; }
+
+    public int getNumCities()
+    { return cities.length; }
+
+    public int getNumFlights()
+    { return cities.length - 1; }
+
+    public int getCity(int i)
+    { return cities[i]; }
+
+    public int getStartCity()
+    { return cities[0]; }
+
+    public int getFinishCity()
+    { return cities[cities.length - 1]; }
+
+    // The k of the Flight taken from getCity(i - 1) to getCity(i)
+    public int getFlight(int i)
+    { return flights[i]; }
+
+    public int getTimeDepart(int i)
+    { return timeDepart[i]; }
+
+    public int getTimeArrive(int i)
+    { return timeArrive[i]; }
+
+    public int getCostFromStart(int i)
+    { return costFromStart[i]; }
+
+    public int getTotalCost()
+    { return costFromStart[cities.length - 1]; }
+
+    public int getMilesFromStart(int i)
+    { return milesFromStart[i]; }
+
+    public int getTotalMiles()
+    { return milesFromStart[cities.length - 1]; }
+
+    public int getCarrier(int i)
+    { return carriers[i]; }
+
+    public int getFlightNumber(int i)
+    { return flightNumbers[i]; }
+
+    /**
+       print: Prints the Itinerary in the same form as Graph.printPath(),
+       followed by the total cost.
+    */
+    public void print()
+    {
+	City startCity = snapshot.getCity(cities[0]);
+	System.out.println("Start at " + startCity.getName() + " at " +
+			   Graph.minuteTimeToClockTime
+			   (timeArrive[0] + startCity.getOffsetMinutes()));
+	for(int i = 1; i < cities.length; i++)
+	    {
+		City from = snapshot.getCity(cities[i - 1]);
+		City to = snapshot.getCity(cities[i]);
+		System.out.println("depart at " + Graph.minuteTimeToClockTime
+				   (timeDepart[i] + from.getOffsetMinutes()) +
+				   " to " + to.getName() + ", arriving at " +
+				   Graph.minuteTimeToClockTime
+				   (timeArrive[i] + to.getOffsetMinutes()) +
+				   "\n\twith additional cost of " +
+				   Graph.minuteTimeToHoursAndMinutes
+				   (costFromStart[i] - costFromStart[i - 1]));
+	    }
+	System.out.println("Total cost = " +
+			   Graph.minuteTimeToHoursAndMinutes(getTotalCost()));
+    }
+
+    /**
+       appendJson: Writes the Itinerary as a JSON object, with local clock
+       times for every leg.
+       @param out: where to write
+    */
+    public void appendJson(StringBuilder out)
+    {
+	out.append('{');
+	Json.appendField(out, "found", true);
+	out.append(',');
+	Json.appendField(out, "cost", getTotalCost());
+	out.append(',');
+	Json.appendField(out, "duration",
+			 Graph.minuteTimeToHoursAndMinutes(getTotalCost()));
+	out.append(',');
+	Json.appendField(out, "flights", getNumFlights());
+	out.append(',');
+	Json.appendField(out, "miles", getTotalMiles());
+	out.append(",\"legs\":[");
+	for(int i = 1; i < cities.length; i++)
+	    {
+		City from = snapshot.getCity(cities[i - 1]);
+		City to = snapshot.getCity(cities[i]);
+		if(i > 1) { out.append(','); }
+		out.append('{');
+		Json.appendField(out, "from", from.getCode());
+		out.append(',');
+		Json.appendField(out, "to", to.getCode());
+		out.append(',');
+		Json.appendField(out, "carrier",
+				 CarrierIndex.codeOf(carriers[i]));
+		out.append(',');
+		Json.appendField(out, "flight", flightNumbers[i]);
+		out.append(',');
+		Json.appendField(out, "depart", Graph.minuteTimeToClockTime
+				 (timeDepart[i] + from.getOffsetMinutes()));
+		out.append(',');
+		Json.appendField(out, "arrive", Graph.minuteTimeToClockTime
+				 (timeArrive[i] + to.getOffsetMinutes()));
+		out.append(',');
+		Json.appendField(out, "cost", costFromStart[i]
+				 - costFromStart[i - 1]);
+		out.append(',');
+		Json.appendField(out, "miles", milesFromStart[i]
+				 - milesFromStart[i - 1]);
+		out.append('}');
+	    }
+	out.append("]}");
+    }
+}
@@ -0,0 +1,80 @@
+/******************************************************************************
+Json.java
+
+Json has the few helpers needed to write query results as JSON text into a
+StringBuilder. The results are small and flat (strings, ints, and lists of
+legs), so they are written directly instead of going through a JSON
+library.
+******************************************************************************/
+
+public class Json
+{
+    /**
+       appendString: Appends a String as a quoted JSON string, escaping
+       quotes, backslashes, and control characters.
+       @param out: where to append
+       @param value: the String to append
+    */
+    public static void appendString(StringBuilder out, String value)
+    {
+	out.append('"');
+	for(int i = 0; i < value.length(); i++)
+	    {
+		char c = value.charAt(i);
+		if(c == '"' || c == '\\') { out.append('\\').append(c); }
+		else if(c == '\n') { out.append("\\n"); }
+		else if(c == '\t') { out.append("\\t"); }
+		else if(c == '\r') { out.append("\\r"); }
+		else if(c < ' ')
+		    {
+			out.append("\\u00");
+			out.append(Character.forDigit(c >> 4, 16));
+			out.append(Character.forDigit(c & 15, 16));
+		    }
+		else { out.append(c); }
+	    }
+	out.append('"');
+    }
+
+    /**
+       appendField: Appends "name": and a quoted String value.
+    */
+    public static void appendField(StringBuilder out, String name,
+				   String value)
+    {
+	appendString(out, name);
+	out.append(':');
+	appendString(out, value);
+    }
+
+    /**
+       appendField: Appends "name": and a whole-number value.
+    */
+    public static void appendField(StringBuilder out, String name, long value)
+    {
+	appendString(out, name);
+	out.append(':').append(value);
+    }
+
+    /**
+       appendField: Appends "name": and a boolean value.
+    */
+    public static void appendField(StringBuilder out, String name,
+				   boolean value)
+    {
+	appendString(out, name);
+	out.append(':').append(value);
+    }
+
+    /**
+       error: Makes the body of an error response.
+       @param message: what went wrong
+       @return {"error":"message"}
+    */
+    public static StringBuilder error(String message)
+    {
+	StringBuilder out = new StringBuilder("{");
+	appendField(out, "error", message);
+	return out.append('}');
+    }
+}
@@ -0,0 +1,177 @@
+/******************************************************************************
+LatencyHistogram.java
+
+A LatencyHistogram counts how long queries take, in the style of an HDR
+histogram: values are grouped into buckets whose width grows with the
+value, so that every value is recorded to within about 1/SUB_BUCKETS of
+itself (about 6%) no matter whether it is a microsecond or a minute, and
+the whole range of a long fits in NUM_BUCKETS counters.
+
+The counters are split into a fixed number of stripes, and each thread
+records into the stripe its id hashes to, so threads answering queries at
+the same time seldom touch the same counter. The stripes don't depend on
+which threads come and go, so a server that runs every request on a new
+thread uses no more memory for its histograms than one that reuses them.
+Reading the histogram adds up the stripes. A reading taken while queries
+are running may miss the very latest few values, which is fine for
+monitoring.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+public class LatencyHistogram
+{
+    final static int SUB_BUCKET_BITS = 4;
+    final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    final static int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    // A power of two, about one stripe per processor, but at most 8
+    final static int STRIPES = Math.min
+	(8, Integer.highestOneBit
+	 (Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+
+    // Stripe s's counter for bucket b is at s * NUM_BUCKETS + b
+    private final AtomicLongArray counts
+	= new AtomicLongArray(STRIPES * NUM_BUCKETS);
+
+    /**
+       bucketOf: Works out which bucket a value goes in. Values below
+       SUB_BUCKETS get a bucket each; above that, each power of two is
+       split into SUB_BUCKETS equal parts.
+       @param value: a non-negative value
+       @return the bucket number
+    */
+    static int bucketOf(long value)
+    {
+	if(value < SUB_BUCKETS) { return (int)Math.max(value, 0); }
+	int exponent = 63 - Long.numberOfLeadingZeros(value);
+	int shift = exponent - SUB_BUCKET_BITS;
+	int sub = (int)(value >>> shift) & (SUB_BUCKETS - 1);
+	return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+       lowestValueIn: The smallest value that goes in the given bucket.
+    */
+    static long lowestValueIn(int bucket)
+    {
+	if(bucket < SUB_BUCKETS) { return bucket; }
+	int shift = bucket / SUB_BUCKETS - 1;
+	long sub = bucket % SUB_BUCKETS;
+	return (SUB_BUCKETS + sub) << shift;
+    }
+
+    /**
+       highestValueIn: The largest value that goes in the given bucket.
+    */
+    static long highestValueIn(int bucket)
+    {
+	if(bucket + 1 >= NUM_BUCKETS) { return Long.MAX_VALUE; }
+	return lowestValueIn(bucket + 1) - 1;
+    }
+
+    // Modifiers
+    public void record(long value)
+    {
+	counts.getAndIncrement(stripeOfThisThread() * NUM_BUCKETS
+			       + bucketOf(value));
+    }
+
+    public void reset()
+    {
+	for(int i = 0; i < counts.length(); i++)
+	    { counts.set(i, 0); }
+    }
+
+    /**
+       stripeOfThisThread: Picks the current thread's stripe by mixing the
+       bits of its id, since ids are handed out in order.
+    */
+    private static int stripeOfThisThread()
+    {
+	long id = Thread.currentThread().getId();
+	int hash = (int)(id ^ (id >>> 32)) * 0x9e3779b9;
+	return (hash >>> 16) & (STRIPES - 1);
+    }
+
+    /**
+       snapshot: Adds up the stripes.
+       @return the total count in each bucket
+    */
+    public long[] snapshot()
+    {
+	long[] total = new long[NUM_BUCKETS];
+	for(int s = 0; s < STRIPES; s++)
+	    {
+		for(int b = 0; b < NUM_BUCKETS; b++)
+		    { total[b] += counts.get(s * NUM_BUCKETS + b); }
+	    }
+	return total;
+    }
+
+    public long getCount()
+    {
+	long count = 0;
+	long[] total = snapshot();
+	for(int b = 0; b < NUM_BUCKETS; b++)
+	    { count += total[b]; }
+	return count;
+    }
+
+    /**
+       getPercentile: Estimates the value below which the given percentage
+       of the recorded values fall.
+       @param percentile: e.g., 99.9
+       @return the upper end of the bucket holding that value, or 0 if
+       nothing has been recorded
+    */
+    public long getPercentile(double percentile)
+    { return percentileOf(snapshot(), percentile); }
+
+    static long percentileOf(long[] total, double percentile)
+    {
+	long count = 0;
+	for(int b = 0; b < NUM_BUCKETS; b++)
+	    { count += total[b]; }
+	if(count == 0) { return 0; }
+
+	long rank = (long)Math.ceil(percentile / 100.0 * count);
+	if(rank < 1) { rank = 1; }
+	long seen = 0;
+	for(int b = 0; b < NUM_BUCKETS; b++)
+	    {
+		seen += total[b];
+		if(seen >= rank) { return highestValueIn(b); }
+	    }
+	return highestValueIn(NUM_BUCKETS - 1);
+    }
+
+    /**
+       getMean: Estimates the mean from the middle of each bucket.
+    */
+    public double getMean()
+    {
+	long[] total = snapshot();
+	long count = 0;
+	double sum = 0;
+	for(int b = 0; b < NUM_BUCKETS; b++)
+	    {
+		if(total[b] == 0) { continue; }
+		count += total[b];
+		sum += total[b] * ((lowestValueIn(b) / 2.0)
+				   + (highestValueIn(b) / 2.0));
+	    }
+	return (count == 0) ? 0 : sum / count;
+    }
+
+    public long getMax()
+    {
+	long[] total = snapshot();
+	for(int b = NUM_BUCKETS - 1; b >= 0; b--)
+	    {
+		if(total[b] > 0) { return highestValueIn(b); }
+	    }
+	return 0;
+    }
+}
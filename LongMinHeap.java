@@ -0,0 +1,85 @@
+/******************************************************************************
+LongMinHeap.java
+
+A binary min-heap of primitive longs. The searches that work on primitive
+arrays pack a cost and a node number into one long (cost in the high 32
+bits, node in the low 32 bits), so the heap orders entries by cost without
+allocating an object per push. Like the PriorityQueue in Graph.dijkstra(),
+it has no decrease-key: a node is simply pushed again when its cost
+improves, and the stale entries are skipped when they are popped.
+******************************************************************************/
+
+public class LongMinHeap
+{
+    private long[] heap;
+    private int size;
+
+    // Constructor
+    public LongMinHeap(int initialCapacity)
+    {
+	heap = new long[Math.max(initialCapacity, 16)];
+	size = 0;
+    }
+
+    // Helpers for packing a cost and a node into one entry
+    public static long pack(int cost, int node)
+    { return ((long)cost << 32) | (node & 0xffffffffL); }
+
+    public static int costOf(long entry)
+    { return (int)(entry >>> 32); }
+
+    public static int nodeOf(long entry)
+    { return (int)entry; }
+
+    // Accessors
+    public boolean isEmpty()
+    { return size == 0; }
+
+    public int size()
+    { return size; }
+
+    public int capacity()
+    { return heap.length; }
+
+    // Modifiers
+    public void clear()
+    { size = 0; }
+
+    public void push(long entry)
+    {
+	if(size == heap.length)
+	    { heap = java.util.Arrays.copyOf(heap, size * 2); }
+
+	// Sift up
+	int child = size++;
+	while(child > 0)
+	    {
+		int parent = (child - 1) >>> 1;
+		if(heap[parent] <= entry) { break; }
+		heap[child] = heap[parent];
+		child = parent;
+	    }
+	heap[child] = entry;
+    }
+
+    public long pop()
+    {
+	long top = heap[0];
+	long last = heap[--size];
+
+	// Sift down
+	int parent = 0;
+	int half = size >>> 1;
+	while(parent < half)
+	    {
+		int child = 2 * parent + 1;
+		if(child + 1 < size && heap[child + 1] < heap[child])
+		    { child ++; }
+		if(last <= heap[child]) { break; }
+		heap[parent] = heap[child];
+		parent = child;
+	    }
+	if(size > 0) { heap[parent] = last; }
+	return top;
+    }
+}
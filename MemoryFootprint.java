@@ -0,0 +1,259 @@
+/******************************************************************************
+MemoryFootprint.java
+
+A MemoryFootprint estimates how many bytes a loaded Graph takes up, broken
+down by structure: the cityMap and codeMap TreeMaps, the adjacency
+LinkedLists, the City and Flight objects, the Strings, and any indexes
+that have been built (the AirportCodeIndex, FlightTables,
+TimeExpandedGraphs, and so on). Report.txt could only say "c*n^2
+elements"; this gives real numbers for capacity planning.
+
+The numbers come from live counts (how many Cities, Flights, list nodes,
+and characters there actually are) multiplied by object sizes worked out
+from the fields of each class, assuming a 64-bit HotSpot JVM with
+compressed references: a 12-byte object header, a 16-byte array header,
+4-byte references, and every object rounded up to a multiple of 8 bytes.
+They are estimates, not measurements; field packing and String
+deduplication can make the real numbers a little different.
+******************************************************************************/
+
+import java.util.*;
+import java.lang.reflect.*;
+
+public class MemoryFootprint
+{
+    final static int OBJECT_HEADER = 12;
+    final static int ARRAY_HEADER = 16;
+    final static int REFERENCE = 4;
+    final static int ALIGNMENT = 8;
+
+    private static Map<Class<?>, Long> shallowSizes
+	= new HashMap<Class<?>, Long>();
+
+    // One line of the report
+    private static class Entry
+    {
+	String structure;
+	long objects;
+	long bytes;
+	boolean offHeap;
+    }
+
+    private List<Entry> entries;
+
+    // Constructor
+    public MemoryFootprint()
+    { entries = new ArrayList<Entry>(); }
+
+    /**
+       of: Builds the footprint of a Graph's own structures.
+       @param graph: the Graph to measure
+       @return the footprint
+    */
+    public static MemoryFootprint of(Graph graph)
+    {
+	MemoryFootprint footprint = new MemoryFootprint();
+	long numCities = graph.getSize();
+	long numAdjacentCities = 0, numFlights = 0, stringBytes = 0;
+	Iterator cities = graph.getCitiesIterator();
+	while(cities.hasNext())
+	    {
+		City city = (City)cities.next();
+		numAdjacentCities += city.adjacentCities.size();
+		numFlights += city.adjacentFlights.size();
+		stringBytes += stringSize(city.getName())
+		    + stringSize(city.getCode());
+	    }
+
+	long treeMap = shallowSize(TreeMap.class);
+	long treeEntry = shallowSize("java.util.TreeMap$Entry");
+	long list = shallowSize(LinkedList.class);
+	long listNode = shallowSize("java.util.LinkedList$Node");
+
+	footprint.add("cityMap", numCities + 1, treeMap + numCities * treeEntry);
+	footprint.add("codeMap", numCities + 1, treeMap + numCities * treeEntry);
+	footprint.add("City objects", numCities,
+		      numCities * shallowSize(City.class));
+	footprint.add("adjacentCities lists", numCities + numAdjacentCities,
+		      numCities * list + numAdjacentCities * listNode);
+	footprint.add("adjacentFlights lists", numCities + numFlights,
+		      numCities * list + numFlights * listNode);
+	footprint.add("Flight objects", numFlights,
+		      numFlights * shallowSize(Flight.class));
+	footprint.add("Strings (names, codes)", 4 * numCities, stringBytes);
+
+	AirportCodeIndex index = graph.getCodeIndex();
+	footprint.add("AirportCodeIndex", 2 + index.getNumOtherCodes(),
+		      shallowSize(AirportCodeIndex.class)
+		      + arraySize(index.getNumSlots(), 4)
+		      + shallowSize(HashMap.class)
+		      + index.getNumOtherCodes()
+		      * shallowSize("java.util.HashMap$Node"));
+	footprint.add("citiesById array", 1,
+		      arraySize(graph.getCityArrayLength(), REFERENCE));
+
+	Collection<HopTree> hopTrees = graph.getHopTrees();
+	if(!hopTrees.isEmpty())
+	    {
+		long hopTreeBytes = 0;
+		for(HopTree tree : hopTrees)
+		    { hopTreeBytes += tree.getBytes(); }
+		footprint.add("HopTrees (fewest-stops cache)",
+			      3 * hopTrees.size(), hopTreeBytes);
+	    }
+	return footprint;
+    }
+
+    /**
+       add: Adds a line to the report for a structure on the heap.
+       @param structure: the name of the structure
+       @param objects: how many objects (or arrays) it consists of
+       @param bytes: the estimated number of bytes
+    */
+    public void add(String structure, long objects, long bytes)
+    { add(structure, objects, bytes, false); }
+
+    /**
+       addOffHeap: Adds a line for memory that is outside the Java heap
+       (e.g., the records of an OffHeapFlightStore). It is reported
+       separately and not counted in getHeapBytes().
+    */
+    public void addOffHeap(String structure, long objects, long bytes)
+    { add(structure, objects, bytes, true); }
+
+    private void add(String structure, long objects, long bytes,
+		     boolean offHeap)
+    {
+	Entry entry = new Entry();
+	entry.structure = structure;
+	entry.objects = objects;
+	entry.bytes = bytes;
+	entry.offHeap = offHeap;
+	entries.add(entry);
+    }
+
+    // Accessors
+    public long getHeapBytes()
+    {
+	long total = 0;
+	for(Entry entry : entries)
+	    { if(!entry.offHeap) { total += entry.bytes; } }
+	return total;
+    }
+
+    public long getOffHeapBytes()
+    {
+	long total = 0;
+	for(Entry entry : entries)
+	    { if(entry.offHeap) { total += entry.bytes; } }
+	return total;
+    }
+
+    /**
+       getBytes: Looks up the bytes reported for one structure.
+       @param structure: the name used when the line was added
+       @return the bytes, or 0 if there is no such line
+    */
+    public long getBytes(String structure)
+    {
+	for(Entry entry : entries)
+	    {
+		if(entry.structure.equals(structure))
+		    { return entry.bytes; }
+	    }
+	return 0;
+    }
+
+    public String toString()
+    {
+	long heap = getHeapBytes();
+	StringBuilder report = new StringBuilder();
+	report.append(String.format("%-28s %12s %14s %7s\n", "structure",
+				    "objects", "bytes", "share"));
+	for(Entry entry : entries)
+	    {
+		String share = entry.offHeap ? "off-heap"
+		    : String.format("%6.1f%%", (heap == 0) ? 0.0
+				    : 100.0 * entry.bytes / heap);
+		report.append(String.format("%-28s %12d %14d %7s\n",
+					    entry.structure, entry.objects,
+					    entry.bytes, share));
+	    }
+	report.append(String.format("%-28s %12s %14d\n", "total heap", "",
+				    heap));
+	long offHeap = getOffHeapBytes();
+	if(offHeap > 0)
+	    {
+		report.append(String.format("%-28s %12s %14d\n",
+					    "total off-heap", "", offHeap));
+	    }
+	return report.toString();
+    }
+
+    /************************* LAYOUT ESTIMATES *****************************/
+    /**
+       shallowSize: Estimates the size of one object of a class, not
+       counting the objects it refers to, from the types of its instance
+       fields (including inherited ones).
+       @param c: the class
+       @return the size in bytes, rounded up to ALIGNMENT
+    */
+    public static synchronized long shallowSize(Class<?> c)
+    {
+	Long cached = shallowSizes.get(c);
+	if(cached != null) { return cached.longValue(); }
+
+	long size = OBJECT_HEADER;
+	for(Class<?> k = c; k != null; k = k.getSuperclass())
+	    {
+		Field[] fields = k.getDeclaredFields();
+		for(int i = 0; i < fields.length; i++)
+		    {
+			if(!Modifier.isStatic(fields[i].getModifiers()))
+			    { size += fieldSize(fields[i].getType()); }
+		    }
+	    }
+	size = align(size);
+	shallowSizes.put(c, size);
+	return size;
+    }
+
+    /**
+       shallowSize: The same, for a class known only by name (such as the
+       private node classes inside java.util). Returns 0 if the class
+       can't be found.
+    */
+    public static long shallowSize(String className)
+    {
+	try { return shallowSize(Class.forName(className)); }
+	catch(ClassNotFoundException e) { return 0; }
+    }
+
+    /**
+       arraySize: Estimates the size of an array.
+       @param length: the number of elements
+       @param elementBytes: the size of one element (REFERENCE for arrays of
+       objects)
+    */
+    public static long arraySize(long length, int elementBytes)
+    { return align(ARRAY_HEADER + length * elementBytes); }
+
+    /**
+       stringSize: Estimates the size of a String and its character array,
+       assuming compact (one byte per character) Strings.
+    */
+    public static long stringSize(String s)
+    { return shallowSize(String.class) + arraySize(s.length(), 1); }
+
+    private static int fieldSize(Class<?> type)
+    {
+	if(type == long.class || type == double.class) { return 8; }
+	if(type == int.class || type == float.class) { return 4; }
+	if(type == short.class || type == char.class) { return 2; }
+	if(type == byte.class || type == boolean.class) { return 1; }
+	return REFERENCE;
+    }
+
+    private static long align(long bytes)
+    { return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT; }
+}
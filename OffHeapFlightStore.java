@@ -0,0 +1,296 @@
+/******************************************************************************
+OffHeapFlightStore.java
+
+An OffHeapFlightStore keeps every Flight as a fixed-width record in direct
+ByteBuffers, which live outside the Java heap, so a very large timetable
+doesn't give the garbage collector hundreds of bytes per leg to trace. The
+heap only holds the array that says where each City's records start and
+the handful of ByteBuffer objects themselves.
+
+A record is RECORD_BYTES long:
+    bytes 0-3    destination City id
+    bytes 4-5    departure time (GMT minute time)
+    bytes 6-7    arrival time (GMT minute time)
+    bytes 8-9    flight time in minutes
+    bytes 10-11  distance in whole miles (unsigned, at most MAX_MILES)
+    bytes 12-13  CarrierIndex id of the airline (unsigned)
+    bytes 14-15  flight number (unsigned)
+The records of one City are consecutive, and the Cities come in id order.
+A single ByteBuffer can't be bigger than 2 GB, so the records are split
+into segments of RECORDS_PER_SEGMENT records each.
+
+The segments can also be memory-mapped from an IndexedSchedule file
+instead of allocated, in which case a City's records are only read from
+disk when a search first looks at them, and only the pages searched
+take up memory. A mapped store may also translate the airline ids saved
+in the file to this program's CarrierIndex ids.
+******************************************************************************/
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+
+public class OffHeapFlightStore implements FlightStore
+{
+    final static int RECORD_BYTES = 16;
+    final static int DEST_OFFSET = 0;
+    final static int DEPART_OFFSET = 4;
+    final static int ARRIVE_OFFSET = 6;
+    final static int FLIGHT_TIME_OFFSET = 8;
+    final static int MILES_OFFSET = 10;
+    final static int CARRIER_OFFSET = 12;
+    final static int FLIGHT_NUMBER_OFFSET = 14;
+    final static int MAX_MILES = 0xffff;
+
+    final static int SEGMENT_SHIFT = 20;
+    final static int RECORDS_PER_SEGMENT = 1 << SEGMENT_SHIFT;
+    final static int SEGMENT_MASK = RECORDS_PER_SEGMENT - 1;
+
+    private int[] firstRecord;  // City c's records are firstRecord[c] to
+                                // firstRecord[c+1] - 1
+    private ByteBuffer[] segments;
+    private int[] carrierIds;   // CarrierIndex id of each saved airline
+                                // id, or null if they're the same
+    private boolean mapped;     // whether the segments are a mapped file
+
+    /**
+       Constructor: Wraps records that are already filled in, such as
+       the mapped segments of an IndexedSchedule file.
+       @param first: where each City's records start, as above
+       @param s: the segments
+       @param carriers: the CarrierIndex id of each airline id in the
+       records, or null if they are CarrierIndex ids already
+    */
+    OffHeapFlightStore(int[] first, ByteBuffer[] s, int[] carriers)
+    {
+	firstRecord = first;
+	segments = s;
+	carrierIds = carriers;
+	mapped = true;
+    }
+
+    /**
+       Constructor: Sets aside (zeroed) off-heap space for the given number
+       of Flights leaving each City. The records are then filled in with
+       putFlight().
+       @param degrees: the number of Flights leaving each City, by id
+    */
+    private OffHeapFlightStore(int[] degrees)
+    {
+	firstRecord = new int[degrees.length + 1];
+	for(int c = 0; c < degrees.length; c++)
+	    { firstRecord[c + 1] = firstRecord[c] + degrees[c]; }
+
+	int numRecords = firstRecord[degrees.length];
+	int numSegments = (numRecords + RECORDS_PER_SEGMENT - 1)
+	    >>> SEGMENT_SHIFT;
+	segments = new ByteBuffer[numSegments];
+	for(int s = 0; s < numSegments; s++)
+	    {
+		int records = Math.min(RECORDS_PER_SEGMENT,
+				       numRecords - s * RECORDS_PER_SEGMENT);
+		segments[s] = ByteBuffer.allocateDirect(records * RECORD_BYTES)
+		    .order(ByteOrder.nativeOrder());
+	    }
+    }
+
+    /**
+       fromGraph: Copies the Flights of a Graph into a new
+       OffHeapFlightStore.
+       @param graph: the Graph to copy
+       @return the new store
+    */
+    public static OffHeapFlightStore fromGraph(Graph graph)
+    {
+	int[] degrees = new int[graph.getNumIds()];
+	for(int id = 0; id < degrees.length; id++)
+	    {
+		City city = graph.getCity(id);
+		if(city != null) { degrees[id] = city.adjacentFlights.size(); }
+	    }
+
+	OffHeapFlightStore store = new OffHeapFlightStore(degrees);
+	for(int id = 0; id < degrees.length; id++)
+	    {
+		if(degrees[id] == 0) { continue; }
+		int k = 0;
+		Iterator flights = graph.getCity(id).getAdjacentFlightsIterator();
+		while(flights.hasNext())
+		    {
+			Flight flight = (Flight)flights.next();
+			store.putFlight(id, k++, flight.getDest().getId(),
+					flight.getTimeDepart(),
+					flight.getTimeArrive(),
+					flight.getFlightTime(),
+					flight.getMiles(), flight.getCarrier(),
+					flight.getFlightNumber());
+		    }
+	    }
+	return store;
+    }
+
+    /**
+       load: Reads the flight schedule of an input file straight into a new
+       OffHeapFlightStore, without making any Flight objects. The file is
+       read twice: once to count the Flights leaving each City, and once
+       to fill in the records.
+       @param file: the input file, in the format findFlight reads
+       @param graph: a Graph that already holds the file's Cities (e.g., from
+       findFlight.initializeCities()); its Flight lists are left empty
+       @return the new store
+    */
+    public static OffHeapFlightStore load(File file, Graph graph)
+	throws IOException
+    {
+	int[] fields = new int[findFlight.FLIGHT_FIELDS];
+	int[] degrees = new int[graph.getNumIds()];
+	BitSet badLines = new BitSet(); // lines parseFlight() complained about
+	int lineNumber = 0;
+	Scanner fileIn = new Scanner(file);
+	String currLine = findFlight.initializeCities(fileIn, null);
+	while(currLine != null)
+	    {
+		if(findFlight.parseFlight(currLine, graph, fields))
+		    { degrees[fields[findFlight.FLIGHT_START]] ++; }
+		else
+		    { badLines.set(lineNumber); }
+		lineNumber ++;
+		currLine = fileIn.hasNext() ? fileIn.nextLine() : null;
+	    }
+	fileIn.close();
+
+	OffHeapFlightStore store = new OffHeapFlightStore(degrees);
+	int[] filled = new int[degrees.length];
+	lineNumber = 0;
+	fileIn = new Scanner(file);
+	currLine = findFlight.initializeCities(fileIn, null);
+	while(currLine != null)
+	    {
+		if(!badLines.get(lineNumber ++)
+		   && findFlight.parseFlight(currLine, graph, fields))
+		    {
+			City start = graph.getCity(fields[findFlight.FLIGHT_START]);
+			City dest = graph.getCity(fields[findFlight.FLIGHT_DEST]);
+			int depart = Graph.clockTimeToGMTMinuteTime
+			    (fields[findFlight.FLIGHT_DEPART], start);
+			int arrive = Graph.clockTimeToGMTMinuteTime
+			    (fields[findFlight.FLIGHT_ARRIVE], dest);
+			store.putFlight(start.getId(), filled[start.getId()] ++,
+					dest.getId(), depart, arrive,
+					Graph.getWaitingTime(depart, arrive),
+					start.milesTo(dest),
+					fields[findFlight.FLIGHT_CARRIER],
+					fields[findFlight.FLIGHT_NUMBER]);
+		    }
+		currLine = fileIn.hasNext() ? fileIn.nextLine() : null;
+	    }
+	fileIn.close();
+	return store;
+    }
+
+    private void putFlight(int city, int k, int dest, int depart, int arrive,
+			   int flightTime, int miles, int carrier,
+			   int flightNumber)
+    {
+	int record = firstRecord[city] + k;
+	ByteBuffer segment = segments[record >>> SEGMENT_SHIFT];
+	int at = (record & SEGMENT_MASK) * RECORD_BYTES;
+	segment.putInt(at + DEST_OFFSET, dest);
+	segment.putShort(at + DEPART_OFFSET, (short)depart);
+	segment.putShort(at + ARRIVE_OFFSET, (short)arrive);
+	segment.putShort(at + FLIGHT_TIME_OFFSET, (short)flightTime);
+	segment.putShort(at + MILES_OFFSET,
+			 (short)Math.min(miles, MAX_MILES));
+	segment.putShort(at + CARRIER_OFFSET, (short)carrier);
+	segment.putShort(at + FLIGHT_NUMBER_OFFSET, (short)flightNumber);
+    }
+
+    // Accessors
+    public int getNumCities()
+    { return firstRecord.length - 1; }
+
+    public int getNumFlights()
+    { return firstRecord[firstRecord.length - 1]; }
+
+    public int getDegree(int city)
+    { return firstRecord[city + 1] - firstRecord[city]; }
+
+    public int getDest(int city, int k)
+    {
+	int record = firstRecord[city] + k;
+	return segments[record >>> SEGMENT_SHIFT].getInt
+	    ((record & SEGMENT_MASK) * RECORD_BYTES + DEST_OFFSET);
+    }
+
+    public int getTimeDepart(int city, int k)
+    {
+	int record = firstRecord[city] + k;
+	return segments[record >>> SEGMENT_SHIFT].getShort
+	    ((record & SEGMENT_MASK) * RECORD_BYTES + DEPART_OFFSET);
+    }
+
+    public int getTimeArrive(int city, int k)
+    {
+	int record = firstRecord[city] + k;
+	return segments[record >>> SEGMENT_SHIFT].getShort
+	    ((record & SEGMENT_MASK) * RECORD_BYTES + ARRIVE_OFFSET);
+    }
+
+    public int getFlightTime(int city, int k)
+    {
+	int record = firstRecord[city] + k;
+	return segments[record >>> SEGMENT_SHIFT].getShort
+	    ((record & SEGMENT_MASK) * RECORD_BYTES + FLIGHT_TIME_OFFSET);
+    }
+
+    public int getMiles(int city, int k)
+    {
+	int record = firstRecord[city] + k;
+	return segments[record >>> SEGMENT_SHIFT].getShort
+	    ((record & SEGMENT_MASK) * RECORD_BYTES + MILES_OFFSET) & 0xffff;
+    }
+
+    public int getCarrier(int city, int k)
+    {
+	int record = firstRecord[city] + k;
+	int carrier = segments[record >>> SEGMENT_SHIFT].getShort
+	    ((record & SEGMENT_MASK) * RECORD_BYTES + CARRIER_OFFSET) & 0xffff;
+	return (carrierIds == null) ? carrier : carrierIds[carrier];
+    }
+
+    public int getFlightNumber(int city, int k)
+    {
+	int record = firstRecord[city] + k;
+	return segments[record >>> SEGMENT_SHIFT].getShort
+	    ((record & SEGMENT_MASK) * RECORD_BYTES + FLIGHT_NUMBER_OFFSET)
+	    & 0xffff;
+    }
+
+    // The number of bytes of direct memory used by the records (for a
+    // mapped store, the most that paging them all in would use)
+    public long getOffHeapBytes()
+    { return (long)getNumFlights() * RECORD_BYTES; }
+
+    public boolean isMapped()
+    { return mapped; }
+
+    /**
+       addToFootprint: Adds this store to a memory report: the small heap
+       part (the offsets and the ByteBuffer objects) and the off-heap
+       records.
+       @param footprint: the report to add to
+    */
+    public void addToFootprint(MemoryFootprint footprint)
+    {
+	footprint.add("OffHeapFlightStore (heap)", 3 + segments.length,
+		      MemoryFootprint.shallowSize(OffHeapFlightStore.class)
+		      + MemoryFootprint.arraySize(firstRecord.length, 4)
+		      + MemoryFootprint.arraySize(segments.length,
+						  MemoryFootprint.REFERENCE)
+		      + segments.length * MemoryFootprint.shallowSize
+		      ("java.nio.DirectByteBuffer"));
+	footprint.addOffHeap(mapped ? "Mapped flight records"
+			     : "OffHeapFlightStore records", getNumFlights(),
+			     getOffHeapBytes());
+    }
+}
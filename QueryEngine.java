@@ -0,0 +1,350 @@
+/******************************************************************************
+QueryEngine.java
+
+A QueryEngine answers routing queries from any number of threads at once.
+Every query reads one GraphSnapshot and takes a FlightSearch of its own
+from a pool for as long as it runs, so queries never touch the search
+fields of the City objects and never wait for each other. The pool keeps
+at most a fixed number of idle FlightSearches, which should be the most
+queries that run at once (such as the permits of a QueryServer), so a
+server that runs every request on a new thread still reuses them; a query
+that finds the pool empty makes a new one.
+
+A QueryEngine made from a Graph takes one snapshot of it and answers from
+that, so the Graph must not be changed while the engine is in use. A
+QueryEngine made from a VersionedGraph reads the latest published version
+at the start of each query, so the schedule can change while queries are
+running.
+
+The queries are the ones in the findFlight menu that find paths: quickest
+path, the best few alternatives, fewest stops, and fewest miles, and also
+the isochrone: every City reachable within a number of minutes. The quickest
+path can also be asked for between sets of Cities, in one search. All but
+fewest stops and fewest miles can be kept within RouteConstraints. Paths come
+back as Itineraries, which remember the snapshot they were found in. The
+other queries (direct flights, departures, arrivals) are answered by the
+GraphSnapshot itself.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class QueryEngine
+{
+    private GraphSnapshot fixed;      // when made from a Graph
+    private VersionedGraph versions;  // when made from a VersionedGraph
+
+    // FlightSearches that no query is using
+    private BlockingQueue<FlightSearch> idleSearches;
+
+    // Constructors. maxIdleSearches is the most FlightSearches kept
+    // between queries.
+    public QueryEngine(Graph graph)
+    { this(graph, Runtime.getRuntime().availableProcessors()); }
+
+    public QueryEngine(Graph graph, int maxIdleSearches)
+    {
+	fixed = GraphSnapshot.of(graph);
+	idleSearches = new ArrayBlockingQueue<FlightSearch>(maxIdleSearches);
+    }
+
+    public QueryEngine(VersionedGraph v)
+    { this(v, Runtime.getRuntime().availableProcessors()); }
+
+    public QueryEngine(VersionedGraph v, int maxIdleSearches)
+    {
+	versions = v;
+	idleSearches = new ArrayBlockingQueue<FlightSearch>(maxIdleSearches);
+    }
+
+    // Accessors
+    public GraphSnapshot getSnapshot()
+    { return (versions == null) ? fixed : versions.getSnapshot(); }
+
+    public VersionedGraph getVersionedGraph()
+    { return versions; }
+
+    /**
+       takeSearch: Takes a FlightSearch from the pool, or makes one if the
+       pool is empty, set up to search the given snapshot. It belongs to
+       the caller until it is handed back with releaseSearch().
+    */
+    public FlightSearch takeSearch(GraphSnapshot snapshot)
+    {
+	FlightSearch search = idleSearches.poll();
+	if(search == null)
+	    { return new FlightSearch(snapshot.getTable()); }
+	search.setStore(snapshot.getTable());
+	return search;
+    }
+
+    /**
+       releaseSearch: Hands a FlightSearch from takeSearch() back to the
+       pool, which drops it if it already has as many as it keeps.
+    */
+    public void releaseSearch(FlightSearch search)
+    { idleSearches.offer(search); }
+
+    /**
+       findCity: Looks up a City by code or name in the latest snapshot.
+       @return the City's id, or AirportCodeIndex.NO_ID if there's no such
+       City
+    */
+    public int findCity(String nameOrCode)
+    { return getSnapshot().findCity(nameOrCode); }
+
+    /**
+       quickest: Finds the path that takes the least time.
+       @param snapshot: the snapshot to search, which the ids belong to
+       @param start: the id of the City where the traveller begins
+       @param startClockTime: the local clock time of the start
+       @param finish: the id of the City where the traveller wants to go
+       @return the Itinerary, or null if there is no path
+    */
+    public Itinerary quickest(GraphSnapshot snapshot, int start,
+			      int startClockTime, int finish)
+    {
+	FlightSearch search = takeSearch(snapshot);
+	try
+	    {
+		search.search(start, Graph.clockTimeToGMTMinuteTime
+			      (startClockTime, snapshot.getCity(start)),
+			      finish);
+		return Itinerary.fromSearch(search, finish, snapshot);
+	    }
+	finally
+	    { releaseSearch(search); }
+    }
+
+    /**
+       quickest: Finds the path that takes the least time within some
+       RouteConstraints. With a via City, this is the quickest way there
+       followed by the quickest way on from the time of arrival, which is
+       the quickest way overall since arriving earlier never makes a
+       connection worse.
+       @param snapshot: the snapshot the constraints' ids belong to
+       @param start: the id of the City where the traveller begins
+       @param startClockTime: the local clock time of the start
+       @param finish: the id of the City where the traveller wants to go
+       @param constraints: what the path must avoid or pass through
+       @return the Itinerary, or null if there is no such path
+    */
+    public Itinerary quickest(GraphSnapshot snapshot, int start,
+			      int startClockTime, int finish,
+			      RouteConstraints constraints)
+    {
+	FlightSearch search = takeSearch(snapshot);
+	int GMTStartTime = Graph.clockTimeToGMTMinuteTime
+	    (startClockTime, snapshot.getCity(start));
+	int via = constraints.getVia();
+	search.clearExclusions();
+	constraints.applyTo(search);
+	try
+	    {
+		if(via == RouteConstraints.NONE || via == start
+		   || via == finish)
+		    {
+			search.search(start, GMTStartTime, finish);
+			return Itinerary.fromSearch(search, finish, snapshot);
+		    }
+		search.search(start, GMTStartTime, via);
+		Itinerary toVia = Itinerary.fromSearch(search, via, snapshot);
+		if(toVia == null) { return null; }
+		int last = toVia.getNumCities() - 1;
+		search.searchFrom(via, toVia.getTotalCost(),
+				  toVia.getTimeArrive(last), true, finish);
+		return Itinerary.fromSpur(toVia, last, search, finish);
+	    }
+	finally
+	    {
+		search.clearExclusions();
+		releaseSearch(search);
+	    }
+    }
+
+    /**
+       quickest: Finds the quickest path from any of several Cities to any
+       of several others, such as the airports of two metro areas, in one
+       search. The traveller sets out at the given clock time in the first
+       start's time zone, and takes accessMinutes[i] to get to start i;
+       that time counts in the Itinerary's cost.
+       @param snapshot: the snapshot the ids and constraints belong to
+       @param starts: the ids of the Cities where the traveller can begin
+       @param accessMinutes: how long it takes to get to each
+       @param startClockTime: the local clock time of setting out
+       @param finishes: the ids of the Cities the traveller can end at
+       @param constraints: what the path must avoid (the via City is not
+       used)
+       @return the Itinerary, which begins at the start it uses, or null
+       if there is no path
+    */
+    public Itinerary quickest(GraphSnapshot snapshot, int[] starts,
+			      int[] accessMinutes, int startClockTime,
+			      int[] finishes, RouteConstraints constraints)
+    {
+	if(starts.length == 0) { return null; }
+	int GMTStartTime = Graph.clockTimeToGMTMinuteTime
+	    (startClockTime, snapshot.getCity(starts[0]));
+	int[] GMTArriveTimes = new int[starts.length];
+	for(int i = 0; i < starts.length; i++)
+	    {
+		GMTArriveTimes[i] = GMTStartTime + accessMinutes[i];
+		if(GMTArriveTimes[i] >= Graph.MINUTES_IN_A_DAY)
+		    { GMTArriveTimes[i] %= Graph.MINUTES_IN_A_DAY; }
+	    }
+	FlightSearch search = takeSearch(snapshot);
+	search.clearExclusions();
+	constraints.applyTo(search);
+	try
+	    {
+		search.searchMany(starts, accessMinutes, GMTArriveTimes,
+				  finishes);
+		int finish = search.getFinishCity();
+		return (finish == FlightSearch.NONE) ? null
+		    : Itinerary.fromSearch(search, finish, snapshot);
+	    }
+	finally
+	    {
+		search.clearExclusions();
+		releaseSearch(search);
+	    }
+    }
+
+    /**
+       alternatives: Finds the best few paths by total time, each taking
+       different Flights (see AlternativeSearch).
+       @param start: the id of the City where the traveller begins
+       @param startClockTime: the local clock time of the start
+       @param finish: the id of the City where the traveller wants to go
+       @param k: the most paths to find
+       @return the Itineraries, best first; empty if there is no path
+    */
+    public List<Itinerary> alternatives(int start, int startClockTime,
+					int finish, int k)
+    {
+	GraphSnapshot snapshot = getSnapshot();
+	FlightSearch search = takeSearch(snapshot);
+	try
+	    {
+		return new AlternativeSearch(search, snapshot).find
+		    (start, Graph.clockTimeToGMTMinuteTime
+		     (startClockTime, snapshot.getCity(start)), finish, k);
+	    }
+	finally
+	    { releaseSearch(search); }
+    }
+
+    /**
+       alternatives: Like alternatives() above, but within some
+       RouteConstraints (whose via City is not used).
+       @param snapshot: the snapshot the constraints' ids belong to
+    */
+    public List<Itinerary> alternatives(GraphSnapshot snapshot, int start,
+					int startClockTime, int finish, int k,
+					RouteConstraints constraints)
+    {
+	FlightSearch search = takeSearch(snapshot);
+	try
+	    {
+		return new AlternativeSearch(search, snapshot, constraints)
+		    .find(start, Graph.clockTimeToGMTMinuteTime
+			  (startClockTime, snapshot.getCity(start)), finish, k);
+	    }
+	finally
+	    { releaseSearch(search); }
+    }
+
+    /**
+       isochrone: Finds every City that can be reached from the start
+       within a budget, without building a path for any of them. The
+       answer is left in a FlightSearch from the pool, which lists the
+       Cities reached quickest first (getNumSettled(), getSettledCity())
+       with their costs and arrival times; the caller hands it back with
+       releaseSearch() once it has read the answer.
+       @param snapshot: the snapshot to search, which the constraints' ids
+       belong to
+       @param start: the id of the City where the traveller begins
+       @param startClockTime: the local clock time of the start
+       @param budget: the most minutes the trip may take
+       @param constraints: what the trips must avoid (the via City is not
+       used)
+       @return the FlightSearch holding the answer
+    */
+    public FlightSearch isochrone(GraphSnapshot snapshot, int start,
+				  int startClockTime, int budget,
+				  RouteConstraints constraints)
+    {
+	FlightSearch search = takeSearch(snapshot);
+	search.clearExclusions();
+	try
+	    {
+		constraints.applyTo(search);
+		search.searchWithin(start, Graph.clockTimeToGMTMinuteTime
+				    (startClockTime, snapshot.getCity(start)),
+				    budget);
+	    }
+	catch(RuntimeException e)
+	    {
+		search.clearExclusions();
+		releaseSearch(search);
+		throw e;
+	    }
+	search.clearExclusions();
+	return search;
+    }
+
+    /**
+       fewestStops: Finds the path with the fewest Flights, and then the
+       quickest way to fly it, like the s option of findFlight. The path
+       comes from the snapshot's HopTree for the start, so later queries
+       from the same City don't search again.
+       @param snapshot: the snapshot to search, which the ids belong to
+       @param start: the id of the City where the traveller begins
+       @param startClockTime: the local clock time of the start
+       @param finish: the id of the City where the traveller wants to go
+       @return the Itinerary, or null if there is no path
+    */
+    public Itinerary fewestStops(GraphSnapshot snapshot, int start,
+				 int startClockTime, int finish)
+    {
+	FlightSearch search = takeSearch(snapshot);
+	try
+	    {
+		int[] path = snapshot.getHopTree(start).getPath(finish);
+		if(path == null) { return null; }
+		search.searchAlongPath(path, Graph.clockTimeToGMTMinuteTime
+				       (startClockTime,
+					snapshot.getCity(start)));
+		return Itinerary.fromSearch(search, finish, snapshot);
+	    }
+	finally
+	    { releaseSearch(search); }
+    }
+
+    /**
+       shortestRoute: Finds the route with the fewest miles flown, and then
+       the quickest way to fly it, like the o option of findFlight.
+       @param snapshot: the snapshot to search, which the ids belong to
+       @param start: the id of the City where the traveller begins
+       @param startClockTime: the local clock time of the start
+       @param finish: the id of the City where the traveller wants to go
+       @return the Itinerary, or null if there is no route
+    */
+    public Itinerary shortestRoute(GraphSnapshot snapshot, int start,
+				   int startClockTime, int finish)
+    {
+	FlightSearch search = takeSearch(snapshot);
+	try
+	    {
+		search.findShortestRoute(start, finish);
+		int[] path = search.getPath(finish);
+		if(path == null) { return null; }
+		search.searchAlongPath(path, Graph.clockTimeToGMTMinuteTime
+				       (startClockTime,
+					snapshot.getCity(start)));
+		return Itinerary.fromSearch(search, finish, snapshot);
+	    }
+	finally
+	    { releaseSearch(search); }
+    }
+}
@@ -0,0 +1,210 @@
+/******************************************************************************
+QueryMetrics.java
+
+QueryMetrics keeps running totals for one kind of query (dijkstra,
+fewestCities, minimizeTimeGivenPath, a FlightSearch, a search for the
+shortest route in miles, the repair of a ShortestPathTree, or a
+DeltaStepping search): how many queries ran, how many Cities they
+settled, how many Flights they relaxed, how many heap pushes they made,
+how many stale heap entries they skipped, how many Cities they had to
+reset (and how long that took), and a LatencyHistogram of how long each
+query took.
+
+The searches count into local variables while they run and hand the
+totals over once, at the end of the query, through record(). The totals
+are LongAdders and the histogram is per-thread, so queries running on
+different threads don't serialize on the metrics. Nothing is recorded
+unless metrics have been turned on with enable(), which also registers
+one MBean per kind of query with the platform MBeanServer.
+******************************************************************************/
+
+import java.util.concurrent.atomic.*;
+import java.lang.management.*;
+import javax.management.*;
+
+public class QueryMetrics implements QueryMetricsMBean
+{
+    // Checked by every search before it records anything
+    public static volatile boolean enabled = false;
+
+    public final static QueryMetrics DIJKSTRA = new QueryMetrics("dijkstra");
+    public final static QueryMetrics FEWEST_CITIES
+	= new QueryMetrics("fewestCities");
+    public final static QueryMetrics MINIMIZE_TIME_GIVEN_PATH
+	= new QueryMetrics("minimizeTimeGivenPath");
+    public final static QueryMetrics FLIGHT_SEARCH
+	= new QueryMetrics("FlightSearch");
+    public final static QueryMetrics SHORTEST_ROUTE
+	= new QueryMetrics("shortestRoute");
+    public final static QueryMetrics TREE_REPAIR
+	= new QueryMetrics("ShortestPathTree.repair");
+    public final static QueryMetrics DELTA_STEPPING
+	= new QueryMetrics("DeltaStepping");
+
+    private final static QueryMetrics[] ALL =
+	{ DIJKSTRA, FEWEST_CITIES, MINIMIZE_TIME_GIVEN_PATH, FLIGHT_SEARCH,
+	  SHORTEST_ROUTE, TREE_REPAIR, DELTA_STEPPING };
+
+    private static boolean registered = false;
+
+    private String operation;
+    private LongAdder queries = new LongAdder();
+    private LongAdder settledCities = new LongAdder();
+    private LongAdder relaxedFlights = new LongAdder();
+    private LongAdder heapPushes = new LongAdder();
+    private LongAdder stalePopsSkipped = new LongAdder();
+    private LongAdder citiesReset = new LongAdder();
+    private LongAdder resetNanos = new LongAdder();
+    private LatencyHistogram latency = new LatencyHistogram();
+
+    // Constructor
+    public QueryMetrics(String op)
+    { operation = op; }
+
+    /**
+       enable: Turns metrics on and registers the MBeans (once).
+    */
+    public static synchronized void enable()
+    {
+	enabled = true;
+	if(registered) { return; }
+	try
+	    {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(int i = 0; i < ALL.length; i++)
+		    {
+			server.registerMBean
+			    (ALL[i], new ObjectName
+			     ("findFlight:type=QueryMetrics,name="
+			      + ALL[i].operation));
+		    }
+		registered = true;
+	    }
+	catch(JMException e)
+	    {
+		System.out.println("Oops. The query metrics couldn't be " +
+				   "registered with JMX: " + e.getMessage());
+	    }
+    }
+
+    public static void disable()
+    { enabled = false; }
+
+    /**
+       dumpAll: Describes the metrics of every kind of query.
+       @return the text dump
+    */
+    public static String dumpAll()
+    {
+	StringBuilder dump = new StringBuilder();
+	for(int i = 0; i < ALL.length; i++)
+	    { dump.append(ALL[i].dump()); }
+	return dump.toString();
+    }
+
+    /**
+       record: Adds one finished query to the totals.
+       @param nanos: how long the query took
+       @param settled: Cities settled (taken off the heap or queue for good)
+       @param relaxed: Flights (or adjacency edges) examined
+       @param pushes: entries added to the heap or queue
+       @param stale: heap entries popped and skipped because their City had
+       already been settled
+       @param reset: Cities whose search fields were reset before the query
+       @param resetTime: nanoseconds spent resetting them
+    */
+    public void record(long nanos, int settled, int relaxed, int pushes,
+		       int stale, int reset, long resetTime)
+    {
+	queries.increment();
+	settledCities.add(settled);
+	relaxedFlights.add(relaxed);
+	heapPushes.add(pushes);
+	stalePopsSkipped.add(stale);
+	citiesReset.add(reset);
+	resetNanos.add(resetTime);
+	latency.record(nanos);
+    }
+
+    // Accessors (the MBean attributes)
+    public String getOperation()
+    { return operation; }
+
+    public long getQueries()
+    { return queries.sum(); }
+
+    public long getSettledCities()
+    { return settledCities.sum(); }
+
+    public long getRelaxedFlights()
+    { return relaxedFlights.sum(); }
+
+    public long getHeapPushes()
+    { return heapPushes.sum(); }
+
+    public long getStalePopsSkipped()
+    { return stalePopsSkipped.sum(); }
+
+    public long getCitiesReset()
+    { return citiesReset.sum(); }
+
+    public long getResetMicros()
+    { return resetNanos.sum() / 1000; }
+
+    public double getMeanLatencyMicros()
+    { return latency.getMean() / 1000.0; }
+
+    public long getLatencyP50Micros()
+    { return latency.getPercentile(50) / 1000; }
+
+    public long getLatencyP90Micros()
+    { return latency.getPercentile(90) / 1000; }
+
+    public long getLatencyP99Micros()
+    { return latency.getPercentile(99) / 1000; }
+
+    public long getLatencyP999Micros()
+    { return latency.getPercentile(99.9) / 1000; }
+
+    public long getMaxLatencyMicros()
+    { return latency.getMax() / 1000; }
+
+    public LatencyHistogram getLatencyHistogram()
+    { return latency; }
+
+    // Modifiers
+    public void reset()
+    {
+	queries.reset();
+	settledCities.reset();
+	relaxedFlights.reset();
+	heapPushes.reset();
+	stalePopsSkipped.reset();
+	citiesReset.reset();
+	resetNanos.reset();
+	latency.reset();
+    }
+
+    public String dump()
+    {
+	long n = getQueries();
+	if(n == 0) { return operation + ": no queries\n"; }
+	long[] buckets = latency.snapshot();
+	return operation + ": " + n + " queries\n" +
+	    "\tsettled cities      " + getSettledCities() +
+	    " (" + getSettledCities() / n + " per query)\n" +
+	    "\trelaxed flights     " + getRelaxedFlights() +
+	    " (" + getRelaxedFlights() / n + " per query)\n" +
+	    "\theap pushes         " + getHeapPushes() + "\n" +
+	    "\tstale pops skipped  " + getStalePopsSkipped() + "\n" +
+	    "\tcities reset        " + getCitiesReset() + " in " +
+	    getResetMicros() + " us\n" +
+	    "\tlatency (us)        mean " +
+	    Math.round(getMeanLatencyMicros()) +
+	    ", p50 " + LatencyHistogram.percentileOf(buckets, 50) / 1000 +
+	    ", p90 " + LatencyHistogram.percentileOf(buckets, 90) / 1000 +
+	    ", p99 " + LatencyHistogram.percentileOf(buckets, 99) / 1000 +
+	    ", p99.9 " + LatencyHistogram.percentileOf(buckets, 99.9) / 1000 +
+	    ", max " + getMaxLatencyMicros() + "\n";
+    }
+}
@@ -0,0 +1,40 @@
+/******************************************************************************
+QueryMetricsMBean.java
+
+The JMX management interface of QueryMetrics. Each attribute shows up in
+jconsole (or any other JMX client) under
+findFlight:type=QueryMetrics,name=<operation>.
+******************************************************************************/
+
+public interface QueryMetricsMBean
+{
+    long getQueries();
+
+    long getSettledCities();
+
+    long getRelaxedFlights();
+
+    long getHeapPushes();
+
+    long getStalePopsSkipped();
+
+    long getCitiesReset();
+
+    long getResetMicros();
+
+    double getMeanLatencyMicros();
+
+    long getLatencyP50Micros();
+
+    long getLatencyP90Micros();
+
+    long getLatencyP99Micros();
+
+    long getLatencyP999Micros();
+
+    long getMaxLatencyMicros();
+
+    void reset();
+
+    String dump();
+}
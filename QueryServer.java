@@ -0,0 +1,739 @@
+/******************************************************************************
+QueryServer.java
+
+QueryServer answers findFlight's queries over HTTP, as JSON, so that other
+programs can use the flight finder without typing into its menu. Run it as
+
+java QueryServer airport.txt [port] [most queries at once]
+
+and then ask, for instance,
+
+http://localhost:8080/quickest?from=ABQ&to=BOS&time=830A
+http://localhost:8080/quickest?from=JFK:60,LGA:45,EWR&to=BOS,PVD&time=830A
+http://localhost:8080/fewest?from=ABQ&to=BOS&time=830A
+http://localhost:8080/shortest?from=ABQ&to=BOS&time=830A
+http://localhost:8080/alternatives?from=ABQ&to=BOS&time=830A&k=5
+http://localhost:8080/isochrone?from=ABQ&time=830A&minutes=480
+http://localhost:8080/direct?from=ABQ&to=BOS
+http://localhost:8080/departures?city=ABQ
+http://localhost:8080/arrivals?city=BOS
+http://localhost:8080/nearby?city=ABQ&miles=300
+
+Cities may be given by code or by name, and times are written the way the
+input file writes them (e.g., 830A or 1215P). The server only listens on
+the loopback address.
+
+/quickest also takes lists of cities for from and to, for travellers who
+don't mind which of a metro area's airports they use; the answer is the
+quickest path from any of the first to any of the second, found in one
+search. Each city in from may have the minutes it takes to get there
+after a colon, and those minutes count in the cost. With a list, the
+time is in the first city's time zone, and via isn't allowed.
+
+/shortest finds the route with the fewest miles flown, and then the
+quickest way to fly it. Every itinerary gives its miles along with its
+times, in total and for each leg, and the airline and flight number of
+each leg.
+
+/quickest, /alternatives, and /isochrone also take constraints:
+avoid=ORD,DEN (cities to stay out of), avoidFlight=ABQ-BOS-830A (flights
+not to take, by cities and departure time), carriers=AA,CO (the only
+airlines to fly), and, for /quickest only, via=DFW (a city to pass
+through). /isochrone lists every city that can be
+reached within the given minutes, quickest first, with its arrival time.
+
+/nearby lists the cities near a city, or near a point given as x and y
+in the input file's coordinates times findFlight.SCALE_FACTOR (so in
+miles), nearest first with their distances in miles: the k nearest
+(k=5), or every one within some miles, or with both, the k nearest
+within those miles.
+
+The schedule is changed by POSTing a ScheduleDelta file to /delta, e.g.
+
+curl --data-binary @changes.txt http://localhost:8080/delta
+
+which applies the changes, publishes them as a new version, and answers
+with the version number, the number of changes made, and the lines that
+couldn't be applied. Queries already running finish on the old version.
+
+Every request runs on its own thread (a virtual thread when the Java
+runtime has them, or else a thread from a cached pool), and the queries
+themselves go through one shared QueryEngine over a VersionedGraph, so
+the schedule can be changed while the server is running. A Semaphore
+limits how many queries run at once, and the engine keeps that many
+FlightSearches for them to share; a request that can't get a permit
+within ACQUIRE_TIMEOUT_MILLIS is turned away with 503 rather than piling
+up.
+Every response is sent with its exact length, and without waiting for
+Nagle's algorithm, so clients can keep the connection open and send the
+next request right away.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import com.sun.net.httpserver.*;
+
+public class QueryServer
+{
+    final static int DEFAULT_PORT = 8080;
+    final static int DEFAULT_MAX_CONCURRENT = 64;
+    final static long ACQUIRE_TIMEOUT_MILLIS = 1000;
+    final static int DEFAULT_ALTERNATIVES = 3;
+    final static int MAX_BUDGET = 7 * Graph.MINUTES_IN_A_DAY;
+    final static int DEFAULT_NEARBY = 5;
+    final static int MAX_NEARBY = 1000;
+    final static int MAX_MILES = 9999;
+
+    // HTTP status codes
+    final static int OK = 200;
+    final static int BAD_REQUEST = 400;
+    final static int NOT_FOUND = 404;
+    final static int BAD_METHOD = 405;
+    final static int UNAVAILABLE = 503;
+
+    // The JDK's HttpServer leaves Nagle's algorithm on, which holds each
+    // small response back for a delayed ACK (about 40 ms on Linux). The
+    // property is read once, when the first HttpServer is made.
+    static
+    {
+	if(System.getProperty("sun.net.httpserver.nodelay") == null)
+	    { System.setProperty("sun.net.httpserver.nodelay", "true"); }
+    }
+
+    private QueryEngine engine;
+    private HttpServer server;
+    private ExecutorService executor;
+    private Semaphore permits;
+
+    public static void main(String[] args) throws IOException
+    {
+	Graph graph = findFlight.initializeGraph
+	    (new Scanner(new File(args[0])));
+	int port = (args.length > 1) ? Integer.parseInt(args[1])
+	    : DEFAULT_PORT;
+	int maxConcurrent = (args.length > 2) ? Integer.parseInt(args[2])
+	    : DEFAULT_MAX_CONCURRENT;
+
+	QueryServer queryServer = new QueryServer
+	    (new QueryEngine(new VersionedGraph(graph), maxConcurrent), port,
+	     maxConcurrent);
+	queryServer.start();
+	System.out.println("Answering queries on http://localhost:" +
+			   queryServer.getPort() + "/ for " +
+			   graph.getSize() + " cities.");
+    }
+
+    // Constructor. Use port 0 to let the system pick a free port.
+    public QueryServer(QueryEngine e, int port, int maxConcurrent)
+	throws IOException
+    {
+	engine = e;
+	permits = new Semaphore(maxConcurrent);
+	executor = newRequestExecutor();
+	server = HttpServer.create
+	    (new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+	server.setExecutor(executor);
+	server.createContext("/", new HttpHandler()
+	    {
+		public void handle(HttpExchange exchange) throws IOException
+		{ answer(exchange); }
+	    });
+    }
+
+    /**
+       newRequestExecutor: Makes the executor that runs each request. Java
+       21 and later can give every request its own virtual thread; the
+       method is looked up by reflection so that this still compiles and
+       runs on older runtimes, which get a cached thread pool instead.
+    */
+    static ExecutorService newRequestExecutor()
+    {
+	try
+	    {
+		return (ExecutorService)Executors.class
+		    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+	    }
+	catch(ReflectiveOperationException e)
+	    { return Executors.newCachedThreadPool(); }
+    }
+
+    // Accessors
+    public int getPort()
+    { return server.getAddress().getPort(); }
+
+    public QueryEngine getEngine()
+    { return engine; }
+
+    // Modifiers
+    public void start()
+    { server.start(); }
+
+    public void stop()
+    {
+	server.stop(0);
+	executor.shutdown();
+    }
+
+    /**
+       answer: Handles one request: checks it, waits for a permit, runs the
+       query, and sends back the JSON.
+       @param exchange: the request and its response
+    */
+    private void answer(HttpExchange exchange) throws IOException
+    {
+	String path = exchange.getRequestURI().getPath();
+	boolean isDelta = path.equals("/delta");
+	if(!exchange.getRequestMethod().equals(isDelta ? "POST" : "GET"))
+	    {
+		send(exchange, BAD_METHOD, Json.error
+		     (isDelta ? "Changes must be sent with POST."
+		      : "Only GET is supported."));
+		return;
+	    }
+
+	boolean gotPermit = false;
+	try
+	    {
+		gotPermit = permits.tryAcquire(ACQUIRE_TIMEOUT_MILLIS,
+					       TimeUnit.MILLISECONDS);
+	    }
+	catch(InterruptedException e)
+	    { Thread.currentThread().interrupt(); }
+	if(!gotPermit)
+	    {
+		send(exchange, UNAVAILABLE, Json.error("The server is busy."));
+		return;
+	    }
+
+	int status = OK;
+	StringBuilder body = new StringBuilder();
+	try
+	    {
+		if(isDelta)
+		    { status = applyDelta(exchange.getRequestBody(), body); }
+		else
+		    {
+			Map<String, String> params = parseQuery
+			    (exchange.getRequestURI().getRawQuery());
+			status = runQuery(path, params, body);
+		    }
+	    }
+	catch(IllegalArgumentException e)
+	    {
+		status = BAD_REQUEST;
+		body = Json.error(e.getMessage());
+	    }
+	finally
+	    { permits.release(); }
+	send(exchange, status, body);
+    }
+
+    /**
+       runQuery: Runs the query named by the path of the request.
+       @param path: e.g., "/quickest"
+       @param params: the query parameters
+       @param out: where to write the JSON answer
+       @return the HTTP status
+    */
+    int runQuery(String path, Map<String, String> params, StringBuilder out)
+    {
+	if(path.equals("/quickest") || path.equals("/fewest")
+	   || path.equals("/shortest"))
+	    {
+		GraphSnapshot snapshot = engine.getSnapshot();
+		if(path.equals("/quickest") && (isList(params.get("from"))
+						|| isList(params.get("to"))))
+		    { return quickestBetweenSets(snapshot, params, out); }
+		int start = cityParam(snapshot, params, "from");
+		int finish = cityParam(snapshot, params, "to");
+		int clockTime = timeParam(params, "time");
+		RouteConstraints constraints
+		    = constraintsParam(snapshot, params);
+		Itinerary itinerary;
+		if(!path.equals("/quickest"))
+		    {
+			if(!constraints.isEmpty())
+			    {
+				throw new IllegalArgumentException
+				    ("Only /quickest, /alternatives, and " +
+				     "/isochrone take avoid, avoidFlight, " +
+				     "carriers, or via.");
+			    }
+			itinerary = path.equals("/fewest")
+			    ? engine.fewestStops(snapshot, start, clockTime,
+						 finish)
+			    : engine.shortestRoute(snapshot, start, clockTime,
+						   finish);
+		    }
+		else if(constraints.isEmpty())
+		    {
+			itinerary = engine.quickest(snapshot, start, clockTime,
+						    finish);
+		    }
+		else
+		    {
+			itinerary = engine.quickest(snapshot, start, clockTime,
+						    finish, constraints);
+		    }
+		if(itinerary == null)
+		    {
+			out.append('{');
+			Json.appendField(out, "found", false);
+			out.append('}');
+		    }
+		else
+		    { itinerary.appendJson(out); }
+	    }
+	else if(path.equals("/alternatives"))
+	    {
+		GraphSnapshot snapshot = engine.getSnapshot();
+		int start = cityParam(snapshot, params, "from");
+		int finish = cityParam(snapshot, params, "to");
+		int clockTime = timeParam(params, "time");
+		int k = countParam(params, "k", DEFAULT_ALTERNATIVES,
+				   AlternativeSearch.MAX_ALTERNATIVES);
+		RouteConstraints constraints
+		    = constraintsParam(snapshot, params);
+		if(constraints.getVia() != RouteConstraints.NONE)
+		    {
+			throw new IllegalArgumentException
+			    ("/alternatives doesn't take via.");
+		    }
+		List<Itinerary> itineraries = engine.alternatives
+		    (snapshot, start, clockTime, finish, k, constraints);
+		out.append("{\"itineraries\":[");
+		for(int i = 0; i < itineraries.size(); i++)
+		    {
+			if(i > 0) { out.append(','); }
+			itineraries.get(i).appendJson(out);
+		    }
+		out.append("]}");
+	    }
+	else if(path.equals("/isochrone"))
+	    {
+		GraphSnapshot snapshot = engine.getSnapshot();
+		int start = cityParam(snapshot, params, "from");
+		int clockTime = timeParam(params, "time");
+		int budget = countParam(params, "minutes", MAX_BUDGET,
+					MAX_BUDGET);
+		RouteConstraints constraints
+		    = constraintsParam(snapshot, params);
+		if(constraints.getVia() != RouteConstraints.NONE)
+		    {
+			throw new IllegalArgumentException
+			    ("/isochrone doesn't take via.");
+		    }
+		FlightSearch search = engine.isochrone
+		    (snapshot, start, clockTime, budget, constraints);
+		try
+		    { appendIsochrone(out, snapshot, search); }
+		finally
+		    { engine.releaseSearch(search); }
+	    }
+	else if(path.equals("/nearby"))
+	    {
+		GraphSnapshot snapshot = engine.getSnapshot();
+		double x, y;
+		if(params.containsKey("city"))
+		    {
+			City center = snapshot.getCity
+			    (cityParam(snapshot, params, "city"));
+			x = center.getXCoord();
+			y = center.getYCoord();
+		    }
+		else
+		    {
+			x = coordinateParam(params, "x");
+			y = coordinateParam(params, "y");
+		    }
+		int k = countParam(params, "k", DEFAULT_NEARBY, MAX_NEARBY);
+		int[] cities;
+		if(params.containsKey("miles"))
+		    {
+			cities = snapshot.getCityIndex().within
+			    (x, y, countParam(params, "miles", 0, MAX_MILES));
+			if(params.containsKey("k") && cities.length > k)
+			    { cities = Arrays.copyOf(cities, k); }
+		    }
+		else
+		    { cities = snapshot.getCityIndex().nearest(x, y, k); }
+		out.append("{\"cities\":[");
+		for(int i = 0; i < cities.length; i++)
+		    {
+			City near = snapshot.getCity(cities[i]);
+			if(i > 0) { out.append(','); }
+			out.append('{');
+			Json.appendField(out, "code", near.getCode());
+			out.append(',');
+			Json.appendField
+			    (out, "miles", Math.round
+			     (CityIndex.distance(x, y, near.getXCoord(),
+						 near.getYCoord())));
+			out.append('}');
+		    }
+		out.append("]}");
+	    }
+	else if(path.equals("/direct"))
+	    {
+		GraphSnapshot snapshot = engine.getSnapshot();
+		int start = cityParam(snapshot, params, "from");
+		int finish = cityParam(snapshot, params, "to");
+		int[] flights = snapshot.directFlights(start, finish);
+		out.append('{');
+		Json.appendField(out, "direct", flights.length > 0);
+		out.append(",\"flights\":[");
+		for(int i = 0; i < flights.length; i++)
+		    {
+			if(i > 0) { out.append(','); }
+			snapshot.appendFlightJson(out, start, flights[i]);
+		    }
+		out.append("]}");
+	    }
+	else if(path.equals("/departures"))
+	    {
+		GraphSnapshot snapshot = engine.getSnapshot();
+		int city = cityParam(snapshot, params, "city");
+		out.append("{\"flights\":[");
+		for(int k = 0; k < snapshot.getTable().getDegree(city); k++)
+		    {
+			if(k > 0) { out.append(','); }
+			snapshot.appendFlightJson(out, city, k);
+		    }
+		out.append("]}");
+	    }
+	else if(path.equals("/arrivals"))
+	    {
+		GraphSnapshot snapshot = engine.getSnapshot();
+		int[] flights = snapshot.arrivals
+		    (cityParam(snapshot, params, "city"));
+		out.append("{\"flights\":[");
+		for(int i = 0; i < flights.length; i += 2)
+		    {
+			if(i > 0) { out.append(','); }
+			snapshot.appendFlightJson(out, flights[i],
+						  flights[i + 1]);
+		    }
+		out.append("]}");
+	    }
+	else
+	    {
+		out.append(Json.error("There is no query called " + path
+				      + "."));
+		return NOT_FOUND;
+	    }
+	return OK;
+    }
+
+    /**
+       quickestBetweenSets: Answers /quickest when from or to is a list.
+       @param snapshot: the snapshot to search
+       @param params: the query parameters
+       @param out: where to write the JSON answer
+       @return the HTTP status
+    */
+    int quickestBetweenSets(GraphSnapshot snapshot,
+			    Map<String, String> params, StringBuilder out)
+    {
+	String[] from = listParam(params, "from");
+	int[] starts = new int[from.length];
+	int[] access = new int[from.length];
+	for(int i = 0; i < from.length; i++)
+	    {
+		int colon = from[i].lastIndexOf(':');
+		if(colon >= 0)
+		    {
+			access[i] = minutesValue(from[i].substring(colon + 1),
+						 "from");
+			from[i] = from[i].substring(0, colon);
+		    }
+		starts[i] = cityValue(snapshot, from[i], "from");
+	    }
+	String[] to = listParam(params, "to");
+	int[] finishes = new int[to.length];
+	for(int i = 0; i < to.length; i++)
+	    { finishes[i] = cityValue(snapshot, to[i], "to"); }
+	int clockTime = timeParam(params, "time");
+	RouteConstraints constraints = constraintsParam(snapshot, params);
+	if(constraints.getVia() != RouteConstraints.NONE)
+	    {
+		throw new IllegalArgumentException
+		    ("/quickest doesn't take via with lists of cities.");
+	    }
+
+	Itinerary itinerary = engine.quickest(snapshot, starts, access,
+					      clockTime, finishes,
+					      constraints);
+	if(itinerary == null)
+	    {
+		out.append('{');
+		Json.appendField(out, "found", false);
+		out.append('}');
+	    }
+	else
+	    { itinerary.appendJson(out); }
+	return OK;
+    }
+
+    /**
+       appendIsochrone: Writes the answer to /isochrone, the Cities an
+       isochrone search reached, quickest first.
+       @param out: where to write the JSON answer
+       @param snapshot: the snapshot that was searched
+       @param search: the FlightSearch holding the answer
+    */
+    private static void appendIsochrone(StringBuilder out,
+					GraphSnapshot snapshot,
+					FlightSearch search)
+    {
+	out.append("{\"cities\":[");
+	for(int i = 0; i < search.getNumSettled(); i++)
+	    {
+		int city = search.getSettledCity(i);
+		City reached = snapshot.getCity(city);
+		if(i > 0) { out.append(','); }
+		out.append('{');
+		Json.appendField(out, "code", reached.getCode());
+		out.append(',');
+		Json.appendField
+		    (out, "arrive", Graph.minuteTimeToClockTime
+		     (search.getTimeArriveThisCity(city) +
+		      reached.getOffsetMinutes()));
+		out.append(',');
+		Json.appendField(out, "cost", search.getCostFromStart(city));
+		out.append('}');
+	    }
+	out.append("]}");
+    }
+
+    /**
+       applyDelta: Applies a ScheduleDelta sent in the body of a request
+       and publishes it as a new version.
+       @param in: the body of the request
+       @param out: where to write the JSON answer
+       @return the HTTP status
+    */
+    int applyDelta(InputStream in, StringBuilder out) throws IOException
+    {
+	VersionedGraph versions = engine.getVersionedGraph();
+	if(versions == null)
+	    {
+		throw new IllegalArgumentException
+		    ("This server's schedule can't be changed.");
+	    }
+	ScheduleDelta delta = ScheduleDelta.read
+	    (new BufferedReader(new InputStreamReader
+				(in, StandardCharsets.UTF_8)));
+	int applied;
+	GraphSnapshot snapshot;
+	// Held across both calls so that another delta's changes can't be
+	// published with this one's count.
+	synchronized(versions)
+	    {
+		applied = versions.apply(delta);
+		snapshot = versions.publish();
+	    }
+	out.append('{');
+	Json.appendField(out, "version", snapshot.getVersion());
+	out.append(',');
+	Json.appendField(out, "applied", applied);
+	out.append(",\"errors\":[");
+	List<String> errors = delta.getErrors();
+	for(int i = 0; i < errors.size(); i++)
+	    {
+		if(i > 0) { out.append(','); }
+		Json.appendString(out, errors.get(i));
+	    }
+	out.append("]}");
+	return OK;
+    }
+
+    /************************* HELPER METHODS *******************************/
+    /**
+       send: Sends a response with a fixed Content-Length, so the
+       connection can be kept open for the client's next request.
+    */
+    private static void send(HttpExchange exchange, int status,
+			     StringBuilder body) throws IOException
+    {
+	byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+	exchange.getResponseHeaders().set("Content-Type",
+					  "application/json; charset=utf-8");
+	exchange.sendResponseHeaders(status, bytes.length);
+	OutputStream out = exchange.getResponseBody();
+	out.write(bytes);
+	out.close();
+	exchange.close();
+    }
+
+    static Map<String, String> parseQuery(String rawQuery)
+    {
+	Map<String, String> params = new HashMap<String, String>();
+	if(rawQuery == null) { return params; }
+	String[] pairs = rawQuery.split("&");
+	for(int i = 0; i < pairs.length; i++)
+	    {
+		int equals = pairs[i].indexOf('=');
+		if(equals < 0) { continue; }
+		params.put(URLDecoder.decode(pairs[i].substring(0, equals),
+					     StandardCharsets.UTF_8),
+			   URLDecoder.decode(pairs[i].substring(equals + 1),
+					     StandardCharsets.UTF_8));
+	    }
+	return params;
+    }
+
+    private static int cityParam(GraphSnapshot snapshot,
+				 Map<String, String> params, String name)
+    { return cityValue(snapshot, params.get(name), name); }
+
+    private static int cityValue(GraphSnapshot snapshot, String value,
+				 String name)
+    {
+	int id = snapshot.findCity(value);
+	if(id == AirportCodeIndex.NO_ID)
+	    {
+		throw new IllegalArgumentException
+		    ("No city " + value + " for parameter " + name + ".");
+	    }
+	return id;
+    }
+
+    private static boolean isList(String value)
+    { return value != null && (value.indexOf(',') >= 0
+			       || value.indexOf(':') >= 0); }
+
+    private static String[] listParam(Map<String, String> params,
+				      String name)
+    {
+	String value = params.get(name);
+	if(value == null || value.length() == 0)
+	    {
+		throw new IllegalArgumentException
+		    ("Parameter " + name + " needs at least one city.");
+	    }
+	return value.split(",");
+    }
+
+    private static int minutesValue(String value, String name)
+    {
+	if(!value.matches("\\d{1,5}") || Integer.parseInt(value) > MAX_BUDGET)
+	    {
+		throw new IllegalArgumentException
+		    ("The minutes in parameter " + name + " should be from " +
+		     "0 to " + MAX_BUDGET + ".");
+	    }
+	return Integer.parseInt(value);
+    }
+
+    /**
+       constraintsParam: Reads the avoid, avoidFlight, and via parameters.
+       @return the constraints, which are empty if there are none
+    */
+    private static RouteConstraints constraintsParam
+	(GraphSnapshot snapshot, Map<String, String> params)
+    {
+	RouteConstraints constraints = new RouteConstraints();
+	String avoid = params.get("avoid");
+	if(avoid != null)
+	    {
+		String[] names = avoid.split(",");
+		for(int i = 0; i < names.length; i++)
+		    {
+			constraints.avoidCity(cityValue(snapshot, names[i],
+							"avoid"));
+		    }
+	    }
+	String avoidFlight = params.get("avoidFlight");
+	if(avoidFlight != null)
+	    {
+		String[] flights = avoidFlight.split(",");
+		for(int i = 0; i < flights.length; i++)
+		    { avoidFlightValue(snapshot, flights[i], constraints); }
+	    }
+	String carriers = params.get("carriers");
+	if(carriers != null)
+	    {
+		String[] codes = carriers.split(",");
+		for(int i = 0; i < codes.length; i++)
+		    {
+			int carrier = CarrierIndex.idOf(codes[i]);
+			if(carrier == CarrierIndex.NO_ID
+			   || carrier == CarrierIndex.UNKNOWN)
+			    {
+				throw new IllegalArgumentException
+				    ("Unknown airline: " + codes[i]);
+			    }
+			constraints.allowCarrier(carrier);
+		    }
+	    }
+	if(params.get("via") != null)
+	    { constraints.setVia(cityParam(snapshot, params, "via")); }
+	return constraints;
+    }
+
+    // Adds every Flight matching FROM-TO-830A to the constraints
+    private static void avoidFlightValue(GraphSnapshot snapshot, String value,
+					 RouteConstraints constraints)
+    {
+	String[] parts = value.split("-");
+	if(parts.length != 3 || !findFlight.isClockTime(parts[2]))
+	    {
+		throw new IllegalArgumentException
+		    ("avoidFlight should look like ABQ-BOS-830A, not " +
+		     value + ".");
+	    }
+	int origin = cityValue(snapshot, parts[0], "avoidFlight");
+	int dest = cityValue(snapshot, parts[1], "avoidFlight");
+	int depart = Graph.clockTimeToGMTMinuteTime
+	    (findFlight.processTimeString(parts[2]),
+	     snapshot.getCity(origin));
+	int[] flights = snapshot.directFlights(origin, dest);
+	for(int i = 0; i < flights.length; i++)
+	    {
+		if(snapshot.getTable().getTimeDepart(origin, flights[i])
+		   == depart)
+		    { constraints.avoidFlight(origin, flights[i]); }
+	    }
+    }
+
+    private static int countParam(Map<String, String> params, String name,
+				  int defaultValue, int max)
+    {
+	String value = params.get(name);
+	if(value == null) { return defaultValue; }
+	// Up to nine digits, so the number always fits in an int
+	if(!value.matches("\\d{1,9}") || Integer.parseInt(value) < 1
+	   || Integer.parseInt(value) > max)
+	    {
+		throw new IllegalArgumentException
+		    ("Parameter " + name + " should be from 1 to " + max + ".");
+	    }
+	return Integer.parseInt(value);
+    }
+
+    private static double coordinateParam(Map<String, String> params,
+					  String name)
+    {
+	String value = params.get(name);
+	if(value == null || !value.matches("-?\\d{1,6}(\\.\\d{1,6})?"))
+	    {
+		throw new IllegalArgumentException
+		    ("Give a city, or x and y as numbers.");
+	    }
+	return Double.parseDouble(value);
+    }
+
+    private static int timeParam(Map<String, String> params, String name)
+    {
+	String value = params.get(name);
+	if(!findFlight.isClockTime(value))
+	    {
+		throw new IllegalArgumentException
+		    ("Parameter " + name + " should be a time like 830A.");
+	    }
+	return findFlight.processTimeString(value);
+    }
+}
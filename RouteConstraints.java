@@ -0,0 +1,99 @@
+/******************************************************************************
+RouteConstraints.java
+
+RouteConstraints are the limits a single query puts on its route: Cities
+to stay out of (a closed airport, say), particular Flights not to take,
+the airlines that may be flown (an alliance, say), and a City the route
+has to pass through. They are applied to the FlightSearch that runs the
+query, as stamped marks that are gone with the next clearExclusions(),
+so the shared Graph and FlightTable are never copied or changed, and a
+constrained query costs about as much as one without constraints.
+(Graph.minimizeTimeGivenPath() gets the same effect by building a whole
+new Graph.)
+
+Cities and Flights are given by id, and Flights by their number in their
+City's row, so a RouteConstraints belongs to one version of the schedule.
+Airlines are CarrierIndex ids, which mean the same in every version.
+******************************************************************************/
+
+import java.util.*;
+
+public class RouteConstraints
+{
+    public final static int NONE = FlightSearch.NONE;
+
+    private int[] avoidedCities;
+    private int numAvoidedCities;
+    private int[] avoidedFlights;     // city, k pairs
+    private int numAvoidedFlights;
+    private long[] allowedCarriers;   // null if any airline will do
+    private int via;
+
+    // Constructor
+    public RouteConstraints()
+    {
+	avoidedCities = new int[4];
+	numAvoidedCities = 0;
+	avoidedFlights = new int[8];
+	numAvoidedFlights = 0;
+	via = NONE;
+    }
+
+    // Accessors
+    public int getVia()
+    { return via; }
+
+    public long[] getAllowedCarriers()
+    { return allowedCarriers; }
+
+    public boolean isEmpty()
+    {
+	return numAvoidedCities == 0 && numAvoidedFlights == 0
+	    && allowedCarriers == null && via == NONE;
+    }
+
+    // Modifiers
+    public void avoidCity(int city)
+    {
+	if(numAvoidedCities == avoidedCities.length)
+	    {
+		avoidedCities = Arrays.copyOf(avoidedCities,
+					      2 * avoidedCities.length);
+	    }
+	avoidedCities[numAvoidedCities ++] = city;
+    }
+
+    public void avoidFlight(int city, int k)
+    {
+	if(2 * numAvoidedFlights == avoidedFlights.length)
+	    {
+		avoidedFlights = Arrays.copyOf(avoidedFlights,
+					       2 * avoidedFlights.length);
+	    }
+	avoidedFlights[2 * numAvoidedFlights] = city;
+	avoidedFlights[2 * numAvoidedFlights + 1] = k;
+	numAvoidedFlights ++;
+    }
+
+    // Once one airline is allowed, only the allowed ones may be flown
+    public void allowCarrier(int carrier)
+    { allowedCarriers = CarrierIndex.add(allowedCarriers, carrier); }
+
+    public void setVia(int city)
+    { via = city; }
+
+    /**
+       applyTo: Marks the avoided Cities and Flights, and the allowed
+       airlines, in a search. This adds to whatever the search already
+       avoids; call clearExclusions() on it first for a fresh query.
+       @param search: the search to constrain
+    */
+    public void applyTo(FlightSearch search)
+    {
+	for(int i = 0; i < numAvoidedCities; i++)
+	    { search.excludeCity(avoidedCities[i]); }
+	for(int i = 0; i < 2 * numAvoidedFlights; i += 2)
+	    { search.banFlight(avoidedFlights[i], avoidedFlights[i + 1]); }
+	if(allowedCarriers != null) { search.allowCarriers(allowedCarriers); }
+    }
+}
@@ -0,0 +1,185 @@
+/******************************************************************************
+ScheduleDelta.java
+
+A ScheduleDelta is a small list of changes to the flight schedule, so that
+a change can be made without reading the whole input file again. A delta
+file has one change per line. Each starts with what to do, followed by a
+line in the same form as the matching part of the input file:
+
+city+ XNA -0600 228 251 Fayetteville AR     add a city
+city- XNA                                   retire a city and its flights
+flight+ AA 748 ABQ 830A BOS 215P            add a flight
+flight- AA 748 ABQ 830A BOS 215P            cancel a flight
+flight~ AA 748 ABQ 830A BOS 215P 900A 245P  move a flight to new times
+
+A flight is found by its cities and departure time; the arrival time on a
+flight- or flight~ line is only there so that the line reads like the
+input file. Lines starting with "#" and blank lines are skipped.
+
+The changes are made in order, and each one costs time proportional to
+the Flights of the Cities it touches, except for retiring a City, which
+has to look at every route to find the Flights going there. A line that
+can't be applied (an unknown city, a flight that isn't there, a garbled
+line) is skipped and described in getErrors().
+******************************************************************************/
+
+import java.util.*;
+import java.io.*;
+
+public class ScheduleDelta
+{
+    final static String ADD_CITY = "city+";
+    final static String RETIRE_CITY = "city-";
+    final static String ADD_FLIGHT = "flight+";
+    final static String CANCEL_FLIGHT = "flight-";
+    final static String RETIME_FLIGHT = "flight~";
+
+    private List<String> changes;     // the lines, without comments
+    private List<Integer> lineNumbers;
+    private List<String> errors = new ArrayList<String>();
+
+    // Constructor
+    public ScheduleDelta()
+    {
+	changes = new ArrayList<String>();
+	lineNumbers = new ArrayList<Integer>();
+    }
+
+    /**
+       read: Reads a delta file.
+       @param in: the file
+       @return the changes in it
+    */
+    public static ScheduleDelta read(BufferedReader in) throws IOException
+    {
+	ScheduleDelta delta = new ScheduleDelta();
+	String line;
+	int lineNumber = 0;
+	while((line = in.readLine()) != null)
+	    {
+		lineNumber ++;
+		line = line.trim();
+		if(line.length() == 0 || line.charAt(0) == '#') { continue; }
+		delta.changes.add(line);
+		delta.lineNumbers.add(lineNumber);
+	    }
+	return delta;
+    }
+
+    // Accessors
+    public int size()
+    { return changes.size(); }
+
+    public List<String> getErrors()
+    { return errors; }
+
+    /**
+       applyTo: Makes the changes to a Graph, in order.
+       @param graph: the Graph to change
+       @param changedRows: gets the ids of the Cities whose departing
+       Flights changed (or that were added or retired)
+       @param changedCities: gets the ids of the Cities added or retired
+       @return the number of changes made
+    */
+    public int applyTo(Graph graph, Set<Integer> changedRows,
+		       Set<Integer> changedCities)
+    {
+	int applied = 0;
+	errors.clear();
+	for(int i = 0; i < changes.size(); i++)
+	    {
+		String error;
+		try
+		    { error = apply(graph, changes.get(i), changedRows,
+				    changedCities); }
+		catch(NoSuchElementException e)
+		    { error = "the line is too short"; }
+		catch(NumberFormatException e)
+		    { error = "a number or time is garbled"; }
+		if(error == null) { applied ++; }
+		else
+		    {
+			errors.add("line " + lineNumbers.get(i) + " (" +
+				   changes.get(i) + "): " + error);
+		    }
+	    }
+	return applied;
+    }
+
+    /**
+       apply: Makes one change.
+       @return null if it was made, or else what was wrong with it
+    */
+    private static String apply(Graph graph, String change,
+				Set<Integer> changedRows,
+				Set<Integer> changedCities)
+    {
+	StringTokenizer st = new StringTokenizer(change);
+	String what = st.nextToken();
+	String rest = change.substring(what.length()).trim();
+
+	if(what.equals(ADD_CITY))
+	    {
+		City city = findFlight.parseCity(rest);
+		if(graph.containsCityByCode(city.getCode()) ||
+		   graph.containsCityByName(city.getName()))
+		    { return "that city is already in the graph"; }
+		graph.addCity(city);
+		changedCities.add(city.getId());
+		changedRows.add(city.getId());
+		return null;
+	    }
+	if(what.equals(RETIRE_CITY))
+	    {
+		City city = graph.getCity(st.nextToken());
+		if(city == null) { return "there's no such city"; }
+		List<City> origins = graph.removeCity(city);
+		for(int i = 0; i < origins.size(); i++)
+		    { changedRows.add(origins.get(i).getId()); }
+		changedCities.add(city.getId());
+		changedRows.add(city.getId());
+		return null;
+	    }
+	if(!what.equals(ADD_FLIGHT) && !what.equals(CANCEL_FLIGHT) &&
+	   !what.equals(RETIME_FLIGHT))
+	    { return "unknown change " + what; }
+
+	String[] fields = findFlight.nextFlightFields(st);
+	City start = graph.getCity(fields[findFlight.FLIGHT_START]);
+	City dest = graph.getCity(fields[findFlight.FLIGHT_DEST]);
+	if(start == null || dest == null) { return "there's no such city"; }
+	int depart = parseTime(fields[findFlight.FLIGHT_DEPART]);
+	int arrive = parseTime(fields[findFlight.FLIGHT_ARRIVE]);
+
+	if(what.equals(ADD_FLIGHT))
+	    {
+		graph.addFlight(start, dest, depart, arrive,
+				CarrierIndex.intern
+				(fields[findFlight.FLIGHT_CARRIER]),
+				findFlight.processFlightNumber
+				(fields[findFlight.FLIGHT_NUMBER]));
+	    }
+	else
+	    {
+		Flight flight = graph.findFlight(start, dest, depart);
+		if(flight == null) { return "there's no such flight"; }
+		if(what.equals(CANCEL_FLIGHT))
+		    { graph.cancelFlight(start, flight); }
+		else
+		    {
+			graph.retimeFlight(start, flight,
+					   parseTime(st.nextToken()),
+					   parseTime(st.nextToken()));
+		    }
+	    }
+	changedRows.add(start.getId());
+	return null;
+    }
+
+    private static int parseTime(String time)
+    {
+	if(!findFlight.isClockTime(time))
+	    { throw new NumberFormatException(time); }
+	return findFlight.processTimeString(time);
+    }
+}
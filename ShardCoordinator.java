@@ -0,0 +1,463 @@
+/******************************************************************************
+ShardCoordinator.java
+
+A ShardCoordinator answers quickest-path queries over a schedule that is
+split among several ShardServer processes (see ShardServer.java for the
+protocol). It reads only the Cities of the input file, to build the same
+ShardMap as the shards, and holds no Flights at all.
+
+A query goes in rounds. The shard of the start City searches from it
+first. Its answer gives the quickest way to each City of another shard
+that its boundary Flights reach (and to the finish, if it got there).
+Each such City whose cost beats the best known for it becomes a start
+for its own shard in the next round; all the shards with new starts
+search at once, each from all of its starts together, and so on until no
+shard has anything new. Cities that can't beat the best cost found for
+the finish are dropped, and the shards are told not to go past it either.
+Because getting to a City sooner is never worse (a traveller can always
+wait), one cost per City is enough, as in Dijkstra's algorithm, and the
+rounds stop with the quickest cost, usually after about as many rounds
+as the quickest path crosses shards. The path is then put together from
+the pieces each shard sent: the finish's piece starts at some City, whose
+piece starts at another, back to the start.
+
+Run the shards and then the coordinator, or let the coordinator start
+them itself as child processes with -spawn:
+
+java ShardServer airport.txt 0 2 9400
+java ShardServer airport.txt 1 2 9401
+java ShardCoordinator airport.txt 2 9400
+java ShardCoordinator airport.txt 2 9400 -spawn
+
+It then reads queries from standard input, one per line, like
+"ABQ BOS 830A", and prints each Itinerary as the menu does. A
+ShardCoordinator keeps one connection per shard and is not thread-safe;
+each thread should have its own.
+******************************************************************************/
+
+import java.util.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+public class ShardCoordinator
+{
+    final static String SPAWN_OPTION = "-spawn";
+
+    // How long to keep trying to connect to a shard that is starting up
+    final static long CONNECT_TIMEOUT_MILLIS = 60000;
+    final static long CONNECT_RETRY_MILLIS = 100;
+
+    // The ints kept for each leg of a piece: to, k, depart, arrive, cost,
+    // miles, carrier, and number
+    private final static int LEG_INTS = 8;
+
+    private GraphSnapshot snapshot;   // the Cities, with no Flights
+    private ShardMap shards;
+    private Socket[] sockets;
+    private BufferedReader[] ins;
+    private Writer[] outs;
+    private List<Process> children;   // shards started with -spawn
+
+    // The best found so far for each City in this query
+    private int[] costFromStart;
+    private int[] timeArriveThisCity;
+    private int[] seed;               // where the City's piece begins
+    private int[][] legs;             // the piece, LEG_INTS per leg
+    private int[] labelStamp;         // == stamp once labelled
+    private int stamp;
+
+    // The starts each shard searches from in the next round
+    private List<List<Integer>> pending;
+
+    // Counts for the most recent query
+    private int rounds;
+    private int shardSearches;
+
+    public static void main(String[] args) throws IOException
+    {
+	int numShards = Integer.parseInt(args[1]);
+	int firstPort = Integer.parseInt(args[2]);
+	Graph graph = new Graph();
+	findFlight.initializeCities(new Scanner(new File(args[0])), graph);
+	ShardMap shards = new ShardMap(graph, numShards);
+
+	List<Process> children = new ArrayList<Process>();
+	ShardCoordinator coordinator = null;
+	try
+	    {
+		if(findFlight.hasOption(args, SPAWN_OPTION))
+		    {
+			children = spawnShards(new File(args[0]), numShards,
+					       firstPort);
+		    }
+		coordinator = new ShardCoordinator
+		    (GraphSnapshot.of(graph), shards, firstPort);
+	    }
+	finally
+	    {
+		// Don't leave the shards running if they couldn't be reached.
+		if(coordinator == null)
+		    {
+			for(Process child : children)
+			    { child.destroy(); }
+		    }
+	    }
+	coordinator.children = children;
+	try
+	    {
+		System.out.println("Connected to " + numShards + " shards.");
+		Scanner reader = new Scanner(System.in);
+		while(reader.hasNextLine())
+		    {
+			StringTokenizer st = new StringTokenizer
+			    (reader.nextLine());
+			if(!st.hasMoreTokens()) { continue; }
+			coordinator.answer(st);
+		    }
+	    }
+	finally
+	    { coordinator.close(); }
+    }
+
+    /**
+       spawnShards: Starts one ShardServer process per shard, with the
+       same Java and class path as this one.
+       @param file: the input file
+       @param numShards: how many shards
+       @param firstPort: the port of shard 0; shard i gets firstPort + i
+       @return the processes
+    */
+    public static List<Process> spawnShards(File file, int numShards,
+					    int firstPort)
+	throws IOException
+    {
+	String java = System.getProperty("java.home") + File.separator +
+	    "bin" + File.separator + "java";
+	List<Process> children = new ArrayList<Process>();
+	try
+	    {
+		for(int shard = 0; shard < numShards; shard++)
+		    {
+			ProcessBuilder builder = new ProcessBuilder
+			    (java, "-cp", System.getProperty("java.class.path"),
+			     "ShardServer", file.getPath(), "" + shard,
+			     "" + numShards, "" + (firstPort + shard));
+			builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+			builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+			children.add(builder.start());
+		    }
+	    }
+	catch(IOException e)
+	    {
+		for(Process child : children)
+		    { child.destroy(); }
+		throw e;
+	    }
+	return children;
+    }
+
+    /**
+       Constructor: Connects to the shards, waiting for those that are
+       still starting up.
+       @param s: the Cities of the schedule
+       @param m: how they are split into shards
+       @param firstPort: the port of shard 0; shard i listens on
+       firstPort + i
+    */
+    public ShardCoordinator(GraphSnapshot s, ShardMap m, int firstPort)
+	throws IOException
+    {
+	snapshot = s;
+	shards = m;
+	children = new ArrayList<Process>();
+	int numShards = shards.getNumShards();
+	sockets = new Socket[numShards];
+	ins = new BufferedReader[numShards];
+	outs = new Writer[numShards];
+	pending = new ArrayList<List<Integer>>();
+	for(int shard = 0; shard < numShards; shard++)
+	    {
+		sockets[shard] = connect(firstPort + shard);
+		sockets[shard].setTcpNoDelay(true);
+		ins[shard] = new BufferedReader(new InputStreamReader
+		    (sockets[shard].getInputStream(), StandardCharsets.UTF_8));
+		outs[shard] = new BufferedWriter(new OutputStreamWriter
+		    (sockets[shard].getOutputStream(),
+		     StandardCharsets.UTF_8));
+		pending.add(new ArrayList<Integer>());
+	    }
+
+	int n = snapshot.getNumCities();
+	costFromStart = new int[n];
+	timeArriveThisCity = new int[n];
+	seed = new int[n];
+	legs = new int[n][];
+	labelStamp = new int[n];
+	stamp = 0;
+    }
+
+    private static Socket connect(int port) throws IOException
+    {
+	long giveUp = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+	while(true)
+	    {
+		try
+		    {
+			return new Socket(InetAddress.getLoopbackAddress(),
+					  port);
+		    }
+		catch(ConnectException e)
+		    {
+			if(System.currentTimeMillis() > giveUp) { throw e; }
+			try { Thread.sleep(CONNECT_RETRY_MILLIS); }
+			catch(InterruptedException ie)
+			    { throw new InterruptedIOException(); }
+		    }
+	    }
+    }
+
+    // Accessors for the most recent query
+    public int getRounds()
+    { return rounds; }
+
+    public int getShardSearches()
+    { return shardSearches; }
+
+    /**
+       close: Says goodbye to the shards, and stops any that were started
+       as child processes.
+    */
+    public void close()
+    {
+	for(int shard = 0; shard < sockets.length; shard++)
+	    {
+		try
+		    {
+			outs[shard].write(ShardServer.QUIT + "\n");
+			outs[shard].flush();
+			sockets[shard].close();
+		    }
+		catch(IOException e)
+		    {
+			// already gone
+		    }
+	    }
+	for(Process child : children)
+	    { child.destroy(); }
+    }
+
+    /**
+       answer: Answers one query line from standard input ("from to time")
+       and prints the Itinerary.
+    */
+    private void answer(StringTokenizer st) throws IOException
+    {
+	int start = snapshot.findCity(st.nextToken());
+	int finish = st.hasMoreTokens() ? snapshot.findCity(st.nextToken())
+	    : AirportCodeIndex.NO_ID;
+	String time = st.hasMoreTokens() ? st.nextToken() : "";
+	if(start == AirportCodeIndex.NO_ID || finish == AirportCodeIndex.NO_ID
+	   || !findFlight.isClockTime(time))
+	    {
+		System.out.println("Oops. Write a query like \"ABQ BOS " +
+				   findFlight.DEFAULT_MATRIX_TIME + "\".");
+		return;
+	    }
+	Itinerary itinerary = quickest
+	    (start, Graph.clockTimeToGMTMinuteTime
+	     (findFlight.processTimeString(time), snapshot.getCity(start)),
+	     finish);
+	if(itinerary == null)
+	    { System.out.println("There's no way to get there."); }
+	else
+	    { itinerary.print(); }
+	System.out.println("(" + rounds + " rounds, " + shardSearches +
+			   " shard searches)");
+    }
+
+    /**
+       quickest: Finds the quickest Itinerary from one City to another,
+       with the same rules as FlightSearch.search().
+       @param start: the id of the City where the traveller begins
+       @param GMTStartTimeMinutes: the start time in GMT minutes
+       @param finish: the id of the City where the traveller wants to go
+       @return the Itinerary, or null if finish can't be reached
+    */
+    public Itinerary quickest(int start, int GMTStartTimeMinutes, int finish)
+	throws IOException
+    {
+	rounds = shardSearches = 0;
+	if(stamp == Integer.MAX_VALUE)
+	    {
+		Arrays.fill(labelStamp, 0);
+		stamp = 0;
+	    }
+	stamp ++;
+	label(start, 0, GMTStartTimeMinutes, FlightSearch.NONE, new int[0]);
+	pending.get(shards.shardOf(start)).add(start);
+	int best = (start == finish) ? 0 : City.INFINITY;
+
+	while(best != 0 && hasPending())
+	    {
+		boolean connecting = (rounds > 0);
+		rounds ++;
+		boolean[] asked = new boolean[sockets.length];
+		for(int shard = 0; shard < sockets.length; shard++)
+		    {
+			asked[shard] = sendSearch(shard, finish, connecting,
+						  best);
+		    }
+		// The shards search at the same time; the answers are read
+		// once all have been asked.
+		for(int shard = 0; shard < sockets.length; shard++)
+		    {
+			if(!asked[shard]) { continue; }
+			shardSearches ++;
+			best = readFound(shard, finish, best);
+		    }
+	    }
+	for(List<Integer> starts : pending)
+	    { starts.clear(); }
+	if(best == City.INFINITY) { return null; }
+	return stitch(start, finish);
+    }
+
+    private boolean hasPending()
+    {
+	for(List<Integer> starts : pending)
+	    {
+		if(!starts.isEmpty()) { return true; }
+	    }
+	return false;
+    }
+
+    private void label(int city, int cost, int arrive, int from, int[] piece)
+    {
+	labelStamp[city] = stamp;
+	costFromStart[city] = cost;
+	timeArriveThisCity[city] = arrive;
+	seed[city] = from;
+	legs[city] = piece;
+    }
+
+    private int getCost(int city)
+    {
+	return (labelStamp[city] == stamp) ? costFromStart[city]
+	    : City.INFINITY;
+    }
+
+    /**
+       sendSearch: Sends a shard the starts it has waiting, leaving out any
+       that can no longer beat the best cost to the finish.
+       @return whether a request was sent
+    */
+    private boolean sendSearch(int shard, int finish, boolean connecting,
+			       int best) throws IOException
+    {
+	List<Integer> starts = pending.get(shard);
+	StringBuilder request = new StringBuilder();
+	int count = 0;
+	for(int city : starts)
+	    {
+		if(costFromStart[city] >= best) { continue; }
+		request.append(city).append(' ')
+		    .append(costFromStart[city]).append(' ')
+		    .append(timeArriveThisCity[city]).append('\n');
+		count ++;
+	    }
+	starts.clear();
+	if(count == 0) { return false; }
+	outs[shard].write(ShardServer.SEARCH + " " + finish + " " +
+			  (connecting ? 1 : 0) + " " + best + " " + count +
+			  "\n");
+	outs[shard].write(request.toString());
+	outs[shard].flush();
+	return true;
+    }
+
+    /**
+       readFound: Reads a shard's answer, keeps every City it got to more
+       quickly than before, and makes those in other shards starts for
+       the next round.
+       @return the best cost to the finish now known
+    */
+    private int readFound(int shard, int finish, int best) throws IOException
+    {
+	String header = readLine(shard);
+	StringTokenizer st = new StringTokenizer(header);
+	if(!st.nextToken().equals(ShardServer.FOUND))
+	    { throw new IOException("Shard " + shard + " says " + header); }
+	int count = Integer.parseInt(st.nextToken());
+	for(int i = 0; i < count; i++)
+	    {
+		st = new StringTokenizer(readLine(shard));
+		int city = Integer.parseInt(st.nextToken());
+		int cost = Integer.parseInt(st.nextToken());
+		int arrive = Integer.parseInt(st.nextToken());
+		int from = Integer.parseInt(st.nextToken());
+		int[] piece = new int[LEG_INTS * Integer.parseInt
+				      (st.nextToken())];
+		for(int at = 0; at < piece.length; at++)
+		    {
+			String token = st.nextToken();
+			if(at % LEG_INTS == 6)
+			    {
+				piece[at] = token.equals(ShardServer.NO_CARRIER)
+				    ? CarrierIndex.UNKNOWN
+				    : CarrierIndex.intern(token);
+			    }
+			else
+			    { piece[at] = Integer.parseInt(token); }
+		    }
+		if(cost >= best || cost >= getCost(city)) { continue; }
+		label(city, cost, arrive, from, piece);
+		if(city == finish)
+		    { best = cost; }
+		else
+		    { pending.get(shards.shardOf(city)).add(city); }
+	    }
+	return best;
+    }
+
+    private String readLine(int shard) throws IOException
+    {
+	String line = ins[shard].readLine();
+	if(line == null)
+	    { throw new EOFException("Shard " + shard + " hung up"); }
+	return line;
+    }
+
+    /**
+       stitch: Puts the Itinerary to the finish together from the pieces,
+       each of which begins where another one ends.
+    */
+    private Itinerary stitch(int start, int finish)
+    {
+	List<int[]> pieces = new ArrayList<int[]>();
+	int numCities = 1;
+	for(int city = finish; city != start; city = seed[city])
+	    {
+		pieces.add(legs[city]);
+		numCities += legs[city].length / LEG_INTS;
+	    }
+	Collections.reverse(pieces);
+
+	Itinerary itinerary = new Itinerary(numCities, snapshot);
+	itinerary.setCity(0, start, -1, -1, timeArriveThisCity[start], 0, 0,
+			  CarrierIndex.UNKNOWN, 0);
+	int i = 1, miles = 0;
+	for(int[] piece : pieces)
+	    {
+		for(int at = 0; at < piece.length; at += LEG_INTS)
+		    {
+			miles += piece[at + 5];
+			itinerary.setCity(i ++, piece[at], piece[at + 1],
+					  piece[at + 2], piece[at + 3],
+					  piece[at + 4], miles, piece[at + 6],
+					  piece[at + 7]);
+		    }
+	    }
+	return itinerary;
+    }
+}
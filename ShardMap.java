@@ -0,0 +1,83 @@
+/******************************************************************************
+ShardMap.java
+
+A ShardMap splits the Cities of a Graph into regional shards, for a
+schedule that is served by several ShardServer processes instead of one
+JVM. The Cities are sorted west to east by their x coordinates (ties by
+id) and cut into numShards runs of nearly the same number of Cities, so
+each shard is a band of the map, and most Flights, which are short, stay
+inside one shard. A Flight that leaves one shard for another is a
+boundary edge: it belongs to the shard it leaves from, and ShardCoordinator
+carries the traveller across it.
+
+Every process that reads the same input file adds the same Cities in the
+same order, so they all get the same ids and build the same ShardMap
+without having to send it to each other.
+******************************************************************************/
+
+import java.util.*;
+
+public class ShardMap
+{
+    public final static int NONE = -1;
+
+    private int numShards;
+    private int[] shardOf;            // by City id, NONE where no City
+    private int[] sizes;              // Cities in each shard
+
+    /**
+       Constructor: Splits the Cities of a Graph into shards.
+       @param graph: the Graph whose Cities are split; only the Cities are
+       looked at, so it needs no Flights
+       @param n: the number of shards
+    */
+    public ShardMap(Graph graph, int n)
+    {
+	if(n <= 0)
+	    {
+		throw new IllegalArgumentException
+		    ("There has to be at least one shard");
+	    }
+	numShards = n;
+	shardOf = new int[graph.getNumIds()];
+	sizes = new int[n];
+	Arrays.fill(shardOf, NONE);
+
+	final double[] xs = new double[shardOf.length];
+	List<Integer> ids = new ArrayList<Integer>();
+	for(int id = 0; id < shardOf.length; id++)
+	    {
+		City city = graph.getCity(id);
+		if(city == null) { continue; }
+		xs[id] = city.getXCoord();
+		ids.add(id);
+	    }
+	Collections.sort(ids, new Comparator<Integer>()
+	    {
+		public int compare(Integer a, Integer b)
+		{
+		    int byX = Double.compare(xs[a], xs[b]);
+		    return (byX != 0) ? byX : Integer.compare(a, b);
+		}
+	    });
+	for(int rank = 0; rank < ids.size(); rank++)
+	    {
+		int shard = (int)((long)rank * n / ids.size());
+		shardOf[ids.get(rank)] = shard;
+		sizes[shard] ++;
+	    }
+    }
+
+    // Accessors
+    public int getNumShards()
+    { return numShards; }
+
+    public int getSize(int shard)
+    { return sizes[shard]; }
+
+    // The shard of a City, or NONE if there's no City with that id
+    public int shardOf(int city)
+    {
+	return (city < 0 || city >= shardOf.length) ? NONE : shardOf[city];
+    }
+}
@@ -0,0 +1,334 @@
+/******************************************************************************
+ShardServer.java
+
+A ShardServer holds one regional shard of a schedule (see ShardMap.java)
+and answers partial quickest-path searches over it for a
+ShardCoordinator, so that no one process needs the whole timetable. Run
+one per shard, on the same input file:
+
+java ShardServer airport.txt shard numShards port
+
+Every shard keeps all of the Cities, which are few and small, so that ids
+mean the same thing everywhere, but only the Flights that leave its own
+Cities. The Flights from its Cities to other shards' Cities are its
+boundary edges; a search follows them to the far City and stops there,
+since that City's Flights are in another process.
+
+The server listens on the loopback address and speaks a line-based text
+protocol. Each connection gets its own FlightSearch over the shard's
+FlightTable, so a coordinator keeps one connection open per shard and
+several coordinators can use the same shard at once. A request is
+
+    SEARCH finish connecting budget n
+
+followed by n lines "city cost arrive", the Cities of this shard where
+the traveller already is, at what cost, and when (in GMT minutes).
+connecting is 1 if they were reached by Flight, finish is the id of the
+City the traveller wants (or -1), and Cities that would cost more than
+budget are left out. The search starts from all of them at once, and the
+answer is
+
+    FOUND m
+
+followed by one line for every City it settled that is in another shard
+or is the finish, quickest first:
+
+    city cost arrive seed legs [to k depart arrive cost miles carrier
+    number] ...
+
+where seed is the start the path to the City began at and each leg
+gives the City it goes to, the Flight's k in its origin's row, its
+departure and arrival times, the cost so far, its miles, and its
+airline ("-" if unknown) and number. "INFO" answers "SHARD shard
+numShards cities flights boundaryFlights", "QUIT" closes the connection,
+and anything that can't be answered gets "ERROR" and a message.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+public class ShardServer
+{
+    final static String SEARCH = "SEARCH";
+    final static String FOUND = "FOUND";
+    final static String INFO = "INFO";
+    final static String SHARD = "SHARD";
+    final static String QUIT = "QUIT";
+    final static String ERROR = "ERROR";
+    final static String NO_CARRIER = "-";
+
+    private ShardMap shards;
+    private int shard;
+    private GraphSnapshot snapshot;
+    private int numFlights;
+    private int numBoundaryFlights;
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+
+    public static void main(String[] args) throws IOException
+    {
+	int shard = Integer.parseInt(args[1]);
+	int numShards = Integer.parseInt(args[2]);
+	int port = Integer.parseInt(args[3]);
+	ShardServer server = new ShardServer(new File(args[0]), shard,
+					     numShards, port);
+	server.start();
+	System.out.println("Shard " + shard + " of " + numShards + ": " +
+			   server.shards.getSize(shard) + " cities and " +
+			   server.numFlights + " flights (" +
+			   server.numBoundaryFlights + " to other shards), " +
+			   "on port " + server.getPort() + ".");
+    }
+
+    /**
+       Constructor: Reads one shard of an input file. Use port 0 to let the
+       system pick a free port.
+       @param file: the input file, in the format findFlight reads
+       @param s: which shard to keep
+       @param numShards: how many shards the Cities are split into
+       @param port: the port to listen on
+    */
+    public ShardServer(File file, int s, int numShards, int port)
+	throws IOException
+    {
+	Graph graph = new Graph();
+	Scanner fileIn = new Scanner(file);
+	String currLine = findFlight.initializeCities(fileIn, graph);
+	shards = new ShardMap(graph, numShards);
+	if(s < 0 || s >= numShards)
+	    {
+		fileIn.close();
+		throw new IllegalArgumentException("No shard " + s);
+	    }
+	shard = s;
+
+	int[] fields = new int[findFlight.FLIGHT_FIELDS];
+	while(currLine != null)
+	    {
+		if(findFlight.parseFlight(currLine, graph, fields)
+		   && shards.shardOf(fields[findFlight.FLIGHT_START]) == shard)
+		    {
+			graph.addFlight
+			    (graph.getCity(fields[findFlight.FLIGHT_START]),
+			     graph.getCity(fields[findFlight.FLIGHT_DEST]),
+			     fields[findFlight.FLIGHT_DEPART],
+			     fields[findFlight.FLIGHT_ARRIVE],
+			     fields[findFlight.FLIGHT_CARRIER],
+			     fields[findFlight.FLIGHT_NUMBER]);
+			numFlights ++;
+			int dest = fields[findFlight.FLIGHT_DEST];
+			if(shards.shardOf(dest) != shard)
+			    { numBoundaryFlights ++; }
+		    }
+		currLine = fileIn.hasNext() ? fileIn.nextLine() : null;
+	    }
+	fileIn.close();
+	snapshot = GraphSnapshot.of(graph);
+
+	serverSocket = new ServerSocket
+	    (port, 0, InetAddress.getLoopbackAddress());
+	executor = QueryServer.newRequestExecutor();
+    }
+
+    // Accessors
+    public int getPort()
+    { return serverSocket.getLocalPort(); }
+
+    public int getShard()
+    { return shard; }
+
+    public ShardMap getShardMap()
+    { return shards; }
+
+    // Modifiers
+    public void start()
+    {
+	executor.execute(new Runnable()
+	    {
+		public void run()
+		{ acceptConnections(); }
+	    });
+    }
+
+    public void stop() throws IOException
+    {
+	serverSocket.close();
+	executor.shutdown();
+    }
+
+    /**
+       acceptConnections: Hands each new connection to a thread of its
+       own, until the server is stopped.
+    */
+    private void acceptConnections()
+    {
+	while(!serverSocket.isClosed())
+	    {
+		try
+		    {
+			final Socket socket = serverSocket.accept();
+			executor.execute(new Runnable()
+			    {
+				public void run()
+				{ serve(socket); }
+			    });
+		    }
+		catch(IOException e)
+		    {
+			// closed by stop(), or a connection that failed
+		    }
+	    }
+    }
+
+    /**
+       serve: Answers the requests on one connection until the other end
+       closes it or sends QUIT.
+    */
+    private void serve(Socket socket)
+    {
+	FlightSearch search = new FlightSearch(snapshot.getTable());
+	try
+	    {
+		socket.setTcpNoDelay(true);
+		BufferedReader in = new BufferedReader(new InputStreamReader
+		    (socket.getInputStream(), StandardCharsets.UTF_8));
+		Writer out = new BufferedWriter(new OutputStreamWriter
+		    (socket.getOutputStream(), StandardCharsets.UTF_8));
+		String line;
+		while((line = in.readLine()) != null)
+		    {
+			StringTokenizer st = new StringTokenizer(line);
+			String command = st.hasMoreTokens() ? st.nextToken()
+			    : "";
+			if(command.equals(QUIT)) { break; }
+			try
+			    {
+				if(command.equals(SEARCH))
+				    { answerSearch(st, in, out, search); }
+				else if(command.equals(INFO))
+				    {
+					out.write(SHARD + " " + shard + " " +
+						  shards.getNumShards() + " " +
+						  shards.getSize(shard) + " " +
+						  numFlights + " " +
+						  numBoundaryFlights + "\n");
+				    }
+				else
+				    {
+					out.write(ERROR + " Unknown request: " +
+						  command + "\n");
+				    }
+			    }
+			catch(RuntimeException e)
+			    { out.write(ERROR + " " + e + "\n"); }
+			out.flush();
+		    }
+	    }
+	catch(IOException e)
+	    {
+		// the coordinator went away; nothing to answer
+	    }
+	finally
+	    {
+		try { socket.close(); }
+		catch(IOException e) { }
+	    }
+    }
+
+    /**
+       answerSearch: Reads the starts of a SEARCH request, searches from
+       them, and writes the paths to the Cities the coordinator needs.
+       @param st: the rest of the request line
+       @param in: where the starts are read from
+       @param out: where the answer goes
+       @param search: this connection's FlightSearch
+    */
+    private void answerSearch(StringTokenizer st, BufferedReader in,
+			      Writer out, FlightSearch search)
+	throws IOException
+    {
+	int finish = Integer.parseInt(st.nextToken());
+	boolean connecting = st.nextToken().equals("1");
+	int budget = Integer.parseInt(st.nextToken());
+	int n = Integer.parseInt(st.nextToken());
+	int[] starts = new int[n];
+	int[] costs = new int[n];
+	int[] arrives = new int[n];
+	String badStart = null;
+	for(int i = 0; i < n; i++)
+	    {
+		String line = in.readLine();
+		if(line == null) { throw new EOFException(); }
+		StringTokenizer start = new StringTokenizer(line);
+		starts[i] = Integer.parseInt(start.nextToken());
+		costs[i] = Integer.parseInt(start.nextToken());
+		arrives[i] = Integer.parseInt(start.nextToken());
+		if(shards.shardOf(starts[i]) != shard)
+		    { badStart = line; }
+	    }
+	if(badStart != null)
+	    {
+		throw new IllegalArgumentException
+		    ("Not a city of shard " + shard + ": " + badStart);
+	    }
+	if(finish != FlightSearch.NONE
+	   && shards.shardOf(finish) == ShardMap.NONE)
+	    { throw new IllegalArgumentException("No city " + finish); }
+
+	int[] finishes = (finish == FlightSearch.NONE) ? new int[0]
+	    : new int[] { finish };
+	search.searchMany(starts, costs, arrives, finishes, connecting,
+			  budget);
+
+	StringBuilder answer = new StringBuilder();
+	int count = 0;
+	for(int i = 0; i < search.getNumSettled(); i++)
+	    {
+		int city = search.getSettledCity(i);
+		if(search.getPrevOnShortestPath(city) == FlightSearch.NONE)
+		    { continue; }
+		if(city != finish && shards.shardOf(city) == shard)
+		    { continue; }
+		appendPath(answer, search, city);
+		count ++;
+	    }
+	out.write(FOUND + " " + count + "\n");
+	out.write(answer.toString());
+    }
+
+    /**
+       appendPath: Writes one line of a FOUND answer: the path the last
+       search found to a City, from the start it began at.
+    */
+    private void appendPath(StringBuilder out, FlightSearch search,
+			    int city)
+    {
+	FlightStore store = search.getStore();
+	int[] path = search.getPath(city);
+	out.append(city).append(' ')
+	    .append(search.getCostFromStart(city)).append(' ')
+	    .append(search.getTimeArriveThisCity(city)).append(' ')
+	    .append(path[0]).append(' ')
+	    .append(path.length - 1);
+	for(int i = 1; i < path.length; i++)
+	    {
+		int from = path[i - 1];
+		int to = path[i];
+		int k = search.getPrevFlight(to);
+		String carrier = CarrierIndex.codeOf(store.getCarrier(from, k));
+		out.append(' ').append(to)
+		    .append(' ').append(k)
+		    .append(' ').append(search.getTimeDepartPrevCity(to))
+		    .append(' ').append(search.getTimeArriveThisCity(to))
+		    .append(' ').append(search.getCostFromStart(to))
+		    .append(' ').append(store.getMiles(from, k))
+		    .append(' ').append(carrier.isEmpty() ? NO_CARRIER
+					: carrier)
+		    .append(' ').append(store.getFlightNumber(from, k));
+	    }
+	out.append('\n');
+    }
+}
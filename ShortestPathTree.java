@@ -0,0 +1,351 @@
+/******************************************************************************
+ShortestPathTree.java
+
+A ShortestPathTree holds the quickest path from one City, at one start
+time, to every other City, as found by the same search as
+FlightSearch.search(). Unlike a FlightSearch, whose results are gone once
+it runs the next query, a tree keeps its results and can be brought up to
+date when the schedule changes, so a disruption that touches a few
+Flights doesn't mean searching everything again.
+
+repair() does this in the manner of dynamic shortest-path algorithms
+(Ramalingam and Reps). Given the Cities whose departing Flights changed,
+it finds the Cities whose path in the tree takes one of those Cities'
+Flights, together with everything below them; only these can get worse.
+They are reset, offered the best Flight in from a City that kept its
+path, and then Dijkstra's algorithm runs from there, with the changed
+Cities' new Flights also offered so that added or earlier Flights can
+make other paths better. Cities whose paths can't have changed are never
+settled again. Arriving earlier never makes a connection worse, so a path
+that was quickest before and didn't change is still a correct upper bound,
+which is what makes this safe.
+
+A tree is not thread-safe; each thread that repairs trees should have its
+own.
+******************************************************************************/
+
+import java.util.*;
+
+public class ShortestPathTree
+{
+    public final static int NONE = FlightSearch.NONE;
+
+    // What repair() has found out about a City
+    private final static byte UNKNOWN = 0;
+    private final static byte KEPT = 1;
+    private final static byte AFFECTED = 2;
+
+    private GraphSnapshot snapshot;
+    private FlightTable table;
+    private int startCity;
+    private int GMTStartTimeMinutes;
+    private int numCities;
+
+    // The tree, indexed by City id
+    private int[] costFromStart;
+    private int[] timeArriveThisCity;
+    private int[] timeDepartPrevCity;
+    private int[] prevOnShortestPath;
+    private int[] prevFlight;
+
+    // Work space for repair()
+    private byte[] mark;
+    private boolean[] isChanged;
+    private int[] affected;
+    private int[] stack;
+    private LongMinHeap heap;
+
+    // Counts for QueryMetrics
+    private int settled, relaxed, pushes, stale;
+
+    /**
+       Constructor: Finds the quickest paths from a City to every other.
+       @param s: the snapshot to search
+       @param start: the id of the City where the traveller begins
+       @param GMTStart: the start time in GMT minutes
+    */
+    public ShortestPathTree(GraphSnapshot s, int start, int GMTStart)
+    {
+	if(s.getCity(start) == null)
+	    { throw new IllegalArgumentException("No city with id " + start); }
+	snapshot = s;
+	table = s.getTable();
+	startCity = start;
+	GMTStartTimeMinutes = GMTStart;
+	numCities = 0;
+	costFromStart = new int[0];
+	timeArriveThisCity = new int[0];
+	timeDepartPrevCity = new int[0];
+	prevOnShortestPath = new int[0];
+	prevFlight = new int[0];
+	mark = new byte[0];
+	isChanged = new boolean[0];
+	affected = new int[0];
+	stack = new int[0];
+	grow(table.getNumCities());
+	heap = new LongMinHeap(numCities);
+
+	settled = relaxed = pushes = stale = 0;
+	reach(startCity, 0, GMTStartTimeMinutes, -1, NONE, NONE);
+	run();
+    }
+
+    // Accessors
+    public GraphSnapshot getSnapshot()
+    { return snapshot; }
+
+    public int getStartCity()
+    { return startCity; }
+
+    public int getGMTStartTime()
+    { return GMTStartTimeMinutes; }
+
+    public boolean isReached(int city)
+    { return city < numCities && costFromStart[city] != City.INFINITY; }
+
+    public int getCostFromStart(int city)
+    { return isReached(city) ? costFromStart[city] : City.INFINITY; }
+
+    public int getTimeArriveThisCity(int city)
+    { return timeArriveThisCity[city]; }
+
+    public int getTimeDepartPrevCity(int city)
+    { return timeDepartPrevCity[city]; }
+
+    public int getPrevOnShortestPath(int city)
+    { return isReached(city) ? prevOnShortestPath[city] : NONE; }
+
+    public int getPrevFlight(int city)
+    { return prevFlight[city]; }
+
+    /**
+       getPath: The Cities on the path to the given City.
+       @param finish: the id of the City at the end of the path
+       @return the ids from the start to finish, or null if finish can't be
+       reached
+    */
+    public int[] getPath(int finish)
+    {
+	if(!isReached(finish)) { return null; }
+	int length = 0;
+	for(int city = finish; city != NONE; city = prevOnShortestPath[city])
+	    { length ++; }
+	int[] path = new int[length];
+	for(int city = finish; city != NONE; city = prevOnShortestPath[city])
+	    { path[-- length] = city; }
+	return path;
+    }
+
+    /**
+       update: Brings the tree up to date with a newer version of the
+       schedule, made from the tree's version by VersionedGraph, by
+       repairing it for every row of Flights that changed in between.
+       @param newer: the newer snapshot
+       @return the number of Cities whose paths had to be found again
+    */
+    public int update(GraphSnapshot newer)
+    {
+	if(newer == snapshot) { return 0; }
+	return repair(newer, newer.getTable().rowsChangedSince(table));
+    }
+
+    /**
+       repair: Brings the tree up to date after the departing Flights of
+       some Cities have changed (added, cancelled, or moved), or Cities
+       have been added or retired.
+       @param newer: the snapshot with the changes
+       @param changedCities: the ids of the Cities whose rows of Flights
+       changed; any Flight that isn't in one of these rows must be the same
+       in both snapshots
+       @return the number of Cities whose paths had to be found again
+    */
+    public int repair(GraphSnapshot newer, int[] changedCities)
+    {
+	long beginNanos = QueryMetrics.enabled ? System.nanoTime() : 0;
+	settled = relaxed = pushes = stale = 0;
+	snapshot = newer;
+	table = newer.getTable();
+	grow(table.getNumCities());
+
+	for(int i = 0; i < changedCities.length; i++)
+	    { isChanged[changedCities[i]] = true; }
+	Arrays.fill(mark, 0, numCities, UNKNOWN);
+	int numAffected = 0;
+	if(newer.getCity(startCity) == null)
+	    {
+		// The start has been retired, so nothing can be reached.
+		for(int city = 0; city < numCities; city++)
+		    {
+			if(isReached(city)) { affected[numAffected ++] = city; }
+		    }
+	    }
+	else
+	    {
+		for(int city = 0; city < numCities; city++)
+		    { numAffected = classify(city, numAffected); }
+	    }
+	for(int i = 0; i < numAffected; i++)
+	    { unreach(affected[i]); }
+	long resetNanos = QueryMetrics.enabled
+	    ? System.nanoTime() - beginNanos : 0;
+
+	if(newer.getCity(startCity) != null)
+	    {
+		heap.clear();
+		// A start that was retired and has come back starts over.
+		if(!isReached(startCity))
+		    { reach(startCity, 0, GMTStartTimeMinutes, -1, NONE, NONE); }
+		// Offer every Flight into an affected City from a City that
+		// kept its path...
+		for(int i = 0; i < numAffected; i++)
+		    {
+			int[] arrivals = newer.arrivals(affected[i]);
+			for(int j = 0; j < arrivals.length; j += 2)
+			    {
+				int origin = arrivals[j];
+				if(mark[origin] != AFFECTED && isReached(origin))
+				    { relax(origin, arrivals[j + 1]); }
+			    }
+		    }
+		// ...and every new or moved Flight from such a City.
+		for(int i = 0; i < changedCities.length; i++)
+		    {
+			int city = changedCities[i];
+			if(mark[city] != AFFECTED && isReached(city))
+			    { relaxAll(city); }
+		    }
+		run();
+	    }
+
+	for(int i = 0; i < changedCities.length; i++)
+	    { isChanged[changedCities[i]] = false; }
+	if(QueryMetrics.enabled)
+	    {
+		QueryMetrics.TREE_REPAIR.record
+		    (System.nanoTime() - beginNanos, settled, relaxed, pushes,
+		     stale, numAffected, resetNanos);
+	    }
+	return numAffected;
+    }
+
+    /**
+       classify: Works out whether a City's path in the tree takes a Flight
+       from a changed City, directly or further up. The Cities walked
+       through on the way are marked too, so every City is walked through
+       only once per repair.
+       @return the new number of affected Cities
+    */
+    private int classify(int city, int numAffected)
+    {
+	int top = 0;
+	byte result;
+	while(true)
+	    {
+		if(mark[city] != UNKNOWN) { result = mark[city]; break; }
+		int prev = prevOnShortestPath[city];
+		if(!isReached(city) || prev == NONE)
+		    {
+			mark[city] = result = KEPT;
+			break;
+		    }
+		if(isChanged[prev] || snapshot.getCity(city) == null)
+		    {
+			mark[city] = result = AFFECTED;
+			affected[numAffected ++] = city;
+			break;
+		    }
+		stack[top ++] = city;
+		city = prev;
+	    }
+	while(top > 0)
+	    {
+		city = stack[-- top];
+		mark[city] = result;
+		if(result == AFFECTED) { affected[numAffected ++] = city; }
+	    }
+	return numAffected;
+    }
+
+    /**
+       run: Dijkstra's algorithm from whatever is in the heap, with the
+       same rules as FlightSearch.search().
+    */
+    private void run()
+    {
+	while(!heap.isEmpty())
+	    {
+		long entry = heap.pop();
+		int city = LongMinHeap.nodeOf(entry);
+		if(LongMinHeap.costOf(entry) != costFromStart[city])
+		    { stale ++; continue; }
+		settled ++;
+		relaxAll(city);
+	    }
+    }
+
+    private void relaxAll(int city)
+    {
+	int degree = table.getDegree(city);
+	relaxed += degree;
+	for(int k = 0; k < degree; k++)
+	    { relax(city, k); }
+    }
+
+    private void relax(int city, int k)
+    {
+	int depart = table.getTimeDepart(city, k);
+	int waitingTime = Graph.getWaitingTime(timeArriveThisCity[city], depart);
+	if(waitingTime < Graph.SHORTEST_TIME_TO_CHANGE_PLANES
+	   && city != startCity)
+	    { waitingTime += Graph.MINUTES_IN_A_DAY; }
+
+	int dest = table.getDest(city, k);
+	int potentiallyFasterTime = costFromStart[city] + waitingTime
+	    + table.getFlightTime(city, k);
+	if(potentiallyFasterTime < costFromStart[dest])
+	    {
+		reach(dest, potentiallyFasterTime, table.getTimeArrive(city, k),
+		      depart, city, k);
+	    }
+    }
+
+    private void reach(int city, int cost, int arrive, int departPrev,
+		       int prev, int k)
+    {
+	costFromStart[city] = cost;
+	timeArriveThisCity[city] = arrive;
+	timeDepartPrevCity[city] = departPrev;
+	prevOnShortestPath[city] = prev;
+	prevFlight[city] = k;
+	heap.push(LongMinHeap.pack(cost, city));
+	pushes ++;
+    }
+
+    private void unreach(int city)
+    {
+	costFromStart[city] = City.INFINITY;
+	prevOnShortestPath[city] = NONE;
+	prevFlight[city] = NONE;
+    }
+
+    /**
+       grow: Makes room for Cities added since the tree was last searched.
+       They start out unreached.
+    */
+    private void grow(int n)
+    {
+	if(n <= numCities) { return; }
+	costFromStart = Arrays.copyOf(costFromStart, n);
+	timeArriveThisCity = Arrays.copyOf(timeArriveThisCity, n);
+	timeDepartPrevCity = Arrays.copyOf(timeDepartPrevCity, n);
+	prevOnShortestPath = Arrays.copyOf(prevOnShortestPath, n);
+	prevFlight = Arrays.copyOf(prevFlight, n);
+	mark = Arrays.copyOf(mark, n);
+	isChanged = Arrays.copyOf(isChanged, n);
+	affected = Arrays.copyOf(affected, n);
+	stack = Arrays.copyOf(stack, n);
+	for(int city = numCities; city < n; city++)
+	    { unreach(city); }
+	numCities = n;
+    }
+}
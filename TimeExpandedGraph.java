@@ -0,0 +1,405 @@
+/******************************************************************************
+TimeExpandedGraph.java
+
+A TimeExpandedGraph is a second way of representing the Flights in a
+Graph. Instead of having Cities as nodes and working out waiting times
+with Graph.getWaitingTime() during the search, every Flight becomes two
+event nodes: a departure event (node 2*f) and an arrival event (node
+2*f + 1). Each City gets a "waiting chain" that links its departure events
+in time order (wrapping around midnight), and each arrival event has one
+edge to the first departure that leaves at least
+Graph.SHORTEST_TIME_TO_CHANGE_PLANES minutes later. All edge weights are
+then plain durations, so a query is an ordinary static shortest-path
+search on the event nodes.
+
+Everything is stored in primitive arrays (an adjacency array of edges
+indexed by node), built once from a Graph. The arrays are a snapshot: if
+Cities or Flights are added to the Graph afterwards, a new
+TimeExpandedGraph has to be built. Query buffers are reused between
+queries, so a TimeExpandedGraph must not be queried from two threads at
+once.
+******************************************************************************/
+
+import java.util.*;
+
+public class TimeExpandedGraph
+{
+    private City[] cities;           // indexed by City id
+
+    // Event nodes
+    private Flight[] flights;        // flights[f] made nodes 2*f and 2*f+1
+    private int[] eventCity;         // the City id where the event happens
+    private int[] eventTime;         // GMT minute time of the event
+
+    // Edges, in adjacency-array form: the edges out of node v are
+    // edgeTarget[firstEdge[v]] .. edgeTarget[firstEdge[v+1] - 1]
+    private int[] firstEdge;
+    private int[] edgeTarget;
+    private int[] edgeWeight;
+
+    // Departure events of each City, sorted by time:
+    // departureNode[firstDeparture[c]] .. departureNode[firstDeparture[c+1]-1]
+    private int[] firstDeparture;
+    private int[] departureNode;
+    private int[] departureTime;
+    private int[] departurePosition; // where flight f sits in those lists
+
+    // Query buffers
+    private int[] dist;
+    private int[] prevNode;
+    private int[] visitedStamp;
+    private int[] reachedStamp;
+    private int stamp;
+    private LongMinHeap heap;
+    private int lastTarget;          // arrival node that ended the last query
+
+    // Constructor
+    public TimeExpandedGraph(Graph graph)
+    {
+	numberCities(graph);
+	collectFlights();
+	buildDepartureChains();
+	buildEdges();
+
+	int numNodes = eventCity.length;
+	dist = new int[numNodes];
+	prevNode = new int[numNodes];
+	visitedStamp = new int[numNodes];
+	reachedStamp = new int[numNodes];
+	stamp = 0;
+	heap = new LongMinHeap(numNodes);
+	lastTarget = -1;
+    }
+
+    // Accessors
+    public int getNumCities()
+    { return cities.length; }
+
+    public int getNumNodes()
+    { return eventCity.length; }
+
+    public int getNumEdges()
+    { return edgeTarget.length; }
+
+    /**
+       addToFootprint: Adds this graph's arrays (including its query
+       buffers) to a memory report. The Flight and City objects it points
+       to belong to the Graph and aren't counted again.
+       @param footprint: the report to add to
+    */
+    public void addToFootprint(MemoryFootprint footprint)
+    {
+	int nodes = eventCity.length;
+	long bytes = MemoryFootprint.shallowSize(TimeExpandedGraph.class)
+	    + MemoryFootprint.arraySize(cities.length, MemoryFootprint.REFERENCE)
+	    + MemoryFootprint.arraySize(flights.length,
+					MemoryFootprint.REFERENCE)
+	    + 2 * MemoryFootprint.arraySize(nodes, 4)          // event arrays
+	    + MemoryFootprint.arraySize(firstEdge.length, 4)
+	    + 2 * MemoryFootprint.arraySize(edgeTarget.length, 4)
+	    + MemoryFootprint.arraySize(firstDeparture.length, 4)
+	    + 3 * MemoryFootprint.arraySize(departureNode.length, 4)
+	    + 4 * MemoryFootprint.arraySize(nodes, 4)          // query buffers
+	    + MemoryFootprint.arraySize(heap.capacity(), 8);
+	footprint.add("TimeExpandedGraph", 17, bytes);
+    }
+
+    /************************* CONSTRUCTION METHODS *************************/
+    /**
+       numberCities: Makes the array of Cities, indexed by the ids that the
+       Graph's AirportCodeIndex gave them.
+       @param graph: the Graph being converted
+    */
+    private void numberCities(Graph graph)
+    {
+	cities = new City[graph.getNumIds()];
+	for(int id = 0; id < cities.length; id++)
+	    { cities[id] = graph.getCity(id); }
+    }
+
+    /**
+       collectFlights: Copies every Flight into the flights array and fills
+       in the City and time of its two event nodes.
+    */
+    private void collectFlights()
+    {
+	List<Flight> all = new ArrayList<Flight>();
+	List<Integer> origins = new ArrayList<Integer>();
+	for(int c = 0; c < cities.length; c++)
+	    {
+		if(cities[c] == null) { continue; } // a retired City
+		Iterator itr = cities[c].getAdjacentFlightsIterator();
+		while(itr.hasNext())
+		    {
+			all.add((Flight)itr.next());
+			origins.add(c);
+		    }
+	    }
+
+	flights = all.toArray(new Flight[all.size()]);
+	eventCity = new int[2 * flights.length];
+	eventTime = new int[2 * flights.length];
+	for(int f = 0; f < flights.length; f++)
+	    {
+		eventCity[2 * f] = origins.get(f);
+		eventTime[2 * f] = flights[f].getTimeDepart();
+		eventCity[2 * f + 1] = flights[f].getDest().getId();
+		eventTime[2 * f + 1] = flights[f].getTimeArrive();
+	    }
+    }
+
+    /**
+       buildDepartureChains: Groups the departure events by City and sorts
+       each group by time, using a counting pass so that no per-City lists
+       are needed.
+    */
+    private void buildDepartureChains()
+    {
+	int numCities = cities.length;
+	firstDeparture = new int[numCities + 1];
+	for(int f = 0; f < flights.length; f++)
+	    { firstDeparture[eventCity[2 * f] + 1] ++; }
+	for(int c = 0; c < numCities; c++)
+	    { firstDeparture[c + 1] += firstDeparture[c]; }
+
+	// Sort (time, node) pairs packed into longs
+	long[] packed = new long[flights.length];
+	int[] fill = Arrays.copyOf(firstDeparture, numCities);
+	for(int f = 0; f < flights.length; f++)
+	    {
+		packed[fill[eventCity[2 * f]] ++]
+		    = LongMinHeap.pack(eventTime[2 * f], 2 * f);
+	    }
+	for(int c = 0; c < numCities; c++)
+	    { Arrays.sort(packed, firstDeparture[c], firstDeparture[c + 1]); }
+
+	departureNode = new int[flights.length];
+	departureTime = new int[flights.length];
+	departurePosition = new int[flights.length];
+	for(int i = 0; i < flights.length; i++)
+	    {
+		departureNode[i] = LongMinHeap.nodeOf(packed[i]);
+		departureTime[i] = LongMinHeap.costOf(packed[i]);
+		departurePosition[departureNode[i] / 2] = i;
+	    }
+    }
+
+    /**
+       buildEdges: Creates the three kinds of edges. A departure event has
+       an edge to its own arrival event (the flight time) and, if its City
+       has more than one departure, an edge to the next departure in the
+       waiting chain. An arrival event has an edge to the first departure
+       from its City that leaves at least SHORTEST_TIME_TO_CHANGE_PLANES
+       minutes later (if the City has any departures).
+    */
+    private void buildEdges()
+    {
+	int numNodes = eventCity.length;
+	firstEdge = new int[numNodes + 1];
+	int[] target = new int[3 * flights.length];
+	int[] weight = new int[3 * flights.length];
+	int numEdges = 0;
+
+	for(int v = 0; v < numNodes; v++)
+	    {
+		firstEdge[v] = numEdges;
+		int c = eventCity[v];
+		int from = firstDeparture[c];
+		int to = firstDeparture[c + 1];
+		if(v % 2 == 0)
+		    {
+			int f = v / 2;
+			target[numEdges] = v + 1;
+			weight[numEdges ++] = flights[f].getFlightTime();
+
+			if(to - from > 1)
+			    {
+				int i = departurePosition[f];
+				int next = (i + 1 < to) ? i + 1 : from;
+				target[numEdges] = departureNode[next];
+				weight[numEdges ++] = Graph.getWaitingTime
+				    (departureTime[i], departureTime[next]);
+			    }
+		    }
+		else if(to > from)
+		    {
+			int earliest = Math.floorMod
+			    (eventTime[v]
+			     + Graph.SHORTEST_TIME_TO_CHANGE_PLANES,
+			     Graph.MINUTES_IN_A_DAY);
+			int i = firstDepartureAtOrAfter(from, to, earliest);
+			target[numEdges] = departureNode[i];
+			weight[numEdges ++] =
+			    Graph.SHORTEST_TIME_TO_CHANGE_PLANES +
+			    Graph.getWaitingTime(earliest, departureTime[i]);
+		    }
+	    }
+	firstEdge[numNodes] = numEdges;
+	edgeTarget = Arrays.copyOf(target, numEdges);
+	edgeWeight = Arrays.copyOf(weight, numEdges);
+    }
+
+    /**
+       firstDepartureAtOrAfter: Binary search in one City's sorted
+       departures for the first one leaving at or after the given time,
+       wrapping around to the first departure of the day if there is none.
+       @return an index into departureNode/departureTime
+    */
+    private int firstDepartureAtOrAfter(int from, int to, int time)
+    {
+	int lo = from, hi = to;
+	while(lo < hi)
+	    {
+		int mid = (lo + hi) >>> 1;
+		if(departureTime[mid] < time) { lo = mid + 1; }
+		else { hi = mid; }
+	    }
+	return (lo < to) ? lo : from;
+    }
+
+    /************************* QUERY METHODS ********************************/
+    /**
+       quickestTime: Finds the least total time needed to get from one City
+       to another when starting at the given clock time. This answers the
+       same question as Graph.dijkstra(), but as a plain shortest-path
+       search over event nodes. The search stops as soon as the first
+       arrival event at finishCity is settled.
+       @param startCity: the City where the traveller begins
+       @param startClockTime: the local clock time (e.g., 1624) of the start
+       @param finishCity: the City where the traveller wants to go
+       @return the total time in minutes, or City.INFINITY if there is no
+       path
+    */
+    public int quickestTime(City startCity, int startClockTime,
+			    City finishCity)
+    {
+	lastTarget = -1;
+	int start = startCity.getId();
+	int finish = finishCity.getId();
+	if(start == finish) { return 0; }
+
+	int from = firstDeparture[start];
+	int to = firstDeparture[start + 1];
+	if(from == to) { return City.INFINITY; }
+
+	int GMTStartTimeMinutes = Graph.clockTimeToGMTMinuteTime
+	    (startClockTime, startCity);
+	int first = firstDepartureAtOrAfter(from, to, GMTStartTimeMinutes);
+
+	newQuery();
+	reach(departureNode[first], -1, Graph.getWaitingTime
+	      (GMTStartTimeMinutes, departureTime[first]));
+
+	while(!heap.isEmpty())
+	    {
+		long entry = heap.pop();
+		int v = LongMinHeap.nodeOf(entry);
+		if(visitedStamp[v] == stamp) { continue; }
+		visitedStamp[v] = stamp;
+
+		if(v % 2 == 1 && eventCity[v] == finish)
+		    {
+			lastTarget = v;
+			return dist[v];
+		    }
+
+		for(int e = firstEdge[v]; e < firstEdge[v + 1]; e++)
+		    { reach(edgeTarget[e], v, dist[v] + edgeWeight[e]); }
+	    }
+	return City.INFINITY;
+    }
+
+    /**
+       getFlightsOnLastPath: Lists the Flights taken on the path found by
+       the most recent call to quickestTime(), in the order they are
+       flown.
+       @return the Flights, or an empty List if there was no path
+    */
+    public List<Flight> getFlightsOnLastPath()
+    {
+	LinkedList<Flight> path = new LinkedList<Flight>();
+	for(int v = lastTarget; v >= 0; v = prevNode[v])
+	    {
+		if(v % 2 == 1) { path.addFirst(flights[v / 2]); }
+	    }
+	return path;
+    }
+
+    /**
+       printQuickestPath: Runs quickestTime() and prints the result in the
+       same form as Graph.dijkstra() does.
+       @param startCity: the City where the traveller begins
+       @param startClockTime: the local clock time of the start
+       @param finishCity: the City where the traveller wants to go
+    */
+    public void printQuickestPath(City startCity, int startClockTime,
+				  City finishCity)
+    {
+	int total = quickestTime(startCity, startClockTime, finishCity);
+	System.out.println("\nHere's the shortest path:");
+	if(total == City.INFINITY)
+	    {
+		System.out.println("Sorry! There is no such path.");
+		return;
+	    }
+
+	System.out.println("Start at " + startCity.getName() + " at " +
+			   Graph.minuteTimeToClockTime
+			   (Graph.clockTimeToGMTMinuteTime
+			    (startClockTime, startCity) +
+			    startCity.getOffsetMinutes()));
+
+	// Collect the arrival events on the path, last one first
+	LinkedList<Integer> arrivals = new LinkedList<Integer>();
+	for(int v = lastTarget; v >= 0; v = prevNode[v])
+	    {
+		if(v % 2 == 1) { arrivals.addFirst(v); }
+	    }
+
+	int costSoFar = 0;
+	Iterator<Integer> itr = arrivals.iterator();
+	while(itr.hasNext())
+	    {
+		int v = itr.next();
+		Flight flight = flights[v / 2];
+		System.out.println("depart at " +
+				   Graph.minuteTimeToClockTime
+				   (flight.timeDepart +
+				    flight.diffGMTStartingCityInMinutes) +
+				   " to " + flight.getDest().getName() +
+				   ", arriving at " +
+				   Graph.minuteTimeToClockTime
+				   (flight.timeArrive +
+				    flight.diffGMTEndingCityInMinutes) +
+				   "\n\twith additional cost of " +
+				   Graph.minuteTimeToHoursAndMinutes
+				   (dist[v] - costSoFar));
+		costSoFar = dist[v];
+	    }
+	System.out.println("Total cost = " +
+			   Graph.minuteTimeToHoursAndMinutes(total));
+    }
+
+    private void newQuery()
+    {
+	heap.clear();
+	stamp ++;
+	if(stamp == Integer.MAX_VALUE)
+	    {
+		Arrays.fill(visitedStamp, 0);
+		Arrays.fill(reachedStamp, 0);
+		stamp = 1;
+	    }
+    }
+
+    private void reach(int v, int prev, int cost)
+    {
+	if(reachedStamp[v] != stamp || cost < dist[v])
+	    {
+		reachedStamp[v] = stamp;
+		dist[v] = cost;
+		prevNode[v] = prev;
+		heap.push(LongMinHeap.pack(cost, v));
+	    }
+    }
+}
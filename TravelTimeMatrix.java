@@ -0,0 +1,223 @@
+/******************************************************************************
+TravelTimeMatrix.java
+
+A TravelTimeMatrix holds the quickest travel time from every City to every
+other, leaving each origin at the same local clock time, for network
+planning. Entry (i, j) is the number of minutes from the City with id i to
+the City with id j, as FlightSearch.search() finds it, or City.INFINITY if
+j can't be reached from i. Ids that have no City in the snapshot get a row
+and a column of City.INFINITY, so the matrix is indexed by id like
+everything else.
+
+compute() needs one search per origin. The origins are split among the
+threads of a ForkJoinPool, each of which has its own FlightSearch over
+the snapshot's FlightTable, so the searches share nothing but the table,
+which they only read, and each row is written by exactly one thread. The
+rows are stored one after another in a single int array.
+
+save() writes the matrix in a binary form that load() reads back without
+the Graph: the clock time, the codes of the Cities, and the rows. Files
+whose names end with ".gz" are compressed.
+******************************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+import java.io.*;
+
+public class TravelTimeMatrix
+{
+    // Marks the start of a saved matrix
+    final static int MAGIC = 0x54544d31; // "TTM1"
+
+    // Each task searches at most this many origins itself; bigger ranges
+    // are split in two, so idle threads can steal the other half.
+    final static int ORIGINS_PER_TASK = 8;
+
+    private int numCities;
+    private int startClockTime;
+    private String[] codes;           // null where an id has no City
+    private int[] times;              // row-major, numCities x numCities
+
+    // Constructor
+    private TravelTimeMatrix(int n, int clockTime, String[] c, int[] t)
+    {
+	numCities = n;
+	startClockTime = clockTime;
+	codes = c;
+	times = t;
+    }
+
+    // Accessors
+    public int getNumCities()
+    { return numCities; }
+
+    public int getStartClockTime()
+    { return startClockTime; }
+
+    public String getCode(int city)
+    { return codes[city]; }
+
+    public int getTime(int from, int to)
+    { return times[from * numCities + to]; }
+
+    /**
+       compute: Finds the quickest travel times between every pair of
+       Cities.
+       @param snapshot: the version of the schedule to use
+       @param startClockTime: the local clock time at which the traveller
+       leaves each origin
+       @param pool: the threads to search on
+       @return the matrix
+    */
+    public static TravelTimeMatrix compute(GraphSnapshot snapshot,
+					   int startClockTime,
+					   ForkJoinPool pool)
+    {
+	int n = snapshot.getNumCities();
+	if((long)n * n > Integer.MAX_VALUE)
+	    {
+		throw new IllegalArgumentException
+		    ("Too many cities for one matrix: " + n);
+	    }
+	String[] codes = new String[n];
+	for(int id = 0; id < n; id++)
+	    {
+		City city = snapshot.getCity(id);
+		if(city != null) { codes[id] = city.getCode(); }
+	    }
+	TravelTimeMatrix matrix
+	    = new TravelTimeMatrix(n, startClockTime, codes, new int[n * n]);
+	pool.invoke(matrix.new Origins(snapshot, 0, n));
+	return matrix;
+    }
+
+    /**
+       Origins: The task of filling in the rows of a range of origins.
+    */
+    private class Origins extends RecursiveAction
+    {
+	private static final long serialVersionUID = 1L;
+
+	private GraphSnapshot snapshot;
+	private int first, end;
+
+	Origins(GraphSnapshot s, int f, int e)
+	{
+	    snapshot = s;
+	    first = f;
+	    end = e;
+	}
+
+	protected void compute()
+	{
+	    if(end - first > ORIGINS_PER_TASK)
+		{
+		    int middle = (first + end) >>> 1;
+		    invokeAll(new Origins(snapshot, first, middle),
+			      new Origins(snapshot, middle, end));
+		    return;
+		}
+	    FlightSearch search = searchFor(snapshot);
+	    for(int origin = first; origin < end; origin++)
+		{ fillRow(snapshot, search, origin); }
+	}
+    }
+
+    // Each worker thread's search; the pool's threads outlive one matrix,
+    // so the searches are reused by the next one too.
+    private static ThreadLocal<FlightSearch> searches
+	= new ThreadLocal<FlightSearch>();
+
+    private static FlightSearch searchFor(GraphSnapshot snapshot)
+    {
+	FlightSearch search = searches.get();
+	if(search == null)
+	    {
+		search = new FlightSearch(snapshot.getTable());
+		searches.set(search);
+	    }
+	else
+	    { search.setStore(snapshot.getTable()); }
+	return search;
+    }
+
+    /**
+       fillRow: Searches from one origin and writes its row. Only the
+       Cities the search settled are looked at, so a City with few
+       reachable Cities costs little more than filling the row.
+    */
+    private void fillRow(GraphSnapshot snapshot, FlightSearch search,
+			 int origin)
+    {
+	int row = origin * numCities;
+	Arrays.fill(times, row, row + numCities, City.INFINITY);
+	City city = snapshot.getCity(origin);
+	if(city == null) { return; }
+	search.search(origin, Graph.clockTimeToGMTMinuteTime
+		      (startClockTime, city), FlightSearch.NONE);
+	for(int i = 0; i < search.getNumSettled(); i++)
+	    {
+		int dest = search.getSettledCity(i);
+		times[row + dest] = search.getCostFromStart(dest);
+	    }
+    }
+
+    /**
+       save: Writes the matrix to a file.
+       @param file: where to write it
+    */
+    public void save(File file) throws IOException
+    {
+	OutputStream stream = new FileOutputStream(file);
+	if(file.getName().endsWith(findFlight.GZIP_SUFFIX))
+	    { stream = new GZIPOutputStream(stream, 1 << 16); }
+	DataOutputStream out = new DataOutputStream
+	    (new BufferedOutputStream(stream, 1 << 16));
+	try
+	    {
+		out.writeInt(MAGIC);
+		out.writeInt(numCities);
+		out.writeInt(startClockTime);
+		for(int id = 0; id < numCities; id++)
+		    { out.writeUTF((codes[id] == null) ? "" : codes[id]); }
+		for(int i = 0; i < times.length; i++)
+		    { out.writeInt(times[i]); }
+	    }
+	finally
+	    { out.close(); }
+    }
+
+    /**
+       load: Reads a matrix written by save().
+       @param file: the file to read
+       @return the matrix
+    */
+    public static TravelTimeMatrix load(File file) throws IOException
+    {
+	InputStream stream = new FileInputStream(file);
+	if(file.getName().endsWith(findFlight.GZIP_SUFFIX))
+	    { stream = new GZIPInputStream(stream, 1 << 16); }
+	DataInputStream in = new DataInputStream
+	    (new BufferedInputStream(stream, 1 << 16));
+	try
+	    {
+		if(in.readInt() != MAGIC)
+		    { throw new IOException(file + " isn't a saved matrix"); }
+		int n = in.readInt();
+		int clockTime = in.readInt();
+		String[] codes = new String[n];
+		for(int id = 0; id < n; id++)
+		    {
+			String code = in.readUTF();
+			if(code.length() > 0) { codes[id] = code; }
+		    }
+		int[] times = new int[n * n];
+		for(int i = 0; i < times.length; i++)
+		    { times[i] = in.readInt(); }
+		return new TravelTimeMatrix(n, clockTime, codes, times);
+	    }
+	finally
+	    { in.close(); }
+    }
+}
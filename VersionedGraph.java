@@ -0,0 +1,216 @@
+/******************************************************************************
+VersionedGraph.java
+
+A VersionedGraph lets the flight schedule be changed while other threads
+are answering queries on it. Readers call getSnapshot() and get the most
+recently published GraphSnapshot, which never changes, so they need no
+locks and never see a half-made change. Writers call addCity(),
+addFlight(), or apply() (for a ScheduleDelta), which change the writer's
+own copy of the Graph right away but are not seen by readers until
+publish() makes a new snapshot from them and swaps it in with one
+volatile write. A writer can therefore batch many changes into one new
+version.
+
+Making a new snapshot rebuilds only the rows of the FlightTable whose
+Cities' Flights changed, and only the arrival lists of the Cities those
+Flights go to; every other row is shared with the snapshot before.
+Readers still holding an older snapshot keep using it until their query
+is done.
+
+The Graph handed to the constructor belongs to the VersionedGraph from
+then on; everything that changes it goes through the methods here, which
+hold the VersionedGraph's lock.
+******************************************************************************/
+
+import java.util.*;
+
+public class VersionedGraph
+{
+    private final static int[] NO_ARRIVALS = new int[0];
+
+    private Graph graph;                       // the writer's copy
+    private volatile GraphSnapshot current;
+
+    // Changes made since the last publish()
+    private Set<Integer> changedRows = new HashSet<Integer>();
+    private Set<Integer> changedCities = new HashSet<Integer>();
+    private int numChanges = 0;
+
+    // Constructor
+    public VersionedGraph(Graph g)
+    {
+	graph = g;
+	current = GraphSnapshot.of(graph);
+    }
+
+    // Accessors
+    public GraphSnapshot getSnapshot()
+    { return current; }
+
+    public long getVersion()
+    { return current.getVersion(); }
+
+    public synchronized int getNumPendingChanges()
+    { return numChanges; }
+
+    /**
+       addCity: Adds a City to the writer's copy of the Graph.
+       @param newCity: the City to add
+       @return false if there's already a City with that code or name
+    */
+    public synchronized boolean addCity(City newCity)
+    {
+	if(graph.containsCityByCode(newCity.getCode()) ||
+	   graph.containsCityByName(newCity.getName()))
+	    { return false; }
+	graph.addCity(newCity);
+	changedCities.add(newCity.getId());
+	changedRows.add(newCity.getId());
+	numChanges ++;
+	return true;
+    }
+
+    /**
+       addFlight: Adds a Flight to the writer's copy of the Graph.
+       @param startCode: the code of the City the Flight leaves from
+       @param destCode: the code of the City it goes to
+       @param clockTimeDepart: the local departure time
+       @param clockTimeArrive: the local arrival time
+       @return false if either City isn't in the Graph
+    */
+    public synchronized boolean addFlight(String startCode, String destCode,
+					  int clockTimeDepart,
+					  int clockTimeArrive)
+    {
+	City start = graph.getCity(startCode);
+	City dest = graph.getCity(destCode);
+	if(start == null || dest == null) { return false; }
+	graph.addFlight(start, dest, clockTimeDepart, clockTimeArrive);
+	changedRows.add(start.getId());
+	numChanges ++;
+	return true;
+    }
+
+    /**
+       apply: Makes the changes in a ScheduleDelta to the writer's copy of
+       the Graph. Changes that can't be made are listed in the delta's
+       getErrors().
+       @param delta: the changes
+       @return the number of changes made
+    */
+    public synchronized int apply(ScheduleDelta delta)
+    {
+	int applied = delta.applyTo(graph, changedRows, changedCities);
+	numChanges += applied;
+	return applied;
+    }
+
+    /**
+       publish: Makes the changes since the last publish() visible to
+       readers as a new version.
+       @return the new snapshot, or the current one if nothing changed
+    */
+    public synchronized GraphSnapshot publish()
+    {
+	if(numChanges == 0) { return current; }
+	GraphSnapshot old = current;
+	int oldNumCities = old.getNumCities();
+	int n = graph.getNumIds();
+
+	// New ids can be written past the end of the old version's part of
+	// the City array without a copy, but a City retired (or added back)
+	// under an old id changes a slot that old readers can see.
+	City[] cities = old.getCityArray();
+	boolean reusedIds = false;
+	for(Integer id : changedCities)
+	    {
+		if(id.intValue() < oldNumCities) { reusedIds = true; }
+	    }
+	if(reusedIds)
+	    { cities = Arrays.copyOf(cities, Math.max(n, cities.length)); }
+	else if(cities.length < n)
+	    { cities = Arrays.copyOf(cities, Math.max(n, 2 * cities.length)); }
+	for(Integer id : changedCities)
+	    {
+		City city = graph.getCity(id.intValue());
+		cities[id.intValue()] = city;
+		// Names stay in the shared map after a City is retired;
+		// findCity() ignores ids with no City in its version.
+		if(city != null) { old.getIdsByName().put(city.getName(), id); }
+	    }
+
+	FlightTable oldTable = old.getTable();
+	FlightTable table = oldTable.withRows(graph, changedRows, n);
+	int[][] arrivals = rebuildArrivals(old.getArrivalsArray(), oldTable,
+					   table, n);
+
+	current = new GraphSnapshot(old.getVersion() + 1, n, cities, table,
+				    arrivals, old.getCodeIndex(),
+				    old.getIdsByName(),
+				    changedCities.isEmpty()
+				    ? old.getCityIndex() : null);
+	changedRows.clear();
+	changedCities.clear();
+	numChanges = 0;
+	return current;
+    }
+
+    /**
+       rebuildArrivals: Makes the arrivals index for the new table. Every
+       entry that came from a changed row is dropped, and the changed rows
+       are indexed again, so only the arrival lists of the Cities that
+       those rows go to (before or after the change) are copied.
+    */
+    private int[][] rebuildArrivals(int[][] oldArrivals, FlightTable oldTable,
+				    FlightTable table, int n)
+    {
+	int[][] arrivals = Arrays.copyOf(oldArrivals, n);
+	for(int id = oldArrivals.length; id < n; id++)
+	    { arrivals[id] = NO_ARRIVALS; }
+
+	Map<Integer, List<Integer>> added
+	    = new HashMap<Integer, List<Integer>>();
+	Set<Integer> dests = new HashSet<Integer>();
+	for(Integer row : changedRows)
+	    {
+		int c = row.intValue();
+		if(c < oldTable.getNumCities())
+		    {
+			for(int k = 0; k < oldTable.getDegree(c); k++)
+			    { dests.add(oldTable.getDest(c, k)); }
+		    }
+		for(int k = 0; k < table.getDegree(c); k++)
+		    {
+			Integer dest = table.getDest(c, k);
+			dests.add(dest);
+			List<Integer> list = added.get(dest);
+			if(list == null)
+			    {
+				list = new ArrayList<Integer>();
+				added.put(dest, list);
+			    }
+			list.add(c);
+			list.add(k);
+		    }
+	    }
+
+	for(Integer dest : dests)
+	    {
+		int[] oldRow = arrivals[dest.intValue()];
+		List<Integer> list = added.get(dest);
+		int[] row = new int[oldRow.length
+				    + ((list == null) ? 0 : list.size())];
+		int length = 0;
+		for(int i = 0; i < oldRow.length; i += 2)
+		    {
+			if(changedRows.contains(oldRow[i])) { continue; }
+			row[length ++] = oldRow[i];
+			row[length ++] = oldRow[i + 1];
+		    }
+		for(int i = 0; list != null && i < list.size(); i++)
+		    { row[length ++] = list.get(i).intValue(); }
+		arrivals[dest.intValue()] = Arrays.copyOf(row, length);
+	    }
+	return arrivals;
+    }
+}
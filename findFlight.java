@@ -11,20 +11,46 @@ with a list of options:
 - find all flights that go to a given city
 - add a city to the Graph
 - add a flight to the Graph
+- apply a file of schedule changes (see ScheduleDelta.java)
 - given two cities and a starting time, find a path from the first city
 to the second that will require as few stops as possible
 - given two cities and a starting time, find a path from the first city to 
 the second that will require as little time as possible.
+- given two cities and a starting time, find the best few such paths.
+- given a city, a starting time, and a number of hours, list every city
+that can be reached in that time.
 - write out the Graph to a file.
+- see an estimate of how much memory the Graph uses.
+- see how much work the searches have done and how long they took.
+
+With -batch, the program instead answers a file of queries without the
+menu and writes the results as CSV or JSON Lines (see BatchQueries.java).
+With -matrix, it instead works out the quickest travel time between every
+pair of cities and saves them (see TravelTimeMatrix.java):
+
+java findFlight airport.txt -matrix times.bin [-time 830A] [-threads n]
+
+With -index, it instead writes the schedule as an indexed file (see
+IndexedSchedule.java), which the menu can then open with -indexed, loading
+each city's flights only when a search first reaches it:
+
+java findFlight airport.txt -index airport.idx
+java findFlight airport.idx -indexed
 ******************************************************************************/
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
 import java.io.*;
 
 public class findFlight
 {
     static Scanner reader = new Scanner(System.in);
 
+    // Where parseFlight() complains about lines it can't use. Batch mode
+    // sends these to standard error, away from the results.
+    static PrintStream warnings = System.out;
+
     // The followinig are used in keeping track of which option the user
     // has selected from the main list.
     final static String LIST_CITIES = "l";
@@ -33,9 +59,15 @@ public class findFlight
     final static String GO_TO_CITY = "g";
     final static String ADD_CITY = "a";
     final static String ADD_FLIGHT = "t";
+    final static String APPLY_DELTA = "e";
     final static String FEWEST_STOPS = "s";
+    final static String FEWEST_MILES = "o";
     final static String QUICKEST = "u";
+    final static String ALTERNATIVES = "k";
+    final static String ISOCHRONE = "w";
     final static String GRAPH_TO_FILE = "v";
+    final static String MEMORY_REPORT = "m";
+    final static String QUERY_METRICS = "i";
     final static String SEE_AGAIN = "r";
     final static String QUIT = "q";
 
@@ -64,22 +96,121 @@ public class findFlight
     // miles.
     final static double SCALE_FACTOR = 4.9;
 
+    // Positions in the array filled in by parseFlight()
+    final static int FLIGHT_START = 0;
+    final static int FLIGHT_DEST = 1;
+    final static int FLIGHT_DEPART = 2;
+    final static int FLIGHT_ARRIVE = 3;
+    final static int FLIGHT_CARRIER = 4;
+    final static int FLIGHT_NUMBER = 5;
+    final static int FLIGHT_FIELDS = 6;
+
+    // Command-line options that may follow the name of the input file.
+    final static String PRUNE_OPTION = "-prune";
+    final static String EXPANDED_OPTION = "-expanded";
+    final static String OFF_HEAP_OPTION = "-offheap";
+    final static String INDEXED_OPTION = "-indexed";
+    final static String METRICS_OPTION = "-metrics";
+
+    // Options for answering a file of queries without the menu; each is
+    // followed by its value. See BatchQueries.java.
+    final static String BATCH_OPTION = "-batch";
+    final static String THREADS_OPTION = "-threads";
+    final static String FORMAT_OPTION = "-format";
+    final static String OUT_OPTION = "-out";
+    final static int MAX_THREADS = 1024;
+
+    // Options for saving a TravelTimeMatrix, which also takes -threads
+    final static String MATRIX_OPTION = "-matrix";
+    final static String TIME_OPTION = "-time";
+    final static String DEFAULT_MATRIX_TIME = "830A";
+
+    // Option for writing an IndexedSchedule, followed by the file name
+    final static String INDEX_OPTION = "-index";
+
+    // graphToFile() compresses files whose names end with this
+    final static String GZIP_SUFFIX = ".gz";
+
     public static void main(String[] args) throws IOException
     {
+	if(optionValue(args, BATCH_OPTION) != null)
+	    {
+		runBatch(args);
+		return;
+	    }
+	if(optionValue(args, MATRIX_OPTION) != null)
+	    {
+		runMatrix(args);
+		return;
+	    }
+	if(optionValue(args, INDEX_OPTION) != null)
+	    {
+		runIndex(args);
+		return;
+	    }
 	printIntroMessage();
+	if(hasOption(args, METRICS_OPTION))
+	    { QueryMetrics.enable(); }
 	String option;
-	Graph graph = initializeGraph(new Scanner(new File(args[0])));
+	Graph graph;
+	// With -offheap, the Flights go straight into an OffHeapFlightStore
+	// and the Graph holds only the Cities. Quickest-path queries are then
+	// answered by a FlightSearch over the store. With -indexed, the
+	// input file is an IndexedSchedule, whose Flights are mapped into
+	// such a store instead of read.
+	FlightSearch offHeapSearch = null;
+	if(hasOption(args, INDEXED_OPTION))
+	    {
+		graph = new Graph();
+		OffHeapFlightStore store
+		    = IndexedSchedule.open(new File(args[0]), graph);
+		offHeapSearch = new FlightSearch(store);
+		System.out.println("Mapped " + store.getNumFlights() +
+				   " flights from " + args[0] +
+				   "; they're read as searches reach them.");
+	    }
+	else if(hasOption(args, OFF_HEAP_OPTION))
+	    {
+		graph = new Graph();
+		initializeCities(new Scanner(new File(args[0])), graph);
+		OffHeapFlightStore store 
+		    = OffHeapFlightStore.load(new File(args[0]), graph);
+		offHeapSearch = new FlightSearch(store);
+		System.out.println("Loaded " + store.getNumFlights() +
+				   " flights into " + store.getOffHeapBytes() +
+				   " bytes of off-heap memory.");
+	    }
+	else
+	    { graph = initializeGraph(new Scanner(new File(args[0]))); }
+	if(hasOption(args, PRUNE_OPTION))
+	    {
+		int removed = graph.pruneDominatedFlights();
+		System.out.println("Removed " + removed + 
+				   " dominated flights from the graph.");
+	    }
+	// With -expanded, quickest-path queries are answered by a
+	// TimeExpandedGraph, which is rebuilt after the Graph changes.
+	boolean useExpanded = hasOption(args, EXPANDED_OPTION);
+	TimeExpandedGraph expanded = null;
+	// The queries answered through Itineraries read a GraphSnapshot,
+	// which is likewise made when first needed and again after a change.
+	GraphSnapshot snapshot = null;
 
 	while(!( (option = getUserOption()).equalsIgnoreCase(QUIT) ))
 	    {
 		if(option.equalsIgnoreCase(LIST_CITIES))
 		    {
 			System.out.println("\nHere they are:");
-			System.out.println(graph);
+			Writer out = new BufferedWriter
+			    (new OutputStreamWriter(System.out), 1 << 16);
+			graph.writeTo(out, false);
+			out.write('\n');
+			out.flush();
 		    }
 		else if(option.equalsIgnoreCase(DIRECT_FLIGHT))
 		    {
-			checkIfDirectFlight(graph);
+			checkIfDirectFlight(graph, (offHeapSearch == null)
+					    ? null : offHeapSearch.getStore());
 		    }
 		else if(option.equalsIgnoreCase(DEPART_FROM_CITY))
 		    {
@@ -104,9 +235,19 @@ public class findFlight
 						   "there are no flights.");
 			    }
 		    }
+		else if(offHeapSearch != null &&
+			(option.equalsIgnoreCase(ADD_CITY) ||
+			 option.equalsIgnoreCase(ADD_FLIGHT) ||
+			 option.equalsIgnoreCase(APPLY_DELTA)))
+		    {
+			System.out.println("Sorry! The off-heap flight store " +
+					   "can't be changed.");
+		    }
 		else if(option.equalsIgnoreCase(ADD_CITY))
 		    {
 			addACity(graph);
+			expanded = null;
+			snapshot = null;
 		    }
 		else if(option.equalsIgnoreCase(ADD_FLIGHT))
 		    {
@@ -118,17 +259,47 @@ public class findFlight
 			int arriveTime = askUserForTime(SPECIFY_ARRIVE_TIME);
 			graph.addFlight
 			    (depart, arrive, departTime, arriveTime);
+			expanded = null;
+			snapshot = null;
 			System.out.println("Your flight has been added.");
 		    }
+		else if(option.equalsIgnoreCase(APPLY_DELTA))
+		    {
+			applyDeltaFile(graph);
+			expanded = null;
+			snapshot = null;
+		    }
 		else if(option.equalsIgnoreCase(FEWEST_STOPS))
 		    {
 			City start = askUserForCity(graph, 1);
 			if(start == null) { continue; }
 			City finish = askUserForCity(graph, 2);
 			if(finish == null) { continue; }
-			graph.fewestCities(start);
-			graph.minimizeTimeGivenPath
-			    (start, finish, askUserForTime(START_TRIP));
+			if(offHeapSearch != null)
+			    {
+				offHeapSearch.printFewestStopsPath
+				    (graph, start.getId(),
+				     askUserForTime(START_TRIP),
+				     finish.getId());
+			    }
+			else
+			    {
+				graph.fewestCities(start);
+				graph.minimizeTimeGivenPath
+				    (start, finish, askUserForTime(START_TRIP));
+			    }
+		    }
+		else if(option.equalsIgnoreCase(FEWEST_MILES))
+		    {
+			City start = askUserForCity(graph, 1);
+			if(start == null) { continue; }
+			City finish = askUserForCity(graph, 2);
+			if(finish == null) { continue; }
+			int startTime = askUserForTime(START_TRIP);
+			if(snapshot == null)
+			    { snapshot = GraphSnapshot.of(graph); }
+			printShortestRoute(snapshot, offHeapSearch, start,
+					   finish, startTime);
 		    }
 		else if(option.equalsIgnoreCase(QUICKEST))
 		    {
@@ -136,13 +307,79 @@ public class findFlight
 			if(start == null) { continue; }
 			City finish = askUserForCity(graph, 2);
 			if(finish == null) { continue; }
-			graph.dijkstra
-			    (start, askUserForTime(START_TRIP), finish);
+			if(offHeapSearch != null)
+			    {
+				offHeapSearch.printQuickestPath
+				    (graph, start.getId(),
+				     askUserForTime(START_TRIP),
+				     finish.getId());
+			    }
+			else if(useExpanded)
+			    {
+				if(expanded == null)
+				    { expanded = new TimeExpandedGraph(graph); }
+				expanded.printQuickestPath
+				    (start, askUserForTime(START_TRIP), finish);
+			    }
+			else
+			    {
+				graph.dijkstra
+				    (start, askUserForTime(START_TRIP), finish);
+			    }
+		    }
+		else if(option.equalsIgnoreCase(ALTERNATIVES))
+		    {
+			City start = askUserForCity(graph, 1);
+			if(start == null) { continue; }
+			City finish = askUserForCity(graph, 2);
+			if(finish == null) { continue; }
+			int startTime = askUserForTime(START_TRIP);
+			if(snapshot == null)
+			    { snapshot = GraphSnapshot.of(graph); }
+			printAlternatives(snapshot, offHeapSearch, start,
+					  finish, startTime,
+					  askUserForNumberOfPaths());
+		    }
+		else if(option.equalsIgnoreCase(ISOCHRONE))
+		    {
+			City start = askUserForCity(graph, 0);
+			if(start == null) { continue; }
+			int startTime = askUserForTime(START_TRIP);
+			if(snapshot == null)
+			    { snapshot = GraphSnapshot.of(graph); }
+			printIsochrone(snapshot, offHeapSearch, start,
+				       startTime, askUserForHours());
 		    }
 		else if(option.equalsIgnoreCase(GRAPH_TO_FILE))
 		    {
 			graphToFile(graph);
 		    }
+		else if(option.equalsIgnoreCase(MEMORY_REPORT))
+		    {
+			MemoryFootprint footprint = graph.getFootprint();
+			if(expanded != null)
+			    { expanded.addToFootprint(footprint); }
+			if(offHeapSearch != null)
+			    {
+				((OffHeapFlightStore)offHeapSearch.getStore())
+				    .addToFootprint(footprint);
+				offHeapSearch.addToFootprint(footprint);
+			    }
+			System.out.println("\nEstimated memory use:");
+			System.out.print(footprint);
+		    }
+		else if(option.equalsIgnoreCase(QUERY_METRICS))
+		    {
+			if(!QueryMetrics.enabled)
+			    {
+				System.out.println("Query metrics are off. " +
+						   "Start the program with " +
+						   METRICS_OPTION + 
+						   " to turn them on.");
+			    }
+			else
+			    { System.out.print("\n" + QueryMetrics.dumpAll()); }
+		    }
 		else if(option.equalsIgnoreCase(SEE_AGAIN))
 		    {
 			// do nothing - let the menu repeat
@@ -152,6 +389,160 @@ public class findFlight
 	System.out.println("\nBye.\n");
     }
 
+    /**
+       hasOption: Checks whether a command-line option was given after the
+       name of the input file.
+       @param args: the command-line arguments
+       @param option: the option to look for (e.g., "-prune")
+       @return true if the option is present
+    */
+    public static boolean hasOption(String[] args, String option)
+    {
+	for(int i = 1; i < args.length; i++)
+	    {
+		if(args[i].equalsIgnoreCase(option))
+		    { return true; }
+	    }
+	return false;
+    }
+
+    /**
+       optionValue: Finds the value given after a command-line option.
+       @param args: the command-line arguments
+       @param option: the option to look for (e.g., "-batch")
+       @return the argument after the option, or null if the option isn't
+       there
+    */
+    public static String optionValue(String[] args, String option)
+    {
+	for(int i = 1; i + 1 < args.length; i++)
+	    {
+		if(args[i].equalsIgnoreCase(option))
+		    { return args[i + 1]; }
+	    }
+	return null;
+    }
+
+    /**
+       runBatch: Answers a file of queries without the menu, for the -batch
+       option.
+       @param args: the command-line arguments
+    */
+    public static void runBatch(String[] args) throws IOException
+    {
+	String batchFile = optionValue(args, BATCH_OPTION);
+	String outFile = optionValue(args, OUT_OPTION);
+	String format = optionValue(args, FORMAT_OPTION);
+	if(format == null) { format = BatchQueries.CSV; }
+	if(!format.equals(BatchQueries.CSV)
+	   && !format.equals(BatchQueries.JSON_LINES))
+	    {
+		System.out.println("Oops. The format has to be " +
+				   BatchQueries.CSV + " or " +
+				   BatchQueries.JSON_LINES + ".");
+		return;
+	    }
+	int numThreads = threadsOption(args);
+	if(numThreads == 0) { return; }
+
+	warnings = System.err;
+	Graph graph = initializeGraph(new Scanner(new File(args[0])));
+	if(hasOption(args, PRUNE_OPTION)) { graph.pruneDominatedFlights(); }
+	if(hasOption(args, METRICS_OPTION)) { QueryMetrics.enable(); }
+
+	BufferedReader in = batchFile.equals("-")
+	    ? new BufferedReader(new InputStreamReader(System.in))
+	    : new BufferedReader(new FileReader(batchFile));
+	Writer out = (outFile == null)
+	    ? new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16)
+	    : new BufferedWriter(new FileWriter(outFile), 1 << 16);
+	// Keep the totals off standard output when the results go there.
+	PrintStream report = (outFile == null) ? System.err : System.out;
+
+	new BatchQueries(new QueryEngine(graph, numThreads), numThreads,
+			 format)
+	    .run(in, out, report);
+	in.close();
+	if(outFile != null) { out.close(); }
+	if(QueryMetrics.enabled) { report.print(QueryMetrics.dumpAll()); }
+    }
+
+    /**
+       runMatrix: Works out the quickest travel times between every pair of
+       Cities and saves them, for the -matrix option.
+       @param args: the command-line arguments
+    */
+    public static void runMatrix(String[] args) throws IOException
+    {
+	File matrixFile = new File(optionValue(args, MATRIX_OPTION));
+	String time = optionValue(args, TIME_OPTION);
+	if(time == null) { time = DEFAULT_MATRIX_TIME; }
+	if(!isClockTime(time))
+	    {
+		System.out.println("Oops. The time has to be written like " +
+				   DEFAULT_MATRIX_TIME + ".");
+		return;
+	    }
+	int numThreads = threadsOption(args);
+	if(numThreads == 0) { return; }
+
+	Graph graph = initializeGraph(new Scanner(new File(args[0])));
+	if(hasOption(args, PRUNE_OPTION)) { graph.pruneDominatedFlights(); }
+	if(hasOption(args, METRICS_OPTION)) { QueryMetrics.enable(); }
+
+	long begin = System.nanoTime();
+	ForkJoinPool pool = new ForkJoinPool(numThreads);
+	TravelTimeMatrix matrix = TravelTimeMatrix.compute
+	    (GraphSnapshot.of(graph), processTimeString(time), pool);
+	pool.shutdown();
+	double seconds = (System.nanoTime() - begin) / 1e9;
+	matrix.save(matrixFile);
+	System.out.println(matrix.getNumCities() + " x " +
+			   matrix.getNumCities() + " travel times in " +
+			   String.format("%.3f", seconds) + " s on " +
+			   numThreads + ((numThreads == 1) ? " thread" :
+					 " threads") + ", saved to " +
+			   matrixFile + ".");
+	if(QueryMetrics.enabled) { System.out.print(QueryMetrics.dumpAll()); }
+    }
+
+    /**
+       runIndex: Reads the input file and writes it as an IndexedSchedule,
+       for the -index option.
+       @param args: the command-line arguments
+    */
+    public static void runIndex(String[] args) throws IOException
+    {
+	File indexFile = new File(optionValue(args, INDEX_OPTION));
+	Graph graph = initializeGraph(new Scanner(new File(args[0])));
+	if(hasOption(args, PRUNE_OPTION)) { graph.pruneDominatedFlights(); }
+	IndexedSchedule.write(graph, indexFile);
+	System.out.println("Wrote " + graph.getSize() + " cities and their " +
+			   "flights to " + indexFile + " (" +
+			   indexFile.length() + " bytes).");
+    }
+
+    /**
+       threadsOption: The number of threads asked for with -threads, or
+       else one per processor.
+       @return the number, or 0 (after saying why) if it isn't a whole
+       number from 1 to MAX_THREADS
+    */
+    static int threadsOption(String[] args)
+    {
+	String threads = optionValue(args, THREADS_OPTION);
+	if(threads == null)
+	    { return Runtime.getRuntime().availableProcessors(); }
+	if(!threads.matches("\\d{1,4}") || Integer.parseInt(threads) < 1
+	   || Integer.parseInt(threads) > MAX_THREADS)
+	    {
+		System.out.println("Oops. The number of threads has to be " +
+				   "from 1 to " + MAX_THREADS + ".");
+		return 0;
+	    }
+	return Integer.parseInt(threads);
+    }
+
     /**
        printIntroMessage: Tells the user about the program.
     */
@@ -172,6 +563,29 @@ public class findFlight
     public static Graph initializeGraph(Scanner fileIn)
     {
 	Graph graph = new Graph();
+	String currLine = initializeCities(fileIn, graph);
+
+	// Finish with the rest of the input file
+	processFlight(currLine, graph);
+	while(fileIn.hasNext())
+	    {
+		currLine = fileIn.nextLine();
+		processFlight(currLine, graph);
+	    }
+
+	return graph;
+    }
+
+    /**
+       initializeCities: Reads the first part of the input file, up to the
+       first line of the flight schedule, adding the Cities to the Graph.
+       @param fileIn: the Scanner for the input file
+       @param graph: the Graph to add the Cities to, or null if the Cities
+       should just be skipped over (e.g., on a second pass through the file)
+       @return the first line of the flight schedule
+    */
+    public static String initializeCities(Scanner fileIn, Graph graph)
+    {
 	String currLine;
 	
 	// Skip introductory material, i.e., material starting with "#"
@@ -181,12 +595,13 @@ public class findFlight
 	    }
 
 	// Go until the "!" delimiter
-	addCityToGraph(currLine, graph); /* Make sure to add the first good
-					    line before getting a new one 
-					    below. */
+	if(graph != null)
+	    { addCityToGraph(currLine, graph); } /* Make sure to add the first 
+						    good line before getting a
+						    new one below. */
 	while((currLine = fileIn.nextLine()).charAt(0) != '!')
 	    {
-		addCityToGraph(currLine, graph);
+		if(graph != null) { addCityToGraph(currLine, graph); }
 	    }
 	
 	// I'm not going to read in anything from the list of which cities
@@ -206,15 +621,7 @@ public class findFlight
 		// skip ahead
 	    }
 
-	// Finish with the rest of the input file
-	processFlight(currLine, graph);
-	while(fileIn.hasNext())
-	    {
-		currLine = fileIn.nextLine();
-		processFlight(currLine, graph);
-	    }
-
-	return graph;
+	return currLine;
     }
 
     /**
@@ -224,6 +631,15 @@ public class findFlight
        @param graph: the graph into which to insert the City objects.
     */
     public static void addCityToGraph(String currLine, Graph graph)
+    { graph.addCity(parseCity(currLine)); }
+
+    /**
+       parseCity: Makes a City from a line of the first part of the input
+       file (code, difference from GMT, x, y, and name).
+       @param currLine: the line
+       @return the City
+    */
+    public static City parseCity(String currLine)
     {
 	StringTokenizer st = new StringTokenizer(currLine);
 	String code;
@@ -241,7 +657,7 @@ public class findFlight
 	    }
 	cityName = cityName.trim();
 	
-	graph.addCity(new City(cityName, code, diffGMT, xCoord, yCoord));
+	return new City(cityName, code, diffGMT, xCoord, yCoord);
     }
 
     /**
@@ -252,56 +668,143 @@ public class findFlight
     */
     public static void processFlight(String currLine, Graph graph)
     {
-	String startCityCode, destCityCode;
-	String departTimeString, arriveTimeString;
-	StringTokenizer st = new StringTokenizer(currLine);
-	
-	String airline;
-	// The following code passes over unused lines for Airline and 
-	// Flight number. The trick is that sometimes in the input file,
-	// both of these fields appear together (e.g., "CO1594") and sometimes
-	// they appear apart (e.g., "AA 748") depending on how many digits
-	// the number has. In order to discriminate between these cases,
-	// I look at the length of the first String token on the line. Since
-	// the Airline is always two characters long, I'll know that this
-	// is an instance of merged Airline and Flight codes if the length is
-	// more than two characters. In that case, I won't read a second 
-	// String token to be passed over.
-	airline = st.nextToken();
-	if(airline.length() <= 2)
-	    { st.nextToken(); } // read another unused token
+	int[] fields = new int[FLIGHT_FIELDS];
+	if(parseFlight(currLine, graph, fields))
+	    {
+		graph.addFlight(graph.getCity(fields[FLIGHT_START]),
+				graph.getCity(fields[FLIGHT_DEST]),
+				fields[FLIGHT_DEPART], fields[FLIGHT_ARRIVE],
+				fields[FLIGHT_CARRIER], fields[FLIGHT_NUMBER]);
+	    }
+    }
 
-	startCityCode = st.nextToken();
-	departTimeString = st.nextToken();
-	destCityCode = st.nextToken();
-	arriveTimeString = st.nextToken();
+    /**
+       parseFlight: Reads the data for one Flight from a line of input
+       without creating the Flight. This lets other flight stores (such as
+       OffHeapFlightStore) load the schedule without building Flight
+       objects.
+       @param currLine: the current line of input
+       @param graph: the Graph that stores the City objects
+       @param fields: an array of length FLIGHT_FIELDS that gets the ids of
+       the two Cities, the departure and arrival clock times, the
+       CarrierIndex id of the airline, and the flight number
+       @return true if the line named two Cities that are in the Graph
+    */
+    public static boolean parseFlight(String currLine, Graph graph,
+				      int[] fields)
+    {
+	String[] flightFields = nextFlightFields(new StringTokenizer(currLine));
+	String startCityCode = flightFields[FLIGHT_START];
+	String destCityCode = flightFields[FLIGHT_DEST];
+	String departTimeString = flightFields[FLIGHT_DEPART];
+	String arriveTimeString = flightFields[FLIGHT_ARRIVE];
 
 	int departClockTime = processTimeString(departTimeString);
 	int arriveClockTime = processTimeString(arriveTimeString);
-	
-	City startCity, destCity;
+
 	// Check that both Cities are already in the Graph. If not, print an
-	// error. If so, get the City objects.
-	if(graph.containsCityByCode(startCityCode))
-	    { startCity = graph.getCity(startCityCode); }
-	else
+	// error. If so, record their ids. Each code is looked up only
+	// once, through the Graph's AirportCodeIndex.
+	int startCityId = graph.getCityId(startCityCode);
+	int destCityId = graph.getCityId(destCityCode);
+	if(startCityId == AirportCodeIndex.NO_ID)
 	    {
-		System.out.println("Oops. The graph doesn't contain a city " +
-				   " with code " + startCityCode + ".");
-		return;
+		warnings.println("Oops. The graph doesn't contain a city " +
+				 " with code " + startCityCode + ".");
+		return false;
 	    }
 	
-	if(graph.containsCityByCode(destCityCode))
-	    { destCity = graph.getCity(destCityCode); }
-	else
+	if(destCityId == AirportCodeIndex.NO_ID)
 	    {
-		System.out.println("Oops. The graph doesn't contain a city " +
+		warnings.println("Oops. The graph doesn't contain a city " +
 				 " with code " + destCityCode + ".");
-		return;
+		return false;
+	    }
+
+	fields[FLIGHT_START] = startCityId;
+	fields[FLIGHT_DEST] = destCityId;
+	fields[FLIGHT_DEPART] = departClockTime;
+	fields[FLIGHT_ARRIVE] = arriveClockTime;
+	fields[FLIGHT_CARRIER]
+	    = CarrierIndex.intern(flightFields[FLIGHT_CARRIER]);
+	fields[FLIGHT_NUMBER]
+	    = processFlightNumber(flightFields[FLIGHT_NUMBER]);
+	return true;
+    }
+
+    /**
+       processFlightNumber: Reads a flight number, such as the "748" of
+       "AA 748".
+       @param number: the digits
+       @return the number, or 0 if it isn't all digits or is more than
+       Flight.MAX_FLIGHT_NUMBER
+    */
+    public static int processFlightNumber(String number)
+    {
+	int value = 0;
+	for(int i = 0; i < number.length(); i++)
+	    {
+		char c = number.charAt(i);
+		if(c < '0' || c > '9') { return 0; }
+		value = value * 10 + (c - '0');
+		if(value > Flight.MAX_FLIGHT_NUMBER) { return 0; }
+	    }
+	return value;
+    }
+
+    /**
+       nextFlightFields: Reads the fields of a flight schedule line that the
+       program uses, leaving the tokenizer after the arrival time.
+       @param st: the tokenizer, at the start of the line
+       @return the start city code, destination code, departure time,
+       arrival time, airline code, and flight number, at FLIGHT_START,
+       FLIGHT_DEST, FLIGHT_DEPART, FLIGHT_ARRIVE, FLIGHT_CARRIER, and
+       FLIGHT_NUMBER
+    */
+    public static String[] nextFlightFields(StringTokenizer st)
+    {
+	String[] flightFields = new String[FLIGHT_FIELDS];
+	String airline;
+	// The following code reads the Airline and Flight number. The
+	// trick is that sometimes in the input file, both of these fields
+	// appear together (e.g., "CO1594") and sometimes they appear apart
+	// (e.g., "AA 748") depending on how many digits the number has. In
+	// order to discriminate between these cases, I look at the length
+	// of the first String token on the line. Since the Airline is
+	// always two characters long, I'll know that this is an instance of
+	// merged Airline and Flight codes if the length is more than two
+	// characters. In that case, the number is the rest of the token,
+	// and I won't read a second String token for it.
+	airline = st.nextToken();
+	if(airline.length() <= 2)
+	    {
+		flightFields[FLIGHT_CARRIER] = airline;
+		flightFields[FLIGHT_NUMBER] = st.nextToken();
+	    }
+	else
+	    {
+		flightFields[FLIGHT_CARRIER] = airline.substring(0, 2);
+		flightFields[FLIGHT_NUMBER] = airline.substring(2);
 	    }
 
-	graph.addFlight(startCity, destCity, 
-			departClockTime, arriveClockTime);
+	flightFields[FLIGHT_START] = st.nextToken();
+	flightFields[FLIGHT_DEPART] = st.nextToken();
+	flightFields[FLIGHT_DEST] = st.nextToken();
+	flightFields[FLIGHT_ARRIVE] = st.nextToken();
+	return flightFields;
+    }
+
+    /**
+       isClockTime: Checks that a String is a time processTimeString() can
+       read, like 830A or 1215P, and that it is a real time of day: an
+       hour under 24 and minutes under 60, so that 999P is turned away.
+    */
+    public static boolean isClockTime(String time)
+    {
+	if(time == null || !time.matches("\\d{1,4}[AaPp]"))
+	    { return false; }
+	int clockTime = processTimeString(time);
+	return clockTime >= 0 && clockTime < 2400 && clockTime % 100 < 60;
     }
 
     /**
@@ -349,14 +852,27 @@ public class findFlight
 	     " to add a city to the Graph\n" +
 	     "\t" + ADD_FLIGHT +
 	     " to add a flight\n" +
+	     "\t" + APPLY_DELTA +
+	     " to apply a file of schedule changes\n" +
 	     "\t" + FEWEST_STOPS +
 	     " to find a path from one city to another that will require\n" +
 	     "\t  as few stops as possible\n" +
+	     "\t" + FEWEST_MILES +
+	     " to find a path from one city to another that will require\n" +
+	     "\t  as few miles as possible\n" +
 	     "\t" + QUICKEST +
 	     " to find a path from one city to another that will require \n" +
 	     "\t  as little time as possible\n" +
+	     "\t" + ALTERNATIVES +
+	     " to see the best few such paths\n" +
+	     "\t" + ISOCHRONE +
+	     " to see where you can get from a city in a given time\n" +
 	     "\t" + GRAPH_TO_FILE +
 	     " to write the graph out to a file\n" +
+	     "\t" + MEMORY_REPORT +
+	     " to see how much memory the graph uses\n" +
+	     "\t" + QUERY_METRICS +
+	     " to see query statistics\n" +
 	     "\t" + SEE_AGAIN +
 	     " to see this menu again\n" +
 	     "\t" + QUIT +
@@ -371,9 +887,15 @@ public class findFlight
 	     !(choice.equalsIgnoreCase(GO_TO_CITY)) &&
 	     !(choice.equalsIgnoreCase(ADD_CITY)) &&
 	     !(choice.equalsIgnoreCase(ADD_FLIGHT)) &&
+	     !(choice.equalsIgnoreCase(APPLY_DELTA)) &&
 	     !(choice.equalsIgnoreCase(FEWEST_STOPS)) &&
+	     !(choice.equalsIgnoreCase(FEWEST_MILES)) &&
 	     !(choice.equalsIgnoreCase(QUICKEST)) &&
+	     !(choice.equalsIgnoreCase(ALTERNATIVES)) &&
+	     !(choice.equalsIgnoreCase(ISOCHRONE)) &&
 	     !(choice.equalsIgnoreCase(GRAPH_TO_FILE)) &&
+	     !(choice.equalsIgnoreCase(MEMORY_REPORT)) &&
+	     !(choice.equalsIgnoreCase(QUERY_METRICS)) &&
 	     !(choice.equalsIgnoreCase(SEE_AGAIN)) &&
 	     !(choice.equalsIgnoreCase(QUIT)))
 	    {
@@ -382,9 +904,14 @@ public class findFlight
 				   LIST_CITIES + ", " +
 				   DIRECT_FLIGHT + ", " + DEPART_FROM_CITY +
 				   ", " + GO_TO_CITY + ", " + ADD_CITY +
-				   ", " + ADD_FLIGHT + ", " + FEWEST_STOPS +
-				   ", " + QUICKEST + ", " + SEE_AGAIN +
+				   ", " + ADD_FLIGHT + ", " + APPLY_DELTA +
+				   ", " + FEWEST_STOPS + ", " + FEWEST_MILES +
+				   ", " + QUICKEST + ", " + ALTERNATIVES +
+				   ", " + ISOCHRONE +
+				   ", " + SEE_AGAIN +
 				   ", " + GRAPH_TO_FILE +
+				   ", " + MEMORY_REPORT +
+				   ", " + QUERY_METRICS +
 				   ", " + QUIT + ". Try again:");
 		choice = reader.nextLine();
 	    }
@@ -398,8 +925,10 @@ public class findFlight
        it turns out they do, this method then asks the user if she wants to
        see all of the flights from the first city to the second.
        @param graph: the Graph that stores the Cities and Flights
+       @param store: the off-heap store that holds the Flights, or null
+       if they're in the Graph
     */
-    public static void checkIfDirectFlight(Graph graph)
+    public static void checkIfDirectFlight(Graph graph, FlightStore store)
     {
 	City firstCity = askUserForCity(graph, 1);
 	if(firstCity == null)
@@ -408,7 +937,22 @@ public class findFlight
 	if(secondCity == null)
 	    { return; }
 
-	if(!graph.checkEdgeBetweenCities(firstCity, secondCity.getCode()))
+	// With an off-heap store, the Flights are in the store's row for
+	// firstCity rather than in the Graph.
+	int[] flights = null;
+	boolean direct;
+	if(store == null)
+	    {
+		direct = graph.checkEdgeBetweenCities
+		    (firstCity, secondCity.getCode());
+	    }
+	else
+	    {
+		flights = directFlights(store, firstCity.getId(),
+					secondCity.getId());
+		direct = (flights.length > 0);
+	    }
+	if(!direct)
 	    { System.out.println("Nope, no direct flight."); }
 	else
 	    {
@@ -416,14 +960,63 @@ public class findFlight
 		    ("Yes, there is at least one direct flight. Do you " +
 		     "want to see all\n" + 
 		     "flights from the first city to the second?");
-		if(userSaysYes())
+		if(!userSaysYes())
+		    { return; }
+		if(store == null)
 		    {
 			firstCity.printFlightsWithOtherCity
 			    (secondCity.getCode());
+			return;
+		    }
+		for(int i = 0; i < flights.length; i++)
+		    {
+			System.out.println(flightToString
+					   (store, firstCity, secondCity,
+					    flights[i]));
 		    }
 	    }
     }
 
+    /**
+       directFlights: Lists the Flights in a FlightStore from one City
+       straight to another.
+       @return the k of each Flight in the start City's row
+    */
+    private static int[] directFlights(FlightStore store, int start,
+				       int finish)
+    {
+	int degree = store.getDegree(start);
+	int[] flights = new int[degree];
+	int count = 0;
+	for(int k = 0; k < degree; k++)
+	    {
+		if(store.getDest(start, k) == finish) { flights[count ++] = k; }
+	    }
+	return Arrays.copyOf(flights, count);
+    }
+
+    /**
+       flightToString: Describes a Flight in a FlightStore the way
+       Flight.toString() does.
+       @param k: the Flight's place in from's row
+    */
+    private static String flightToString(FlightStore store, City from,
+					 City to, int k)
+    {
+	int id = from.getId();
+	String depart = Graph.minuteTimeToClockTime
+	    (store.getTimeDepart(id, k) + from.getOffsetMinutes());
+	String arrive = Graph.minuteTimeToClockTime
+	    (store.getTimeArrive(id, k) + to.getOffsetMinutes());
+	int carrier = store.getCarrier(id, k);
+	String name = (carrier == CarrierIndex.UNKNOWN) ? ""
+	    : CarrierIndex.codeOf(carrier) + " " +
+	    store.getFlightNumber(id, k) + " ";
+	return name + "to " + to.getName() +
+	    "; " + depart + " to " + arrive + "; takes " +
+	    Graph.minuteTimeToHoursAndMinutes(store.getFlightTime(id, k));
+    }
+
     /**
        askUserForCity: Prompts the user to enter either the name or the code
        for a City in the Graph. If the City isn't in the Graph, prompts the
@@ -579,6 +1172,160 @@ public class findFlight
     }
 
 
+    /**
+       askUserForNumberOfPaths: Asks how many alternative paths to show.
+       @return a number from 1 to AlternativeSearch.MAX_ALTERNATIVES
+    */
+    public static int askUserForNumberOfPaths()
+    {
+	System.out.println("How many paths do you want to see?");
+	int k = reader.nextInt();
+	while(k < 1 || k > AlternativeSearch.MAX_ALTERNATIVES)
+	    {
+		System.out.println("Hey, the number of paths has to be " +
+				   "between 1 and " +
+				   AlternativeSearch.MAX_ALTERNATIVES +
+				   ". Try again:");
+		k = reader.nextInt();
+	    }
+	reader.nextLine(); // get rid of the rest of the line
+	return k;
+    }
+
+    /**
+       printAlternatives: Prints the best few paths from one City to
+       another, quickest first, each taking different Flights.
+       @param snapshot: a snapshot of the Graph as it is now
+       @param offHeapSearch: the search over the off-heap store, or null
+       to search the Graph's own Flights
+       @param start: where the traveller begins
+       @param finish: where the traveller wants to go
+       @param startTime: the local clock time of the start
+       @param k: the most paths to print
+    */
+    public static void printAlternatives(GraphSnapshot snapshot,
+					 FlightSearch offHeapSearch,
+					 City start, City finish,
+					 int startTime, int k)
+    {
+	FlightSearch search = (offHeapSearch != null) ? offHeapSearch
+	    : new FlightSearch(snapshot.getTable());
+	List<Itinerary> paths = new AlternativeSearch(search, snapshot).find
+	    (start.getId(),
+	     Graph.clockTimeToGMTMinuteTime(startTime, start),
+	     finish.getId(), k);
+	if(paths.isEmpty())
+	    {
+		System.out.println("Sorry! There is no such path.");
+		return;
+	    }
+	for(int i = 0; i < paths.size(); i++)
+	    {
+		System.out.println("\nPath " + (i + 1) + " of " +
+				   paths.size() + ":");
+		paths.get(i).print();
+	    }
+    }
+
+    /**
+       printShortestRoute: Prints the path from one City to another with
+       the fewest miles flown, flown as quickly as it can be, followed by
+       the total cost and distance.
+       @param snapshot: a snapshot of the Graph as it is now
+       @param offHeapSearch: the search over the off-heap store, or null
+       to search the Graph's own Flights
+       @param start: where the traveller begins
+       @param finish: where the traveller wants to go
+       @param startTime: the local clock time of the start
+    */
+    public static void printShortestRoute(GraphSnapshot snapshot,
+					  FlightSearch offHeapSearch,
+					  City start, City finish,
+					  int startTime)
+    {
+	FlightSearch search = (offHeapSearch != null) ? offHeapSearch
+	    : new FlightSearch(snapshot.getTable());
+	search.findShortestRoute(start.getId(), finish.getId());
+	int[] path = search.getPath(finish.getId());
+	if(path == null)
+	    {
+		System.out.println("Sorry! There is no such path.");
+		return;
+	    }
+	search.searchAlongPath(path, Graph.clockTimeToGMTMinuteTime
+			       (startTime, start));
+	Itinerary itinerary
+	    = Itinerary.fromSearch(search, finish.getId(), snapshot);
+	System.out.println("\nHere's the path with the fewest miles:");
+	itinerary.print();
+	System.out.println("Total distance = " + itinerary.getTotalMiles() +
+			   " miles");
+    }
+
+    /**
+       askUserForHours: Asks how many hours a trip may take.
+       @return a number of hours from 1 to a week
+    */
+    public static int askUserForHours()
+    {
+	int maxHours = 7 * 24;
+	System.out.println("How many hours can the trip take?");
+	int hours = reader.nextInt();
+	while(hours < 1 || hours > maxHours)
+	    {
+		System.out.println("Hey, the number of hours has to be " +
+				   "between 1 and " + maxHours +
+				   ". Try again:");
+		hours = reader.nextInt();
+	    }
+	reader.nextLine(); // get rid of the rest of the line
+	return hours;
+    }
+
+    /**
+       printIsochrone: Lists every City that can be reached from a City
+       within some hours, quickest first. The lines are written as the
+       search settled the Cities, so nothing is sorted and no path is
+       built.
+       @param snapshot: a snapshot of the Graph as it is now
+       @param offHeapSearch: the search over the off-heap store, or null
+       to search the Graph's own Flights
+       @param start: where the traveller begins
+       @param startTime: the local clock time of the start
+       @param hours: how long the trip may take
+    */
+    public static void printIsochrone(GraphSnapshot snapshot,
+				      FlightSearch offHeapSearch,
+				      City start, int startTime, int hours)
+    {
+	FlightSearch search = (offHeapSearch != null) ? offHeapSearch
+	    : new FlightSearch(snapshot.getTable());
+	search.searchWithin(start.getId(), Graph.clockTimeToGMTMinuteTime
+			    (startTime, start), 60 * hours);
+	System.out.println("\nFrom " + start.getName() + " within " +
+			   hours + " hours you can reach:");
+	try
+	    {
+		Writer out = new BufferedWriter
+		    (new OutputStreamWriter(System.out), 1 << 16);
+		for(int i = 1; i < search.getNumSettled(); i++)
+		    {
+			int id = search.getSettledCity(i);
+			City city = snapshot.getCity(id);
+			out.write(city.getName() + ", arriving at " +
+				  Graph.minuteTimeToClockTime
+				  (search.getTimeArriveThisCity(id) +
+				   city.getOffsetMinutes()) + " (" +
+				  Graph.minuteTimeToHoursAndMinutes
+				  (search.getCostFromStart(id)) + ")" +
+				  System.lineSeparator());
+		    }
+		out.flush();
+	    } catch(IOException e) { e.printStackTrace(); }
+	if(search.getNumSettled() <= 1)
+	    { System.out.println("Sorry! There's nowhere you can get to."); }
+    }
+
     /**
        addACity: This method prompts the user to enter information about
        a City to add, and then adds the City.
@@ -734,36 +1481,73 @@ public class findFlight
 	return true;
     }
 
+    /**
+       applyDeltaFile: Asks for the name of a file of schedule changes and
+       makes them to the Graph, telling the user about any line that
+       couldn't be applied.
+       @param graph: the Graph to change
+    */
+    public static void applyDeltaFile(Graph graph)
+    {
+	System.out.println("What is the name of the file of changes?");
+	String fileName = reader.nextLine();
+	ScheduleDelta delta;
+	try
+	    {
+		BufferedReader in
+		    = new BufferedReader(new FileReader(fileName));
+		try { delta = ScheduleDelta.read(in); }
+		finally { in.close(); }
+	    }
+	catch(IOException e)
+	    {
+		System.out.println("Sorry! I couldn't read " + fileName + ".");
+		return;
+	    }
+
+	int applied = delta.applyTo(graph, new HashSet<Integer>(),
+				    new HashSet<Integer>());
+	System.out.println(applied + " of " + delta.size() +
+			   " changes were made.");
+	List<String> errors = delta.getErrors();
+	for(int i = 0; i < errors.size(); i++)
+	    { System.out.println("Skipped " + errors.get(i)); }
+    }
+
     /**
        graphToFile: This method write out the contents of the Graph to a 
-       file.
+       file. The Graph is written straight to the file, a City at a time,
+       rather than being built up as one String first. If the file name
+       ends in ".gz", the file is gzip-compressed as it is written.
        @param graph: the Graph whose contents will be written out
     */
     public static void graphToFile(Graph graph)
     {
-	String writeMe;
 	System.out.println("Do you want the output to be verbose\n" +
 			   "(including all adjacent cities and flights)?");
-	if(userSaysYes())
-	    { writeMe = graph.verboseToString(true); }
-	else
-	    { writeMe = graph.verboseToString(false); }
+	boolean verbose = userSaysYes();
 
     	System.out.println("What should the file be called?");
 	String fileName = reader.nextLine();
-	PrintWriter fileOut = null;
 	
 	try
 	    {
-		fileOut = new PrintWriter(new FileWriter(fileName));
-		fileOut.println(writeMe);
+		// Closing stream closes the file even if the GZIPOutputStream
+		// couldn't be made; the Writer is flushed into it first.
+		OutputStream stream = new FileOutputStream(fileName);
+		try
+		    {
+			if(fileName.endsWith(GZIP_SUFFIX))
+			    { stream = new GZIPOutputStream(stream, 1 << 16); }
+			Writer fileOut = new BufferedWriter
+			    (new OutputStreamWriter(stream), 1 << 16);
+			graph.writeTo(fileOut, verbose);
+			fileOut.write(System.lineSeparator());
+			fileOut.flush();
+		    }
+		finally
+		    { stream.close(); }
+		System.out.println("Your file has been written.");
 	    } catch(IOException e) { e.printStackTrace(); }
-
-	finally
-	    {
-		if(fileOut != null) { fileOut.close(); }
-	    }
-
-	System.out.println("Your file has been written.");
     }
 }